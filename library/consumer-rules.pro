@@ -0,0 +1,8 @@
+# Rules applied to apps that shrink their code with R8 or ProGuard.
+#
+# The library doesn't use reflection: GitHub API responses are read with android.util.JsonReader
+# into its own models, so everything can be shrunk and obfuscated except for the following.
+
+# WorkManager persists the worker's class name with queued work. Keep it stable, so reports
+# queued by one version of the app are still delivered after an update.
+-keepnames class com.heinrichreimersoftware.androidissuereporter.delivery.ReportDrainWorker
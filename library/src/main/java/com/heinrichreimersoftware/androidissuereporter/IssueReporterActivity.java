@@ -25,8 +25,11 @@
 package com.heinrichreimersoftware.androidissuereporter;
 
 import static android.util.Patterns.EMAIL_ADDRESS;
+import static com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.RESULT_BAD_CREDENTIALS;
+import static com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.RESULT_INVALID_TOKEN;
+import static com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.RESULT_ISSUES_NOT_ENABLED;
+import static com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.RESULT_OK;
 
-import android.app.Activity;
 import android.app.Dialog;
 import android.content.ClipData;
 import android.content.ClipboardManager;
@@ -36,68 +39,97 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.RadioButton;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.annotation.StringDef;
 import androidx.annotation.StringRes;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.NavUtils;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.work.Constraints;
 
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.github.aakira.expandablelayout.ExpandableRelativeLayout;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
+import com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter;
+import com.heinrichreimersoftware.androidissuereporter.client.RepositoryPreflight;
+import com.heinrichreimersoftware.androidissuereporter.delivery.ReportDrain;
+import com.heinrichreimersoftware.androidissuereporter.diagnostics.DiagnosticSource;
+import com.heinrichreimersoftware.androidissuereporter.diagnostics.DiagnosticSources;
+import com.heinrichreimersoftware.androidissuereporter.diagnostics.DiagnosticsCollector;
+import com.heinrichreimersoftware.androidissuereporter.diagnostics.ExtraInfoProvider;
+import com.heinrichreimersoftware.androidissuereporter.diagnostics.ExtraInfoProviders;
 import com.heinrichreimersoftware.androidissuereporter.model.DeviceInfo;
 import com.heinrichreimersoftware.androidissuereporter.model.Report;
 import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
 import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
 import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.policy.SubmissionGate;
+import com.heinrichreimersoftware.androidissuereporter.routing.ReportRouter;
+import com.heinrichreimersoftware.androidissuereporter.routing.Route;
+import com.heinrichreimersoftware.androidissuereporter.search.IssueTitleIndex;
+import com.heinrichreimersoftware.androidissuereporter.storage.IssueHistory;
+import com.heinrichreimersoftware.androidissuereporter.util.Redactor;
 import com.heinrichreimersoftware.androidissuereporter.util.ThemeUtils;
+import com.heinrichreimersoftware.androidissuereporter.widget.PreviewAdapter;
 
-import org.eclipse.egit.github.core.Issue;
-import org.eclipse.egit.github.core.client.GitHubClient;
-import org.eclipse.egit.github.core.client.RequestException;
-import org.eclipse.egit.github.core.service.IssueService;
-
-import java.io.IOException;
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-import java.lang.ref.WeakReference;
+import java.util.List;
 
 public abstract class IssueReporterActivity extends AppCompatActivity {
     private static final String TAG = IssueReporterActivity.class.getSimpleName();
 
-    private static final int STATUS_BAD_CREDENTIALS = 401;
-    private static final int STATUS_ISSUES_NOT_ENABLED = 410;
-    @StringDef({RESULT_OK, RESULT_BAD_CREDENTIALS, RESULT_INVALID_TOKEN, RESULT_ISSUES_NOT_ENABLED,
-            RESULT_UNKNOWN})
-    @Retention(RetentionPolicy.SOURCE)
-    private @interface Result {
-    }
-    private static final String RESULT_OK = "RESULT_OK";
-    private static final String RESULT_BAD_CREDENTIALS = "RESULT_BAD_CREDENTIALS";
-    private static final String RESULT_INVALID_TOKEN = "RESULT_INVALID_TOKEN";
-    private static final String RESULT_ISSUES_NOT_ENABLED = "RESULT_ISSUES_NOT_ENABLED";
-    private static final String RESULT_UNKNOWN = "RESULT_UNKNOWN";
+    private static final int PREVIEW_WRAP_CONTENT_LINES = 24;
+    private static final int MAX_DUPLICATE_SUGGESTIONS = 3;
+
     private boolean emailRequired = false;
     private String issueUrl = "";
     private String titleText = null;
     private int bodyMinChar = 0;
+    private Redactor redactor = Redactor.DEFAULT;
+    private boolean followUpAsComment = false;
+    private boolean embedJson = false;
+    private boolean suggestDuplicates = false;
+    private boolean preflight = true;
+    @Nullable
+    private String routerName;
+    @Nullable
+    private String preflightResult;
+    @Nullable
+    private IssueTitleIndex titleIndex;
+    @Nullable
+    private Constraints deferredDelivery = null;
+    private boolean deferLargeExtraInfo = false;
+    private final ExtraInfoProviders extraInfoProviders = new ExtraInfoProviders();
+    private final DiagnosticsCollector diagnosticSources = new DiagnosticsCollector();
+    private boolean includeDiagnostics = false;
+    private long diagnosticsDeadlineMillis = DiagnosticsCollector.DEFAULT_DEADLINE_MILLIS;
+    private DeviceInfo deviceInfo;
     private Toolbar toolbar;
     private TextInputEditText inputTitle;
+    private View layoutDuplicates;
+    private LinearLayout listDuplicates;
     private TextInputEditText inputDescription;
-    private TextView textDeviceInfo;
+    private RecyclerView listDeviceInfo;
+    private final PreviewAdapter previewAdapter = new PreviewAdapter();
+    private CharSequence logPreview = null;
     private ImageButton buttonDeviceInfo;
     private ExpandableRelativeLayout layoutDeviceInfo;
     private ExpandableRelativeLayout layoutAnonymous;
@@ -108,6 +140,10 @@ public abstract class IssueReporterActivity extends AppCompatActivity {
 
     private String token;
 
+    private SubmissionViewModel submission;
+    @Nullable
+    private Dialog progressDialog;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -123,17 +159,42 @@ public abstract class IssueReporterActivity extends AppCompatActivity {
 
         initViews();
 
+        submission = new ViewModelProvider(this).get(SubmissionViewModel.class);
+        // Reattaches to a submission started before a configuration change.
+        submission.getSubmission().observe(this, this::onSubmissionChanged);
+        submission.getPreflightResult().observe(this, this::onPreflightResult);
+
+        deviceInfo = new DeviceInfo(this);
+        updatePreview();
+    }
+
+    @Override
+    protected void onPostCreate(@Nullable Bundle savedInstanceState) {
+        super.onPostCreate(savedInstanceState);
+        // Subclasses configure the reporter in onCreate(), so the token and target are final now.
+        if (isFinishing()) return;
+        if (preflight) {
+            runPreflight();
+        }
+        if (suggestDuplicates) {
+            initDuplicateSuggestions();
+        }
+    }
 
-        DeviceInfo deviceInfo = new DeviceInfo(this);
-        textDeviceInfo.setText(deviceInfo.toString());
+    @Override
+    protected void onDestroy() {
+        dismissProgressDialog();
+        super.onDestroy();
     }
 
     private void findViews() {
         toolbar = findViewById(R.id.air_toolbar);
 
         inputTitle = findViewById(R.id.air_inputTitle);
+        layoutDuplicates = findViewById(R.id.air_layoutDuplicates);
+        listDuplicates = findViewById(R.id.air_listDuplicates);
         inputDescription = findViewById(R.id.air_inputDescription);
-        textDeviceInfo = findViewById(R.id.air_textDeviceInfo);
+        listDeviceInfo = findViewById(R.id.air_listDeviceInfo);
         buttonDeviceInfo = findViewById(R.id.air_buttonDeviceInfo);
         layoutDeviceInfo = findViewById(R.id.air_layoutDeviceInfo);
 
@@ -159,6 +220,8 @@ public abstract class IssueReporterActivity extends AppCompatActivity {
         }
 
         buttonDeviceInfo.setOnClickListener(v -> layoutDeviceInfo.toggle());
+        listDeviceInfo.setLayoutManager(new LinearLayoutManager(this));
+        listDeviceInfo.setAdapter(previewAdapter);
 
         updateGuestTokenViews();
 
@@ -169,6 +232,137 @@ public abstract class IssueReporterActivity extends AppCompatActivity {
         if (null != titleText) inputTitle.setText(titleText);
     }
 
+    private void updatePreview() {
+        final String deviceInfoText = deviceInfo.toString();
+        final CharSequence log = logPreview;
+        // Chunking a long log is linear in its length, so keep it off the main thread.
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            StringBuilder text = new StringBuilder(deviceInfoText);
+            if (!TextUtils.isEmpty(log)) {
+                text.append("\n\nLogcat:\n").append(log);
+            }
+            PreviewAdapter.Chunks chunks = PreviewAdapter.chunk(text);
+            runOnUiThread(() -> {
+                if (isGone()) return;
+                previewAdapter.setChunks(chunks);
+                ViewGroup.LayoutParams layoutParams = listDeviceInfo.getLayoutParams();
+                int maxHeight = getResources().getDimensionPixelSize(R.dimen.air_preview_max_height);
+                // A bounded height lets the list recycle rows instead of laying out every line.
+                layoutParams.height = previewAdapter.getLineCount() > PREVIEW_WRAP_CONTENT_LINES ?
+                        maxHeight : ViewGroup.LayoutParams.WRAP_CONTENT;
+                listDeviceInfo.setLayoutParams(layoutParams);
+                layoutDeviceInfo.initLayout();
+            });
+        });
+    }
+
+    private void runPreflight() {
+        // A recreated activity observes the result of the preflight started before.
+        submission.preflight(RepositoryPreflight.getInstance(this), getTarget(),
+                TextUtils.isEmpty(token) ? null : new GithubLogin(token));
+    }
+
+    private void onPreflightResult(@Nullable String result) {
+        if (result == null) return;
+        preflightResult = result;
+        if (RESULT_ISSUES_NOT_ENABLED.equals(result)) {
+            buttonSend.setEnabled(false);
+            // Tell the user now instead of after they typed the whole report, but only once.
+            if (!submission.consumePreflightWarning()) return;
+            new MaterialDialog.Builder(this)
+                    .title(R.string.air_dialog_title_failed)
+                    .content(R.string.air_dialog_description_failed_issues_not_available)
+                    .positiveText(R.string.air_dialog_action_failed)
+                    .show();
+        }
+    }
+
+    private void initDuplicateSuggestions() {
+        IssueTitleIndex index = IssueTitleIndex.getInstance(this, getTarget());
+        titleIndex = index;
+        GithubLogin login = TextUtils.isEmpty(token) ? null : new GithubLogin(token);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            index.load();
+            runOnUiThread(this::updateDuplicateSuggestions);
+            if (index.sync(login, IssueTitleIndex.DEFAULT_SYNC_INTERVAL_MILLIS)) {
+                runOnUiThread(this::updateDuplicateSuggestions);
+            }
+        });
+        inputTitle.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                updateDuplicateSuggestions();
+            }
+        });
+    }
+
+    private void updateDuplicateSuggestions() {
+        if (titleIndex == null || isGone()) return;
+        // An in-memory lookup, cheap enough to run on every keystroke.
+        List<IssueTitleIndex.Suggestion> suggestions =
+                titleIndex.suggest(inputTitle.getText(), MAX_DUPLICATE_SUGGESTIONS);
+        listDuplicates.removeAllViews();
+        for (IssueTitleIndex.Suggestion suggestion : suggestions) {
+            TextView item = (TextView) getLayoutInflater()
+                    .inflate(R.layout.air_item_duplicate, listDuplicates, false);
+            item.setText(getString(R.string.air_label_duplicate,
+                    suggestion.getNumber(), suggestion.getTitle()));
+            item.setOnClickListener(v -> showDuplicateDialog(suggestion));
+            listDuplicates.addView(item);
+        }
+        layoutDuplicates.setVisibility(suggestions.isEmpty() ? View.GONE : View.VISIBLE);
+    }
+
+    private void showDuplicateDialog(IssueTitleIndex.Suggestion suggestion) {
+        new MaterialDialog.Builder(this)
+                .title(getString(R.string.air_label_duplicate,
+                        suggestion.getNumber(), suggestion.getTitle()))
+                .content(R.string.air_dialog_description_duplicate)
+                .positiveText(R.string.air_dialog_action_plus_one)
+                .neutralText(R.string.air_dialog_action_view_issue)
+                .negativeText(android.R.string.cancel)
+                .onPositive((dialog, which) -> addPlusOne(suggestion))
+                .onNeutral((dialog, which) -> viewIssue(suggestion.getHtmlUrl()))
+                .show();
+    }
+
+    /**
+     * Adds a +1 comment to the suggested issue instead of opening a new one. Without the guest
+     * token and an e-mail address, the issue is opened in the browser to comment there.
+     */
+    private void addPlusOne(IssueTitleIndex.Suggestion suggestion) {
+        if (submission.isRunning()) return;
+        if (TextUtils.isEmpty(token) || RESULT_INVALID_TOKEN.equals(preflightResult) ||
+                TextUtils.isEmpty(inputEmail.getText()) ||
+                !EMAIL_ADDRESS.matcher(inputEmail.getText().toString()).matches()) {
+            viewIssue(suggestion.getHtmlUrl());
+            return;
+        }
+        String email = inputEmail.getText().toString();
+        String description = inputDescription.getText() == null ? "" :
+                inputDescription.getText().toString();
+        // Use the issue's title, so later reports of it are added as follow-up comments.
+        Report report = new Report(suggestion.getTitle(), description, deviceInfo,
+                new ExtraInfo(), email, redactor);
+        IssueSubmitter submitter = new IssueSubmitter(this, getTarget(), new GithubLogin(token))
+                .setHistory(followUpAsComment ? IssueHistory.getInstance(this) : null);
+        submission.comment(submitter, report, suggestion.getNumber(), suggestion.getHtmlUrl());
+    }
+
+    private void viewIssue(String htmlUrl) {
+        Intent view = new Intent(Intent.ACTION_VIEW, Uri.parse(htmlUrl));
+        view.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivity(view);
+    }
+
     private void setOptionUseAccountMarginStart(int marginStart) {
         LinearLayout.LayoutParams layoutParams = (LinearLayout.LayoutParams)
                 optionUseAccount.getLayoutParams();
@@ -187,12 +381,11 @@ public abstract class IssueReporterActivity extends AppCompatActivity {
             ClipboardManager clipboard = (ClipboardManager)
                     getSystemService(Context.CLIPBOARD_SERVICE);
             clipboard.setPrimaryClip(ClipData.newPlainText(
-                    titleText, extraInfo.getInfo().get("logcat")));
+                    titleText, redactor.redact(extraInfo.getInfo().get("logcat"))));
         }
         if (TextUtils.isEmpty(issueUrl)) {
             GithubTarget target = getTarget();
-            issueUrl = "https://github.com/"+ target.getUsername()
-                    + "/" + target.getRepository() + "/issues/new";
+            issueUrl = target.getIssuesUrl() + "/new";
         }
         Intent view = new Intent(Intent.ACTION_VIEW,
                 Uri.parse(issueUrl));
@@ -224,6 +417,12 @@ public abstract class IssueReporterActivity extends AppCompatActivity {
 
         if (hasInputErrors()) return;
 
+            if (RESULT_INVALID_TOKEN.equals(preflightResult)) {
+                // The guest token would be rejected, so let the user report in the browser.
+                createLocalIssue();
+                return;
+            }
+
             if (TextUtils.isEmpty(token))
                 throw new IllegalStateException("You must provide a GitHub API Token.");
 
@@ -313,22 +512,51 @@ public abstract class IssueReporterActivity extends AppCompatActivity {
     }
 
     private void sendBugReport(GithubLogin login, String email) {
-        if (hasInputErrors()) return;
+        if (hasInputErrors() || submission.isRunning()) return;
 
         String bugTitle = titleText;
         if (!TextUtils.isEmpty(inputTitle.getText()))
             bugTitle = inputTitle.getText().toString();
         String bugDescription = inputDescription.getText().toString();
 
-        DeviceInfo deviceInfo = new DeviceInfo(this);
-
         ExtraInfo extraInfo = new ExtraInfo();
         onSaveExtraInfo(extraInfo);
 
-        Report report = new Report(bugTitle, bugDescription, deviceInfo, extraInfo, email);
-        GithubTarget target = getTarget();
+        // Route once, so the target and the labels come from the same decision. Diagnostics
+        // aren't collected yet, so rules can't match them here.
+        ReportRouter router = getRouter();
+        Route route = router != null ?
+                router.route(bugTitle, bugDescription, deviceInfo, extraInfo) : null;
+        GithubTarget target = route != null ? route.getTarget(getTarget()) : getTarget();
+        SubmissionGate gate = SubmissionGate.getInstance(this);
+        SubmissionGate.DropCounts dropCounts = gate.attachDropCounts(target, extraInfo);
+
+        // Diagnostics are collected concurrently when the report is sent, off the main thread.
+        DiagnosticsCollector diagnostics = new DiagnosticsCollector()
+                .deadline(diagnosticsDeadlineMillis);
+        if (includeDiagnostics) {
+            DiagnosticSources.addDefaults(diagnostics, this);
+        }
+        diagnostics.addAll(diagnosticSources);
+        ExtraInfoProviders.getDefault().addTo(diagnostics);
+        extraInfoProviders.addTo(diagnostics);
+
+        Report report = new Report(bugTitle, bugDescription, deviceInfo, extraInfo, email,
+                redactor, diagnostics);
 
-        ReportIssueTask.report(this, report, target, login);
+        if (deferredDelivery != null && login.shouldUseApiToken()) {
+            submission.defer(this, target, login, report, deferredDelivery, embedJson,
+                    routerName, followUpAsComment, gate, dropCounts);
+            return;
+        }
+
+        IssueSubmitter submitter = new IssueSubmitter(this, target, login)
+                .setHistory(followUpAsComment ? IssueHistory.getInstance(this) : null)
+                .setEmbedJson(embedJson)
+                .setDeferLargeExtraInfo(deferLargeExtraInfo ?
+                        ReportDrain.DEFAULT_CONSTRAINTS : null);
+
+        submission.submit(submitter, report, route, gate, dropCounts);
     }
 
     protected final void setGuestEmailRequired(boolean required) {
@@ -355,204 +583,235 @@ public abstract class IssueReporterActivity extends AppCompatActivity {
         this.bodyMinChar = length;
     }
 
-    protected void onSaveExtraInfo(ExtraInfo extraInfo) { }
+    protected final void setRedactor(Redactor redactor) {
+        this.redactor = redactor == null ? Redactor.NONE : redactor;
+    }
 
-    protected abstract GithubTarget getTarget();
+    /**
+     * Adds reports with the same title as an earlier report from this device as a comment on
+     * the issue opened for it. Disabled by default, as reports are matched by title only.
+     */
+    protected final void setFollowUpAsComment(boolean followUpAsComment) {
+        this.followUpAsComment = followUpAsComment;
+    }
 
-    @Deprecated
-    protected String getGuestToken() {
-        return null;
+    /**
+     * Embeds the report as a JSON block in the issue body, so it can be ingested without
+     * parsing the Markdown tables.
+     */
+    protected final void setEmbedJson(boolean embedJson) {
+        this.embedJson = embedJson;
     }
 
-    protected final void setGuestToken(String token) {
-        this.token = token;
-        // Log.d(TAG, "GuestToken: " + token);
-        updateGuestTokenViews();
+    /**
+     * Queues reports sent with the guest token and delivers them in the background once the
+     * constraints are met, instead of uploading them right away. Reports sent with the user's
+     * own account are always uploaded right away, as passwords are never persisted.
+     */
+    protected final void setDeferredDelivery(@Nullable Constraints constraints) {
+        this.deferredDelivery = constraints;
     }
 
-    private static class ReportIssueTask extends DialogAsyncTask<Void, Void, String> {
-        private final Report report;
-        private final GithubTarget target;
-        private final GithubLogin login;
-        private Issue GitHubIssue;
+    /**
+     * Sends reports with the guest token without long extra info like logcat while the network
+     * is slow, roaming or 2G. The left out extra info is posted as a comment on the issue once
+     * on an unmetered network. Requires {@link #setFollowUpAsComment(boolean)}, as the comment
+     * finds the issue through the issue history.
+     */
+    protected final void setDeferLargeExtraInfo(boolean deferLargeExtraInfo) {
+        this.deferLargeExtraInfo = deferLargeExtraInfo;
+    }
 
-        private ReportIssueTask(Activity activity, Report report, GithubTarget target,
-                                GithubLogin login) {
-            super(activity);
-            this.report = report;
-            this.target = target;
-            this.login = login;
-        }
+    /**
+     * Suggests similar open issues while the user types the title. The open issues are synced
+     * in the background at most once per {@link IssueTitleIndex#DEFAULT_SYNC_INTERVAL_MILLIS}.
+     * Must be called in {@code onCreate()}.
+     */
+    protected final void setSuggestDuplicates(boolean suggestDuplicates) {
+        this.suggestDuplicates = suggestDuplicates;
+    }
 
-        private static void report(Activity activity, Report report, GithubTarget target,
-                                  GithubLogin login) {
-            new ReportIssueTask(activity, report, target, login).execute();
-        }
+    /**
+     * Routes reports with the {@link ReportRouter} registered as {@code name}: its rules pick
+     * the target repository, labels and assignees.
+     */
+    protected final void setRouter(@Nullable String name) {
+        this.routerName = name;
+    }
 
-        @Override
-        protected Dialog createDialog(@NonNull Context context) {
-            return new MaterialDialog.Builder(context)
-                    .progress(true, 0)
-                    .progressIndeterminateStyle(true)
-                    .title(R.string.air_dialog_title_loading)
-                    .show();
+    @Nullable
+    private ReportRouter getRouter() {
+        if (routerName == null) return null;
+        ReportRouter router = ReportRouter.get(routerName);
+        if (router == null) {
+            Log.w(TAG, "No router registered as " + routerName);
         }
+        return router;
+    }
 
-        @Override
-        @Result
-        protected String doInBackground(Void... params) {
-            GitHubClient client;
-            if (login.shouldUseApiToken()) {
-                client = new GitHubClient().setOAuth2Token(login.getApiToken());
-            } else {
-                client = new GitHubClient().setCredentials(login.getUsername(), login.getPassword());
-            }
+    /**
+     * Checks in the background whether the repository accepts issues and the guest token is
+     * valid, so the user is told before writing the report. Enabled by default. Must be called
+     * in {@code onCreate()}.
+     */
+    protected final void setPreflight(boolean preflight) {
+        this.preflight = preflight;
+    }
 
-            Issue issue = new Issue().setTitle(report.getTitle()).setBody(report.getDescription());
-            try {
-                GitHubIssue = new IssueService(client).createIssue(target.getUsername(), target.getRepository(), issue);
-                return RESULT_OK;
-            } catch (RequestException e) {
-                switch (e.getStatus()) {
-                    case STATUS_BAD_CREDENTIALS:
-                        if (login.shouldUseApiToken())
-                            return RESULT_INVALID_TOKEN;
-                        return RESULT_BAD_CREDENTIALS;
-                    case STATUS_ISSUES_NOT_ENABLED:
-                        return RESULT_ISSUES_NOT_ENABLED;
-                    default:
-                        e.printStackTrace();
-                        return RESULT_UNKNOWN;
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                return RESULT_UNKNOWN;
-            }
-        }
+    /**
+     * Registers a value that is computed in the background only when a report is sent.
+     * Prefer this over {@link #onSaveExtraInfo(ExtraInfo)} for expensive diagnostics.
+     */
+    protected final void putExtraInfoProvider(String key, ExtraInfoProvider provider) {
+        extraInfoProviders.register(key, provider);
+    }
 
-        @Override
-        protected void onPostExecute(@Result String result) {
-            super.onPostExecute(result);
-
-            Context context = getContext();
-            if (context == null) return;
-
-            switch (result) {
-                case RESULT_OK:
-                    ClipboardManager clipboard = (ClipboardManager) context
-                            .getSystemService(Context.CLIPBOARD_SERVICE);
-                    clipboard.setPrimaryClip(ClipData.newPlainText(
-                            GitHubIssue.getHtmlUrl(), "issueUrl"
-                    ));
-                    Intent view = new Intent(Intent.ACTION_VIEW,
-                            Uri.parse(GitHubIssue.getHtmlUrl()));
-                    view.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                    context.startActivity(view);
-                    tryToFinishActivity();
-                    break;
-                case RESULT_BAD_CREDENTIALS:
-                    new MaterialDialog.Builder(context)
-                            .title(R.string.air_dialog_title_failed)
-                            .content(R.string.air_dialog_description_failed_wrong_credentials)
-                            .positiveText(R.string.air_dialog_action_failed)
-                            .show();
-                    break;
-                case RESULT_INVALID_TOKEN:
-                    new MaterialDialog.Builder(context)
-                            .title(R.string.air_dialog_title_failed)
-                            .content(R.string.air_dialog_description_failed_invalid_token)
-                            .positiveText(R.string.air_dialog_action_failed)
-                            .show();
-                    break;
-                case RESULT_ISSUES_NOT_ENABLED:
-                    new MaterialDialog.Builder(context)
-                            .title(R.string.air_dialog_title_failed)
-                            .content(R.string.air_dialog_description_failed_issues_not_available)
-                            .positiveText(R.string.air_dialog_action_failed)
-                            .show();
-                    break;
-                default:
-                    new MaterialDialog.Builder(context)
-                            .title(R.string.air_dialog_title_failed)
-                            .content(R.string.air_dialog_description_failed_unknown)
-                            .positiveText(R.string.air_dialog_action_failed)
-                            .onPositive((dialog, which) -> tryToFinishActivity())
-                            .cancelListener(dialog -> tryToFinishActivity())
-                            .show();
-                    break;
-            }
-        }
+    protected final void putExtraInfoProvider(String key, ExtraInfoProvider provider,
+                                              long timeoutMillis) {
+        extraInfoProviders.register(key, provider, timeoutMillis);
+    }
 
-        private void tryToFinishActivity() {
-            Context context = getContext();
-            if (context instanceof Activity && !((Activity) context).isFinishing()) {
-                ((Activity) context).finish();
-            }
-        }
+    /**
+     * Includes storage, memory, battery and network state in reports.
+     */
+    protected final void setIncludeDiagnostics(boolean includeDiagnostics) {
+        this.includeDiagnostics = includeDiagnostics;
+    }
+
+    protected final void addDiagnosticSource(String name, DiagnosticSource source,
+                                             long timeoutMillis) {
+        diagnosticSources.add(name, source, timeoutMillis);
     }
 
-    private static abstract class DialogAsyncTask<Pa, Pr, Re> extends AsyncTask<Pa, Pr, Re> {
-        private final WeakReference<Context> contextWeakReference;
-        private WeakReference<Dialog> dialogWeakReference;
+    protected final void setDiagnosticsDeadline(long deadlineMillis) {
+        this.diagnosticsDeadlineMillis = deadlineMillis;
+    }
 
-        private boolean supposedToBeDismissed;
+    /**
+     * Shows a log excerpt below the device info. Large logs are prepared in the background and
+     * displayed in a virtualized list.
+     */
+    protected final void setLogPreview(CharSequence log) {
+        this.logPreview = log;
+        if (deviceInfo != null) updatePreview();
+    }
 
-        private DialogAsyncTask(Context context) {
-            contextWeakReference = new WeakReference<>(context);
-            dialogWeakReference = new WeakReference<>(null);
-        }
+    protected void onSaveExtraInfo(ExtraInfo extraInfo) { }
 
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-            Context context = getContext();
-            if (!supposedToBeDismissed && context != null) {
-                Dialog dialog = createDialog(context);
-                dialogWeakReference = new WeakReference<>(dialog);
-                dialog.show();
-            }
-        }
+    protected abstract GithubTarget getTarget();
 
-        @SuppressWarnings("unchecked")
-        @Override
-        protected final void onProgressUpdate(Pr... values) {
-            super.onProgressUpdate(values);
-        }
+    @Deprecated
+    protected String getGuestToken() {
+        return null;
+    }
 
-        @Nullable
-        Context getContext() {
-            return contextWeakReference.get();
-        }
+    protected final void setGuestToken(String token) {
+        this.token = token;
+        // Log.d(TAG, "GuestToken: " + token);
+        updateGuestTokenViews();
+    }
 
-        @Nullable
-        Dialog getDialog() {
-            return dialogWeakReference.get();
+    private void onSubmissionChanged(@Nullable SubmissionViewModel.Submission state) {
+        if (state == null) return;
+        if (state.isRunning()) {
+            if (progressDialog == null) {
+                progressDialog = new MaterialDialog.Builder(this)
+                        .progress(true, 0)
+                        .progressIndeterminateStyle(true)
+                        .title(R.string.air_dialog_title_loading)
+                        .show();
+            }
+            return;
         }
-
-        @Override
-        protected void onCancelled(Re result) {
-            super.onCancelled(result);
-            tryToDismiss();
+        dismissProgressDialog();
+        submission.consume();
+
+        //noinspection ConstantConditions
+        switch (state.getResult()) {
+            case RESULT_OK:
+                if (state.isDeferred()) {
+                    Toast.makeText(this, R.string.air_toast_report_deferred, Toast.LENGTH_LONG)
+                            .show();
+                    tryToFinishActivity();
+                    break;
+                }
+                ClipboardManager clipboard = (ClipboardManager)
+                        getSystemService(Context.CLIPBOARD_SERVICE);
+                clipboard.setPrimaryClip(ClipData.newPlainText(
+                        state.getIssueHtmlUrl(), "issueUrl"
+                ));
+                Intent view = new Intent(Intent.ACTION_VIEW,
+                        Uri.parse(state.getIssueHtmlUrl()));
+                view.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                startActivity(view);
+                tryToFinishActivity();
+                break;
+            case RESULT_BAD_CREDENTIALS:
+                new MaterialDialog.Builder(this)
+                        .title(R.string.air_dialog_title_failed)
+                        .content(R.string.air_dialog_description_failed_wrong_credentials)
+                        .positiveText(R.string.air_dialog_action_failed)
+                        .show();
+                break;
+            case RESULT_INVALID_TOKEN:
+                invalidatePreflight();
+                new MaterialDialog.Builder(this)
+                        .title(R.string.air_dialog_title_failed)
+                        .content(R.string.air_dialog_description_failed_invalid_token)
+                        .positiveText(R.string.air_dialog_action_failed)
+                        .show();
+                break;
+            case RESULT_ISSUES_NOT_ENABLED:
+                invalidatePreflight();
+                new MaterialDialog.Builder(this)
+                        .title(R.string.air_dialog_title_failed)
+                        .content(R.string.air_dialog_description_failed_issues_not_available)
+                        .positiveText(R.string.air_dialog_action_failed)
+                        .show();
+                break;
+            default:
+                new MaterialDialog.Builder(this)
+                        .title(R.string.air_dialog_title_failed)
+                        .content(R.string.air_dialog_description_failed_unknown)
+                        .positiveText(R.string.air_dialog_action_failed)
+                        .onPositive((dialog, which) -> tryToFinishActivity())
+                        .cancelListener(dialog -> tryToFinishActivity())
+                        .show();
+                break;
         }
+    }
 
-        @Override
-        protected void onPostExecute(Re result) {
-            super.onPostExecute(result);
-            tryToDismiss();
-        }
+    /**
+     * Makes the next preflight revalidate, as the cached result didn't predict the failure.
+     */
+    private void invalidatePreflight() {
+        RepositoryPreflight.getInstance(this).invalidate(getTarget(),
+                TextUtils.isEmpty(token) ? null : new GithubLogin(token));
+    }
 
-        private void tryToDismiss() {
-            supposedToBeDismissed = true;
+    private void dismissProgressDialog() {
+        if (progressDialog != null) {
             try {
-                Dialog dialog = getDialog();
-                if (dialog != null)
-                    dialog.dismiss();
+                progressDialog.dismiss();
             } catch (Exception e) {
                 e.printStackTrace();
             }
+            progressDialog = null;
         }
+    }
 
-        protected abstract Dialog createDialog(@NonNull Context context);
+    /**
+     * Whether the activity is finishing or already destroyed, e.g. by a configuration change,
+     * so callbacks from background threads must not touch its views or show dialogs.
+     */
+    private boolean isGone() {
+        // Activity.isDestroyed() needs API 17.
+        return isFinishing() || getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED;
     }
 
+    private void tryToFinishActivity() {
+        if (!isFinishing()) {
+            finish();
+        }
+    }
 }
@@ -24,19 +24,38 @@
 
 package com.heinrichreimersoftware.androidissuereporter;
 
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_API_BASE_URL;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_DEFERRED_DELIVERY;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_DEFERRED_NETWORK_TYPE;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_DEFERRED_REQUIRES_BATTERY_NOT_LOW;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_DEFERRED_REQUIRES_CHARGING;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_DEFERRED_REQUIRES_DEVICE_IDLE;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_DEFER_LARGE_EXTRA_INFO;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_EMBED_JSON;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_EXTRA_INFO;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_FALLBACK_API_BASE_URLS;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_FOLLOW_UP_AS_COMMENT;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_GUEST_EMAIL_REQUIRED;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_GUEST_TOKEN;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_HOME_AS_UP_ENABLED;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_INCLUDE_DIAGNOSTICS;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_MIN_DESCRIPTION_LENGTH;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_PREFLIGHT;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_PUBLIC_ISSUE_URL;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_REDACTION_ENABLED;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_REDACT_PATTERNS;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_REDACT_REPLACEMENTS;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_ROUTER;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_SUGGEST_DUPLICATES;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_TARGET_REPOSITORY;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_TARGET_USERNAME;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_THEME;
 import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_TITLE_TEXT_DEFAULT;
+import static com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher.Activity.EXTRA_WEB_BASE_URL;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.Log;
@@ -44,18 +63,29 @@ import android.view.MenuItem;
 import android.view.View;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.StyleRes;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.widget.Toolbar;
+import androidx.work.Constraints;
+import androidx.work.NetworkType;
 
+import com.heinrichreimersoftware.androidissuereporter.delivery.ReportDrain;
 import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
 import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.routing.ReportRouter;
+import com.heinrichreimersoftware.androidissuereporter.util.Redactor;
+
+import java.util.ArrayList;
 
 public class IssueReporterLauncher {
     private static final String TAG = IssueReporterLauncher.class.getSimpleName();
 
     private final String targetUsername;
     private final String targetRepository;
+    private String apiBaseUrl = GithubTarget.DEFAULT_API_BASE_URL;
+    private String webBaseUrl = GithubTarget.DEFAULT_WEB_BASE_URL;
+    private final ArrayList<String> fallbackApiBaseUrls = new ArrayList<>();
     @StyleRes
     private int theme = 0;
     private String guestToken = null;
@@ -65,6 +95,19 @@ public class IssueReporterLauncher {
     private String titleTextDefault = null;
     private final ExtraInfo extraInfo = new ExtraInfo();
     private boolean homeAsUpEnabled = true;
+    private boolean redactionEnabled = true;
+    private boolean followUpAsComment = false;
+    private boolean includeDiagnostics = false;
+    private boolean embedJson = false;
+    private boolean suggestDuplicates = false;
+    private boolean preflight = true;
+    @Nullable
+    private String router = null;
+    @Nullable
+    private Constraints deferredDelivery = null;
+    private boolean deferLargeExtraInfo = false;
+    private final ArrayList<String> redactPatterns = new ArrayList<>();
+    private final ArrayList<String> redactReplacements = new ArrayList<>();
 
     private IssueReporterLauncher(String targetUsername, String targetRepository) {
         this.targetUsername = targetUsername;
@@ -76,7 +119,34 @@ public class IssueReporterLauncher {
     }
 
     public static IssueReporterLauncher forTarget(@NonNull GithubTarget target) {
-        return new IssueReporterLauncher(target.getUsername(), target.getRepository());
+        IssueReporterLauncher launcher =
+                new IssueReporterLauncher(target.getUsername(), target.getRepository());
+        launcher.apiBaseUrl = target.getApiBaseUrl();
+        launcher.webBaseUrl = target.getWebBaseUrl();
+        launcher.fallbackApiBaseUrls.addAll(target.getFallbackApiBaseUrls());
+        return launcher;
+    }
+
+    /**
+     * Sets the API base URL of a GitHub Enterprise instance, e.g.
+     * {@code https://github.example.com}.
+     */
+    public IssueReporterLauncher apiBaseUrl(@NonNull String apiBaseUrl) {
+        this.apiBaseUrl = apiBaseUrl;
+        return this;
+    }
+
+    public IssueReporterLauncher webBaseUrl(@NonNull String webBaseUrl) {
+        this.webBaseUrl = webBaseUrl;
+        return this;
+    }
+
+    /**
+     * Adds an API base URL that is used when the primary one is unreachable or unhealthy.
+     */
+    public IssueReporterLauncher fallbackApiBaseUrl(@NonNull String fallbackApiBaseUrl) {
+        fallbackApiBaseUrls.add(fallbackApiBaseUrl);
+        return this;
     }
 
     public IssueReporterLauncher theme(int theme) {
@@ -154,6 +224,86 @@ public class IssueReporterLauncher {
         return this;
     }
 
+    public IssueReporterLauncher redactionEnabled(boolean redactionEnabled) {
+        this.redactionEnabled = redactionEnabled;
+        return this;
+    }
+
+    public IssueReporterLauncher redactPattern(@NonNull String regex, @NonNull String replacement) {
+        // Validate now rather than when the reporter opens.
+        new Redactor.Builder().pattern(regex, replacement);
+        redactPatterns.add(regex);
+        redactReplacements.add(replacement);
+        return this;
+    }
+
+    /**
+     * Adds reports with the same title as an earlier report from this device as a comment on
+     * the issue opened for it. Disabled by default.
+     */
+    public IssueReporterLauncher followUpAsComment(boolean followUpAsComment) {
+        this.followUpAsComment = followUpAsComment;
+        return this;
+    }
+
+    public IssueReporterLauncher includeDiagnostics(boolean includeDiagnostics) {
+        this.includeDiagnostics = includeDiagnostics;
+        return this;
+    }
+
+    public IssueReporterLauncher embedJson(boolean embedJson) {
+        this.embedJson = embedJson;
+        return this;
+    }
+
+    /**
+     * Suggests similar open issues while the user types the title, and offers to add a +1
+     * instead of opening a new issue.
+     */
+    public IssueReporterLauncher suggestDuplicates(boolean suggestDuplicates) {
+        this.suggestDuplicates = suggestDuplicates;
+        return this;
+    }
+
+    /**
+     * Checks whether the repository accepts issues and the guest token is valid when the
+     * reporter opens. Enabled by default.
+     */
+    public IssueReporterLauncher preflight(boolean preflight) {
+        this.preflight = preflight;
+        return this;
+    }
+
+    /**
+     * Routes reports with the {@link ReportRouter} registered as {@code name}, which may send
+     * them to another repository and adds labels and assignees. Register the router in
+     * {@code Application.onCreate()}.
+     */
+    public IssueReporterLauncher router(@Nullable String name) {
+        this.router = name;
+        return this;
+    }
+
+    /**
+     * Delivers reports sent with the guest token in the background once the constraints are
+     * met, e.g. {@link ReportDrain#DEFAULT_CONSTRAINTS}.
+     */
+    public IssueReporterLauncher deferDelivery(@Nullable Constraints constraints) {
+        this.deferredDelivery = constraints;
+        return this;
+    }
+
+    /**
+     * Sends reports without long extra info like logcat while the network is slow, roaming or
+     * 2G, and posts the left out extra info as a comment once on an unmetered network. Requires
+     * {@link #followUpAsComment(boolean)}, as the comment finds the issue through the issue
+     * history.
+     */
+    public IssueReporterLauncher deferLargeExtraInfo(boolean deferLargeExtraInfo) {
+        this.deferLargeExtraInfo = deferLargeExtraInfo;
+        return this;
+    }
+
     public void launch(Context context) {
         if (theme == 0) {
             Log.w(TAG, "No theme explicitly set for issue reporter activity. " +
@@ -162,6 +312,9 @@ public class IssueReporterLauncher {
         Intent intent = new Intent(context, Activity.class);
         intent.putExtra(EXTRA_TARGET_USERNAME, targetUsername);
         intent.putExtra(EXTRA_TARGET_REPOSITORY, targetRepository);
+        intent.putExtra(EXTRA_API_BASE_URL, apiBaseUrl);
+        intent.putExtra(EXTRA_WEB_BASE_URL, webBaseUrl);
+        intent.putStringArrayListExtra(EXTRA_FALLBACK_API_BASE_URLS, fallbackApiBaseUrls);
         intent.putExtra(EXTRA_THEME, theme);
         intent.putExtra(EXTRA_GUEST_TOKEN, guestToken);
         intent.putExtra(EXTRA_GUEST_EMAIL_REQUIRED, guestEmailRequired);
@@ -170,6 +323,26 @@ public class IssueReporterLauncher {
         intent.putExtra(EXTRA_MIN_DESCRIPTION_LENGTH, minDescriptionLength);
         intent.putExtra(EXTRA_EXTRA_INFO, extraInfo.toBundle());
         intent.putExtra(EXTRA_HOME_AS_UP_ENABLED, homeAsUpEnabled);
+        intent.putExtra(EXTRA_REDACTION_ENABLED, redactionEnabled);
+        intent.putStringArrayListExtra(EXTRA_REDACT_PATTERNS, redactPatterns);
+        intent.putStringArrayListExtra(EXTRA_REDACT_REPLACEMENTS, redactReplacements);
+        intent.putExtra(EXTRA_FOLLOW_UP_AS_COMMENT, followUpAsComment);
+        intent.putExtra(EXTRA_INCLUDE_DIAGNOSTICS, includeDiagnostics);
+        intent.putExtra(EXTRA_EMBED_JSON, embedJson);
+        intent.putExtra(EXTRA_SUGGEST_DUPLICATES, suggestDuplicates);
+        intent.putExtra(EXTRA_PREFLIGHT, preflight);
+        intent.putExtra(EXTRA_ROUTER, router);
+        intent.putExtra(EXTRA_DEFER_LARGE_EXTRA_INFO, deferLargeExtraInfo);
+        if (deferredDelivery != null) {
+            intent.putExtra(EXTRA_DEFERRED_DELIVERY, true);
+            intent.putExtra(EXTRA_DEFERRED_NETWORK_TYPE,
+                    deferredDelivery.getRequiredNetworkType().name());
+            intent.putExtra(EXTRA_DEFERRED_REQUIRES_CHARGING, deferredDelivery.requiresCharging());
+            intent.putExtra(EXTRA_DEFERRED_REQUIRES_BATTERY_NOT_LOW,
+                    deferredDelivery.requiresBatteryNotLow());
+            intent.putExtra(EXTRA_DEFERRED_REQUIRES_DEVICE_IDLE,
+                    deferredDelivery.requiresDeviceIdle());
+        }
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         context.startActivity(intent);
     }
@@ -177,6 +350,9 @@ public class IssueReporterLauncher {
     public static class Activity extends IssueReporterActivity {
         public static final String EXTRA_TARGET_USERNAME = "IssueReporterLauncher.Activity.EXTRA_TARGET_USERNAME";
         public static final String EXTRA_TARGET_REPOSITORY = "IssueReporterLauncher.Activity.EXTRA_TARGET_REPOSITORY";
+        public static final String EXTRA_API_BASE_URL = "IssueReporterLauncher.Activity.EXTRA_API_BASE_URL";
+        public static final String EXTRA_WEB_BASE_URL = "IssueReporterLauncher.Activity.EXTRA_WEB_BASE_URL";
+        public static final String EXTRA_FALLBACK_API_BASE_URLS = "IssueReporterLauncher.Activity.EXTRA_FALLBACK_API_BASE_URLS";
         public static final String EXTRA_THEME = "IssueReporterLauncher.Activity.EXTRA_THEME";
         public static final String EXTRA_GUEST_TOKEN = "IssueReporterLauncher.Activity.EXTRA_GUEST_TOKEN";
         public static final String EXTRA_GUEST_EMAIL_REQUIRED = "IssueReporterLauncher.Activity.EXTRA_GUEST_EMAIL_REQUIRED";
@@ -185,9 +361,27 @@ public class IssueReporterLauncher {
         public static final String EXTRA_MIN_DESCRIPTION_LENGTH = "IssueReporterLauncher.Activity.EXTRA_MIN_DESCRIPTION_LENGTH";
         public static final String EXTRA_EXTRA_INFO = "IssueReporterLauncher.Activity.EXTRA_EXTRA_INFO";
         public static final String EXTRA_HOME_AS_UP_ENABLED = "IssueReporterLauncher.Activity.EXTRA_HOME_AS_UP_ENABLED";
+        public static final String EXTRA_REDACTION_ENABLED = "IssueReporterLauncher.Activity.EXTRA_REDACTION_ENABLED";
+        public static final String EXTRA_REDACT_PATTERNS = "IssueReporterLauncher.Activity.EXTRA_REDACT_PATTERNS";
+        public static final String EXTRA_REDACT_REPLACEMENTS = "IssueReporterLauncher.Activity.EXTRA_REDACT_REPLACEMENTS";
+        public static final String EXTRA_FOLLOW_UP_AS_COMMENT = "IssueReporterLauncher.Activity.EXTRA_FOLLOW_UP_AS_COMMENT";
+        public static final String EXTRA_INCLUDE_DIAGNOSTICS = "IssueReporterLauncher.Activity.EXTRA_INCLUDE_DIAGNOSTICS";
+        public static final String EXTRA_EMBED_JSON = "IssueReporterLauncher.Activity.EXTRA_EMBED_JSON";
+        public static final String EXTRA_SUGGEST_DUPLICATES = "IssueReporterLauncher.Activity.EXTRA_SUGGEST_DUPLICATES";
+        public static final String EXTRA_PREFLIGHT = "IssueReporterLauncher.Activity.EXTRA_PREFLIGHT";
+        public static final String EXTRA_ROUTER = "IssueReporterLauncher.Activity.EXTRA_ROUTER";
+        public static final String EXTRA_DEFER_LARGE_EXTRA_INFO = "IssueReporterLauncher.Activity.EXTRA_DEFER_LARGE_EXTRA_INFO";
+        public static final String EXTRA_DEFERRED_DELIVERY = "IssueReporterLauncher.Activity.EXTRA_DEFERRED_DELIVERY";
+        public static final String EXTRA_DEFERRED_NETWORK_TYPE = "IssueReporterLauncher.Activity.EXTRA_DEFERRED_NETWORK_TYPE";
+        public static final String EXTRA_DEFERRED_REQUIRES_CHARGING = "IssueReporterLauncher.Activity.EXTRA_DEFERRED_REQUIRES_CHARGING";
+        public static final String EXTRA_DEFERRED_REQUIRES_BATTERY_NOT_LOW = "IssueReporterLauncher.Activity.EXTRA_DEFERRED_REQUIRES_BATTERY_NOT_LOW";
+        public static final String EXTRA_DEFERRED_REQUIRES_DEVICE_IDLE = "IssueReporterLauncher.Activity.EXTRA_DEFERRED_REQUIRES_DEVICE_IDLE";
 
         private String targetUsername;
         private String targetRepository;
+        private String apiBaseUrl;
+        private String webBaseUrl;
+        private ArrayList<String> fallbackApiBaseUrls;
         private ExtraInfo extraInfo;
 
         @Override
@@ -213,6 +407,9 @@ public class IssueReporterLauncher {
             }
             targetUsername = intent.getStringExtra(EXTRA_TARGET_USERNAME);
             targetRepository = intent.getStringExtra(EXTRA_TARGET_REPOSITORY);
+            apiBaseUrl = intent.getStringExtra(EXTRA_API_BASE_URL);
+            webBaseUrl = intent.getStringExtra(EXTRA_WEB_BASE_URL);
+            fallbackApiBaseUrls = intent.getStringArrayListExtra(EXTRA_FALLBACK_API_BASE_URLS);
 
             if (TextUtils.isEmpty(targetUsername) || TextUtils.isEmpty(targetRepository)) {
                 finish();
@@ -225,6 +422,16 @@ public class IssueReporterLauncher {
             setPublicIssueUrl(intent.getStringExtra(EXTRA_PUBLIC_ISSUE_URL));
             setTitleTextDefault(intent.getStringExtra(EXTRA_TITLE_TEXT_DEFAULT));
             setMinimumDescriptionLength(intent.getIntExtra(EXTRA_MIN_DESCRIPTION_LENGTH, 0));
+            setFollowUpAsComment(intent.getBooleanExtra(EXTRA_FOLLOW_UP_AS_COMMENT, false));
+            setIncludeDiagnostics(intent.getBooleanExtra(EXTRA_INCLUDE_DIAGNOSTICS, false));
+            setEmbedJson(intent.getBooleanExtra(EXTRA_EMBED_JSON, false));
+            setSuggestDuplicates(intent.getBooleanExtra(EXTRA_SUGGEST_DUPLICATES, false));
+            setPreflight(intent.getBooleanExtra(EXTRA_PREFLIGHT, true));
+            setRouter(intent.getStringExtra(EXTRA_ROUTER));
+            setDeferLargeExtraInfo(intent.getBooleanExtra(EXTRA_DEFER_LARGE_EXTRA_INFO, false));
+            if (intent.getBooleanExtra(EXTRA_DEFERRED_DELIVERY, false)) {
+                setDeferredDelivery(createConstraints(intent));
+            }
 
             if (intent.getBooleanExtra(EXTRA_HOME_AS_UP_ENABLED, true)) {
                 ActionBar actionBar = getSupportActionBar();
@@ -240,6 +447,38 @@ public class IssueReporterLauncher {
             }
 
             extraInfo = ExtraInfo.fromBundle(intent.getBundleExtra(EXTRA_EXTRA_INFO));
+            setLogPreview(extraInfo.getInfo().get("logcat"));
+
+            setRedactor(createRedactor(intent));
+        }
+
+        private static Constraints createConstraints(Intent intent) {
+            String networkType = intent.getStringExtra(EXTRA_DEFERRED_NETWORK_TYPE);
+            Constraints.Builder builder = new Constraints.Builder()
+                    .setRequiredNetworkType(networkType != null ?
+                            NetworkType.valueOf(networkType) : NetworkType.CONNECTED)
+                    .setRequiresCharging(
+                            intent.getBooleanExtra(EXTRA_DEFERRED_REQUIRES_CHARGING, false))
+                    .setRequiresBatteryNotLow(
+                            intent.getBooleanExtra(EXTRA_DEFERRED_REQUIRES_BATTERY_NOT_LOW, false));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                builder.setRequiresDeviceIdle(
+                        intent.getBooleanExtra(EXTRA_DEFERRED_REQUIRES_DEVICE_IDLE, false));
+            }
+            return builder.build();
+        }
+
+        private static Redactor createRedactor(Intent intent) {
+            Redactor.Builder builder = intent.getBooleanExtra(EXTRA_REDACTION_ENABLED, true) ?
+                    new Redactor.Builder(Redactor.DEFAULT) : new Redactor.Builder();
+            ArrayList<String> patterns = intent.getStringArrayListExtra(EXTRA_REDACT_PATTERNS);
+            ArrayList<String> replacements = intent.getStringArrayListExtra(EXTRA_REDACT_REPLACEMENTS);
+            if (patterns != null && replacements != null) {
+                for (int i = 0; i < patterns.size() && i < replacements.size(); i++) {
+                    builder.pattern(patterns.get(i), replacements.get(i));
+                }
+            }
+            return builder.build();
         }
 
         @Override
@@ -261,7 +500,9 @@ public class IssueReporterLauncher {
 
         @Override
         protected GithubTarget getTarget() {
-            return new GithubTarget(targetUsername, targetRepository);
+            return new GithubTarget(targetUsername, targetRepository, apiBaseUrl, webBaseUrl,
+                    fallbackApiBaseUrls != null ?
+                            fallbackApiBaseUrls.toArray(new String[0]) : new String[0]);
         }
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter;
+import com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.Result;
+import com.heinrichreimersoftware.androidissuereporter.client.RepositoryPreflight;
+import com.heinrichreimersoftware.androidissuereporter.delivery.ReportDrain;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.policy.SubmissionGate;
+import com.heinrichreimersoftware.androidissuereporter.routing.Route;
+
+import java.io.IOException;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+import androidx.work.Constraints;
+
+/**
+ * Holds the submission and repository preflight started by {@link IssueReporterActivity}, so
+ * they outlive configuration changes. A recreated activity observes the same submission and
+ * preflight result instead of starting new ones. Results are delivered through
+ * {@link LiveData}, so they never reach a stopped or destroyed activity.
+ * Public only so the default view model factory can instantiate it.
+ */
+public class SubmissionViewModel extends ViewModel {
+    private static final String TAG = SubmissionViewModel.class.getSimpleName();
+
+    private final MutableLiveData<Submission> submission = new MutableLiveData<>();
+    private final MutableLiveData<String> preflightResult = new MutableLiveData<>();
+    private boolean preflightStarted;
+    private boolean preflightWarningShown;
+
+    LiveData<Submission> getSubmission() {
+        return submission;
+    }
+
+    LiveData<String> getPreflightResult() {
+        return preflightResult;
+    }
+
+    /**
+     * Starts the repository preflight, unless it was started before.
+     */
+    @MainThread
+    void preflight(RepositoryPreflight preflight, GithubTarget target,
+                   @Nullable GithubLogin login) {
+        if (preflightStarted) return;
+        preflightStarted = true;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> preflightResult.postValue(
+                preflight.check(target, login, RepositoryPreflight.DEFAULT_MAX_AGE_MILLIS)));
+    }
+
+    /**
+     * Returns {@code true} only the first time, so a warning about the preflight result isn't
+     * shown again after a configuration change.
+     */
+    @MainThread
+    boolean consumePreflightWarning() {
+        if (preflightWarningShown) return false;
+        preflightWarningShown = true;
+        return true;
+    }
+
+    @MainThread
+    boolean isRunning() {
+        Submission current = submission.getValue();
+        return current != null && current.isRunning();
+    }
+
+    /**
+     * Starts submitting the report, unless a submission is already running.
+     */
+    @MainThread
+    boolean submit(IssueSubmitter submitter, Report report, @Nullable Route route,
+                   SubmissionGate gate, SubmissionGate.DropCounts dropCounts) {
+        return start(() -> {
+            String result = submitter.submit(report, route);
+            if (IssueSubmitter.RESULT_OK.equals(result)) {
+                gate.acknowledge(submitter.getTarget(), dropCounts);
+            }
+            return new Submission(result, submitter.getIssueHtmlUrl(), false);
+        });
+    }
+
+    /**
+     * Starts adding the report as a +1 comment to an existing issue, unless a submission is
+     * already running.
+     */
+    @MainThread
+    boolean comment(IssueSubmitter submitter, Report report, int number, String htmlUrl) {
+        return start(() -> {
+            String result = submitter.comment(report, number, htmlUrl);
+            return new Submission(result, submitter.getIssueHtmlUrl(), false);
+        });
+    }
+
+    /**
+     * Starts queueing the report for deferred delivery, unless a submission is already running.
+     * The result is {@link IssueSubmitter#RESULT_OK} once the report is stored.
+     */
+    @MainThread
+    boolean defer(Context context, GithubTarget target, GithubLogin login, Report report,
+                  Constraints constraints, boolean embedJson, @Nullable String router,
+                  boolean followUpAsComment, SubmissionGate gate,
+                  SubmissionGate.DropCounts dropCounts) {
+        Context applicationContext = context.getApplicationContext();
+        return start(() -> {
+            try {
+                ReportDrain.enqueue(applicationContext, target, login, report, constraints,
+                        embedJson, router, followUpAsComment);
+            } catch (IOException e) {
+                Log.e(TAG, "Queueing the report failed", e);
+                return new Submission(IssueSubmitter.RESULT_UNKNOWN, null, true);
+            }
+            gate.acknowledge(target, dropCounts);
+            return new Submission(IssueSubmitter.RESULT_OK, null, true);
+        });
+    }
+
+    private boolean start(Task task) {
+        if (isRunning()) return false;
+        submission.setValue(Submission.RUNNING);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            Submission result;
+            try {
+                result = task.run();
+            } catch (RuntimeException e) {
+                // Otherwise the submission would stay running, and so would the progress dialog.
+                Log.e(TAG, "Submitting the report failed", e);
+                result = new Submission(IssueSubmitter.RESULT_UNKNOWN, null, false);
+            }
+            submission.postValue(result);
+        });
+        return true;
+    }
+
+    /**
+     * Marks the result as handled, so it isn't delivered again after the next recreation.
+     */
+    @MainThread
+    void consume() {
+        submission.setValue(null);
+    }
+
+    private interface Task {
+        Submission run();
+    }
+
+    static final class Submission {
+        private static final Submission RUNNING = new Submission(null, null, false);
+
+        @Nullable
+        private final String result;
+        @Nullable
+        private final String issueHtmlUrl;
+        private final boolean deferred;
+
+        private Submission(@Nullable @Result String result, @Nullable String issueHtmlUrl,
+                           boolean deferred) {
+            this.result = result;
+            this.issueHtmlUrl = issueHtmlUrl;
+            this.deferred = deferred;
+        }
+
+        boolean isRunning() {
+            return result == null;
+        }
+
+        @Nullable
+        @Result
+        String getResult() {
+            return result;
+        }
+
+        @Nullable
+        String getIssueHtmlUrl() {
+            return issueHtmlUrl;
+        }
+
+        /**
+         * Whether the report was queued for deferred delivery instead of submitted.
+         */
+        boolean isDeferred() {
+            return deferred;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Tracks latency and failures of API hosts and orders a target's hosts by health. Hosts are
+ * probed with a cheap request only when a target has fallbacks and the last measurement is
+ * stale, so single-host targets never pay for probing. Stale hosts are probed concurrently
+ * under one shared deadline; probes that miss it finish in the background and only affect
+ * later rankings.
+ */
+public final class EndpointHealth {
+    private static final String TAG = EndpointHealth.class.getSimpleName();
+
+    private static final long PROBE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int PROBE_TIMEOUT_MILLIS = 3000;
+    private static final long PROBE_DEADLINE_MILLIS = 1500;
+    private static final double LATENCY_SMOOTHING = 0.3;
+    private static final long FAILURE_PENALTY_MILLIS = 10000;
+
+    private static final EndpointHealth instance = new EndpointHealth();
+
+    private final Map<String, Score> scores = new HashMap<>();
+    private final Set<String> probing = new HashSet<>();
+
+    private ExecutorService executor;
+
+    private EndpointHealth() {
+    }
+
+    @NonNull
+    public static EndpointHealth getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the target's API base URLs, healthiest first. Stale hosts are probed concurrently
+     * first, waiting at most {@value #PROBE_DEADLINE_MILLIS} ms in total; hosts whose probe is
+     * still running are ranked on their last known score.
+     */
+    @WorkerThread
+    @NonNull
+    public List<String> rank(@NonNull GithubTarget target) {
+        List<String> urls = target.getApiBaseUrls();
+        if (urls.size() == 1) return urls;
+
+        long start = SystemClock.elapsedRealtime();
+        List<Future<?>> probes = new ArrayList<>();
+        synchronized (this) {
+            for (final String url : urls) {
+                Score score = scores.get(url);
+                if (score != null && start - score.updated <= PROBE_INTERVAL_MILLIS) continue;
+                // A probe started by an earlier call is still running; don't start a second one.
+                if (!probing.add(url)) continue;
+                probes.add(getExecutor().submit(() -> {
+                    try {
+                        probe(url);
+                    } finally {
+                        synchronized (EndpointHealth.this) {
+                            probing.remove(url);
+                        }
+                    }
+                }));
+            }
+        }
+
+        long deadline = start + PROBE_DEADLINE_MILLIS;
+        for (Future<?> probe : probes) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            try {
+                probe.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Keep probing in the background, the result is recorded for the next ranking.
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Probing failed.", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        final List<String> ranked = new ArrayList<>(urls);
+        synchronized (this) {
+            // Stable sort keeps the configured order for hosts with equal scores.
+            Collections.sort(ranked, (a, b) -> Long.compare(cost(a), cost(b)));
+        }
+        return ranked;
+    }
+
+    @WorkerThread
+    public void probe(@NonNull String apiBaseUrl) {
+        long start = SystemClock.elapsedRealtime();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(probeUrl(apiBaseUrl)).openConnection();
+            connection.setConnectTimeout(PROBE_TIMEOUT_MILLIS);
+            connection.setReadTimeout(PROBE_TIMEOUT_MILLIS);
+            int code = connection.getResponseCode();
+            InputStream stream = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (stream != null) {
+                // Drain the response so the connection can be reused.
+                byte[] buffer = new byte[1024];
+                //noinspection StatementWithEmptyBody
+                while (stream.read(buffer) != -1) ;
+                stream.close();
+            }
+            // Any response below 500, even 401 or 404, means the host is up.
+            if (code < 500) {
+                recordSuccess(apiBaseUrl, SystemClock.elapsedRealtime() - start);
+            } else {
+                recordFailure(apiBaseUrl);
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Probing " + apiBaseUrl + " failed: " + e);
+            recordFailure(apiBaseUrl);
+        }
+    }
+
+    public synchronized void recordSuccess(@NonNull String apiBaseUrl, long latencyMillis) {
+        Score score = getScore(apiBaseUrl);
+        score.latencyMillis = score.latencyMillis < 0 ? latencyMillis :
+                (long) (LATENCY_SMOOTHING * latencyMillis + (1 - LATENCY_SMOOTHING) * score.latencyMillis);
+        score.failures = 0;
+        score.updated = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Records a successful request without updating the latency, e.g. because its duration
+     * depends on the payload size.
+     */
+    public synchronized void recordSuccess(@NonNull String apiBaseUrl) {
+        Score score = getScore(apiBaseUrl);
+        score.failures = 0;
+        score.updated = SystemClock.elapsedRealtime();
+    }
+
+    public synchronized void recordFailure(@NonNull String apiBaseUrl) {
+        Score score = getScore(apiBaseUrl);
+        score.failures++;
+        score.updated = SystemClock.elapsedRealtime();
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "IssueReporter-probe-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private Score getScore(String apiBaseUrl) {
+        Score score = scores.get(apiBaseUrl);
+        if (score == null) {
+            score = new Score();
+            scores.put(apiBaseUrl, score);
+        }
+        return score;
+    }
+
+    private long cost(String apiBaseUrl) {
+        Score score = scores.get(apiBaseUrl);
+        if (score == null) return FAILURE_PENALTY_MILLIS;
+        long latency = score.latencyMillis < 0 ? PROBE_TIMEOUT_MILLIS : score.latencyMillis;
+        return latency + score.failures * FAILURE_PENALTY_MILLIS;
+    }
+
+    private static String probeUrl(String apiBaseUrl) throws IOException {
+        // The rate limit endpoint is cheap and does not count against the rate limit.
+        try {
+            return StreamingGitHubClient.apiRoot(apiBaseUrl) + "/rate_limit";
+        } catch (IllegalArgumentException e) {
+            throw new MalformedURLException(apiBaseUrl);
+        }
+    }
+
+    private static final class Score {
+        private long latencyMillis = -1;
+        private int failures;
+        private long updated;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import android.os.SystemClock;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Process wide cache of configured clients keyed by login and API host. Reusing a client keeps
+ * its configuration and lets consecutive submissions and retries share the platform's
+ * keep-alive connection pool instead of paying for a new TLS handshake every time.
+ */
+public final class GitHubClientCache {
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Map<Key, Entry> clients = new HashMap<>();
+    private static long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+    private GitHubClientCache() {
+    }
+
+    @NonNull
+    public static StreamingGitHubClient get(@NonNull GithubLogin login) {
+        return get(GithubTarget.DEFAULT_API_BASE_URL, login);
+    }
+
+    @NonNull
+    public static synchronized StreamingGitHubClient get(@NonNull String apiBaseUrl,
+                                                         @NonNull GithubLogin login) {
+        long now = SystemClock.elapsedRealtime();
+        evictIdle(now);
+
+        Key key = new Key(apiBaseUrl, login);
+        Entry entry = clients.get(key);
+        if (entry == null) {
+            StreamingGitHubClient client = StreamingGitHubClient.forBaseUrl(apiBaseUrl);
+            if (login.shouldUseApiToken()) {
+                client.setOAuth2Token(login.getApiToken());
+            } else {
+                client.setCredentials(login.getUsername(), login.getPassword());
+            }
+            entry = new Entry(client);
+            clients.put(key, entry);
+        }
+        entry.lastUsed = now;
+        return entry.client;
+    }
+
+    public static synchronized void setIdleTimeout(long idleTimeoutMillis) {
+        GitHubClientCache.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public static synchronized void evict(@NonNull GithubLogin login) {
+        Iterator<Key> iterator = clients.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().login.equals(login)) iterator.remove();
+        }
+    }
+
+    public static synchronized void clear() {
+        clients.clear();
+    }
+
+    private static void evictIdle(long now) {
+        Iterator<Entry> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastUsed > idleTimeoutMillis) iterator.remove();
+        }
+    }
+
+    private static final class Key {
+        private final String host;
+        private final GithubLogin login;
+
+        private Key(String host, GithubLogin login) {
+            this.host = host;
+            this.login = login;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return host.equals(key.host) && login.equals(key.login);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * host.hashCode() + login.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final StreamingGitHubClient client;
+        private long lastUsed;
+
+        private Entry(StreamingGitHubClient client) {
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.delivery.ReportDrain;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.ReportTemplate;
+import com.heinrichreimersoftware.androidissuereporter.model.github.Comment;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.model.github.Issue;
+import com.heinrichreimersoftware.androidissuereporter.routing.Route;
+import com.heinrichreimersoftware.androidissuereporter.storage.IssueHistory;
+import com.heinrichreimersoftware.androidissuereporter.storage.ReportBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StringDef;
+import androidx.annotation.WorkerThread;
+import androidx.work.Constraints;
+
+/**
+ * Submits reports to a target, either as a new issue or as a follow-up comment on the issue
+ * opened for an earlier report with the same fingerprint. Hosts are tried in order of their
+ * health, and retries never create duplicate issues.
+ */
+public class IssueSubmitter {
+    private static final String TAG = IssueSubmitter.class.getSimpleName();
+
+    private static final int STATUS_CLIENT_ERROR = 400;
+    private static final int STATUS_BAD_CREDENTIALS = 401;
+    private static final int STATUS_FORBIDDEN = 403;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_ISSUES_NOT_ENABLED = 410;
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int STATUS_SERVER_ERROR = 500;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long LOOKUP_CLOCK_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final int LARGE_EXTRA_INFO_LENGTH = 4096;
+    private static final String KEY_SENT_LATER = "Sent later";
+    private static final String HORIZONTAL_RULE = "---";
+    private static final String CODE_FENCE = "```";
+
+    @StringDef({RESULT_OK, RESULT_BAD_CREDENTIALS, RESULT_INVALID_TOKEN, RESULT_ISSUES_NOT_ENABLED,
+            RESULT_REJECTED, RESULT_UNKNOWN})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Result {
+    }
+    public static final String RESULT_OK = "RESULT_OK";
+    public static final String RESULT_BAD_CREDENTIALS = "RESULT_BAD_CREDENTIALS";
+    public static final String RESULT_INVALID_TOKEN = "RESULT_INVALID_TOKEN";
+    public static final String RESULT_ISSUES_NOT_ENABLED = "RESULT_ISSUES_NOT_ENABLED";
+    /**
+     * GitHub rejected this particular report, e.g. an invalid assignee or label. Sending the
+     * same report again won't help, but other reports may still succeed.
+     */
+    public static final String RESULT_REJECTED = "RESULT_REJECTED";
+    public static final String RESULT_UNKNOWN = "RESULT_UNKNOWN";
+
+    /**
+     * Longest issue or comment body GitHub accepts. Longer bodies are cut at a line break.
+     */
+    public static final int MAX_BODY_LENGTH = 65536;
+
+    private final Context context;
+    private final GithubTarget target;
+    private final GithubLogin login;
+    private final File cacheDir;
+    @Nullable
+    private IssueHistory history;
+    private boolean embedJson;
+    @Nullable
+    private Constraints deferLargeExtraInfo;
+
+    private String issueHtmlUrl;
+    private int issueNumber;
+    private long firstAttemptMillis;
+    private boolean mayHaveSucceeded;
+
+    public IssueSubmitter(@NonNull Context context, @NonNull GithubTarget target,
+                          @NonNull GithubLogin login) {
+        this.context = context.getApplicationContext();
+        this.target = target;
+        this.login = login;
+        this.cacheDir = context.getCacheDir();
+    }
+
+    /**
+     * Posts reports as comments on the issue opened for an earlier report with the same
+     * fingerprint, if {@code history} knows one.
+     */
+    public IssueSubmitter setHistory(@Nullable IssueHistory history) {
+        this.history = history;
+        return this;
+    }
+
+    /**
+     * Embeds the report as a JSON block in the issue body.
+     */
+    public IssueSubmitter setEmbedJson(boolean embedJson) {
+        this.embedJson = embedJson;
+        return this;
+    }
+
+    /**
+     * Leaves long extra info values like logcat out of reports while the link is constrained,
+     * see {@link LinkQuality}, and queues them to be posted as a comment on the created issue
+     * once the constraints are met. Only applies to logins with an API token, as the comment
+     * is delivered by {@link ReportDrain}, and with a {@linkplain #setHistory(IssueHistory)
+     * history}, which the comment uses to find the issue.
+     */
+    public IssueSubmitter setDeferLargeExtraInfo(@Nullable Constraints constraints) {
+        this.deferLargeExtraInfo = constraints;
+        return this;
+    }
+
+    @NonNull
+    public GithubTarget getTarget() {
+        return target;
+    }
+
+    /**
+     * The issue created or commented on by the last successful submission.
+     */
+    @Nullable
+    public synchronized String getIssueHtmlUrl() {
+        return issueHtmlUrl;
+    }
+
+    @WorkerThread
+    @Result
+    public String submit(@NonNull Report report) {
+        return submit(report, null);
+    }
+
+    /**
+     * Submits the report with the labels and assignees of {@code route}, as picked by a
+     * {@link com.heinrichreimersoftware.androidissuereporter.routing.ReportRouter} for this
+     * report. The route's target isn't applied here; create the submitter for it instead. If the
+     * route is for another target, the issue is created without labels and assignees.
+     */
+    @WorkerThread
+    @Result
+    public synchronized String submit(@NonNull Report report, @Nullable Route route) {
+        issueHtmlUrl = null;
+        issueNumber = 0;
+        firstAttemptMillis = 0;
+        mayHaveSucceeded = false;
+
+        ExtraInfo deferred = getDeferredExtraInfo(report);
+        Report sent = deferred.isEmpty() ? report : report.withExtraInfo(
+                getCoreExtraInfo(report, deferred));
+        ReportBuffer body;
+        try {
+            // Render the body once, so falling back to another host doesn't repeat the work.
+            body = render(sent);
+        } catch (IOException e) {
+            Log.e(TAG, "Rendering the report failed", e);
+            return RESULT_UNKNOWN;
+        }
+        try {
+            if (route != null && !route.appliesTo(target)) {
+                Log.w(TAG, "Report routed to " + route.getTarget() + ", not labeling it");
+                route = null;
+            }
+            List<String> labels = route != null ? route.getLabels() :
+                    Collections.<String>emptyList();
+            List<String> assignees = route != null ? route.getAssignees() :
+                    Collections.<String>emptyList();
+            String result = execute(endpoint -> submit(endpoint, sent, body, labels, assignees));
+            if (RESULT_OK.equals(result) && !deferred.isEmpty()) {
+                defer(report.forExtraInfo(deferred));
+            }
+            return result;
+        } finally {
+            body.delete();
+        }
+    }
+
+    /**
+     * Renders the issue body, cut to GitHub's length limit if needed.
+     */
+    private ReportBuffer render(Report report) throws IOException {
+        ReportBuffer body = new ReportBuffer(cacheDir);
+        ReportBuffer truncated = null;
+        try {
+            ReportTemplate template = ReportTemplate.get(target);
+            if (template != null) {
+                template.render(report, body);
+            } else {
+                report.writeDescription(body);
+            }
+            if (embedJson) {
+                body.write("\n\n");
+                report.writeJsonBlock(body);
+            }
+            body.close();
+            if (body.length() <= MAX_BODY_LENGTH) return body;
+
+            truncated = new ReportBuffer(cacheDir);
+            try (Reader reader = body.openReader()) {
+                writeTruncated(reader, body.length(), report, truncated);
+            }
+            truncated.close();
+            body.delete();
+            return truncated;
+        } catch (IOException | RuntimeException e) {
+            body.delete();
+            if (truncated != null) truncated.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the comment body, cut to GitHub's length limit if needed.
+     */
+    private static String fit(String body, Report report) {
+        if (body.length() <= MAX_BODY_LENGTH) return body;
+        StringWriter writer = new StringWriter(MAX_BODY_LENGTH);
+        try {
+            writeTruncated(new StringReader(body), body.length(), report, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes as many whole lines of the body as fit into {@link #MAX_BODY_LENGTH} together with
+     * a note on the truncation. The note ends with the report's ID marker, so an issue or
+     * comment whose response got lost is still found.
+     */
+    private static void writeTruncated(Reader reader, long length, Report report, Writer out)
+            throws IOException {
+        String note = "\n\n" + HORIZONTAL_RULE + "\n\n_Truncated to fit GitHub's limit of "
+                + MAX_BODY_LENGTH + " characters, the full report has " + length
+                + " characters._\n\n" + report.getIdMarker();
+        char[] kept = new char[MAX_BODY_LENGTH - note.length() - CODE_FENCE.length() - 1];
+        int read = 0;
+        int count;
+        while (read < kept.length && (count = reader.read(kept, read, kept.length - read)) != -1) {
+            read += count;
+        }
+        int end = read;
+        for (int i = read - 1; i > 0; i--) {
+            if (kept[i] == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end > 0 && Character.isHighSurrogate(kept[end - 1])) end--;
+        out.write(kept, 0, end);
+
+        // Close a code block that was cut, so the note isn't rendered as code.
+        boolean inCodeBlock = false;
+        for (int start = 0; start < end; start++) {
+            if ((start == 0 || kept[start - 1] == '\n') &&
+                    new String(kept, start, Math.min(CODE_FENCE.length(), end - start))
+                            .equals(CODE_FENCE)) {
+                inCodeBlock = !inCodeBlock;
+            }
+        }
+        if (inCodeBlock) out.write("\n" + CODE_FENCE);
+        out.write(note);
+    }
+
+    /**
+     * Adds the report as a +1 comment to an existing issue instead of opening a new one.
+     */
+    @WorkerThread
+    @Result
+    public synchronized String comment(@NonNull Report report, int number,
+                                       @NonNull String htmlUrl) {
+        issueHtmlUrl = null;
+        issueNumber = 0;
+        mayHaveSucceeded = false;
+        String body = fit(report.getPlusOneDescription(), report);
+        return execute(endpoint -> {
+            StreamingGitHubClient client = GitHubClientCache.get(endpoint, login);
+            if (!mayHaveSucceeded || !hasComment(client, number, report)) {
+                // From here on the comment may exist even if no response arrives.
+                mayHaveSucceeded = true;
+                client.createComment(target.getUsername(), target.getRepository(), number,
+                        body);
+            }
+            issueHtmlUrl = htmlUrl;
+            issueNumber = number;
+            if (history != null) {
+                history.put(target, report, number, htmlUrl);
+            }
+        });
+    }
+
+    /**
+     * Returns the extra info to leave out of the report because the link is constrained.
+     */
+    @NonNull
+    private ExtraInfo getDeferredExtraInfo(Report report) {
+        if (deferLargeExtraInfo == null || !login.shouldUseApiToken() || history == null ||
+                !LinkQuality.getInstance().isConstrained(context)) {
+            return new ExtraInfo();
+        }
+        return report.getExtraInfo().longerThan(LARGE_EXTRA_INFO_LENGTH);
+    }
+
+    private static ExtraInfo getCoreExtraInfo(Report report, ExtraInfo deferred) {
+        ExtraInfo core = report.getExtraInfo().without(deferred);
+        core.put(KEY_SENT_LATER, TextUtils.join(", ", deferred.getInfo().keySet()));
+        return core;
+    }
+
+    /**
+     * Queues the left out extra info. The drain posts it as a follow-up comment on the issue
+     * recorded for the report's fingerprint.
+     */
+    private void defer(Report deferred) {
+        try {
+            ReportDrain.enqueue(context, target, login, deferred, deferLargeExtraInfo, false,
+                    null, true);
+        } catch (IOException e) {
+            Log.w(TAG, "Queueing the left out extra info failed", e);
+        }
+    }
+
+    /**
+     * Runs the action against the target's hosts in order of their health, failing over to the
+     * next host on network and server errors.
+     */
+    @Result
+    private String execute(Attempt action) {
+        EndpointHealth health = EndpointHealth.getInstance();
+        IOException failure = null;
+        List<String> endpoints = health.rank(target);
+        int attempts = Math.max(MAX_ATTEMPTS, endpoints.size());
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            String endpoint = endpoints.get(attempt % endpoints.size());
+            if (attempt >= endpoints.size()) {
+                // Every host failed once, so back off before trying again.
+                SystemClock.sleep(RETRY_DELAY_MILLIS << (attempt - endpoints.size()));
+            }
+            try {
+                action.run(endpoint);
+                health.recordSuccess(endpoint);
+                return RESULT_OK;
+            } catch (RequestException e) {
+                if (e.getStatus() < STATUS_SERVER_ERROR) {
+                    // The host is up but rejected the request, so a fallback won't help.
+                    health.recordSuccess(endpoint);
+                    return getResult(e);
+                }
+                health.recordFailure(endpoint);
+                failure = e;
+            } catch (IOException e) {
+                health.recordFailure(endpoint);
+                failure = e;
+            }
+            Log.w(TAG, "Submitting to " + endpoint + " failed", failure);
+        }
+        return RESULT_UNKNOWN;
+    }
+
+    private void submit(String endpoint, Report report, ReportBuffer body, List<String> labels,
+                        List<String> assignees) throws IOException {
+        StreamingGitHubClient client = GitHubClientCache.get(endpoint, login);
+        if (history != null && commentOnPreviousIssue(client, report)) {
+            return;
+        }
+
+        Issue created = mayHaveSucceeded ? findSubmittedIssue(client, report) : null;
+        if (created == null) {
+            if (firstAttemptMillis == 0) firstAttemptMillis = System.currentTimeMillis();
+            // From here on the issue may exist even if no response arrives.
+            mayHaveSucceeded = true;
+            created = client.createIssue(target.getUsername(), target.getRepository(),
+                    report.getTitle(), body, labels, assignees);
+        }
+        issueHtmlUrl = created.getHtmlUrl();
+        issueNumber = created.getNumber();
+        if (history != null) {
+            history.put(target, report, created.getNumber(), issueHtmlUrl);
+        }
+    }
+
+    /**
+     * Looks for an issue created by an earlier attempt whose response got lost. Only issues
+     * updated since the first attempt are listed, which is a single page in practice.
+     */
+    @Nullable
+    private Issue findSubmittedIssue(StreamingGitHubClient client, Report report)
+            throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Map<String, String> filter = new HashMap<>();
+        filter.put("state", "all");
+        filter.put("since", format.format(new Date(firstAttemptMillis - LOOKUP_CLOCK_SKEW_MILLIS)));
+        filter.put("sort", "created");
+        filter.put("direction", "desc");
+        String marker = report.getIdMarker();
+        for (Issue issue : client.getIssues(target.getUsername(), target.getRepository(),
+                filter)) {
+            if (issue.getBody() != null && issue.getBody().contains(marker)) {
+                return issue;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasComment(StreamingGitHubClient client, int number, Report report)
+            throws IOException {
+        String marker = report.getIdMarker();
+        for (Comment comment : client.getComments(target.getUsername(), target.getRepository(),
+                number)) {
+            if (comment.getBody() != null && comment.getBody().contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean commentOnPreviousIssue(StreamingGitHubClient client, Report report)
+            throws IOException {
+        IssueHistory.Entry previous = history.get(target, report.getFingerprint());
+        if (previous == null) return false;
+        try {
+            if (!mayHaveSucceeded || !hasComment(client, previous.getNumber(), report)) {
+                // From here on the comment may exist even if no response arrives.
+                mayHaveSucceeded = true;
+                client.createComment(target.getUsername(), target.getRepository(),
+                        previous.getNumber(),
+                        fit(report.getFollowUpDescription(previous.getVersionName(),
+                                previous.getExtraInfoHashes()), report));
+            }
+        } catch (RequestException e) {
+            if (e.getStatus() != STATUS_NOT_FOUND && e.getStatus() != STATUS_ISSUES_NOT_ENABLED)
+                throw e;
+            // The issue was deleted or transferred, so open a new one instead.
+            history.remove(target, report.getFingerprint());
+            mayHaveSucceeded = false;
+            return false;
+        }
+        issueHtmlUrl = previous.getHtmlUrl();
+        issueNumber = previous.getNumber();
+        history.put(target, report, previous.getNumber(), issueHtmlUrl);
+        return true;
+    }
+
+    @Result
+    private String getResult(RequestException e) {
+        switch (e.getStatus()) {
+            case STATUS_BAD_CREDENTIALS:
+                GitHubClientCache.evict(login);
+                if (login.shouldUseApiToken())
+                    return RESULT_INVALID_TOKEN;
+                return RESULT_BAD_CREDENTIALS;
+            case STATUS_NOT_FOUND:
+                // The repository doesn't exist or isn't visible with this login.
+            case STATUS_ISSUES_NOT_ENABLED:
+                return RESULT_ISSUES_NOT_ENABLED;
+            case STATUS_FORBIDDEN:
+                // GitHub reports exceeded rate limits as 403.
+            case STATUS_TOO_MANY_REQUESTS:
+                Log.w(TAG, "Submitting the report was rate limited", e);
+                return RESULT_UNKNOWN;
+            default:
+                Log.e(TAG, "Submitting the report failed", e);
+                return e.getStatus() >= STATUS_CLIENT_ERROR ? RESULT_REJECTED : RESULT_UNKNOWN;
+        }
+    }
+
+    private interface Attempt {
+        void run(String endpoint) throws IOException;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.telephony.TelephonyManager;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Estimates whether the current link is too slow or costly for large uploads, from the
+ * throughput of recent uploads and the connectivity state. Roaming and 2G connections are
+ * always considered constrained; otherwise the estimate decides, if there's a recent one.
+ */
+public final class LinkQuality {
+    public static final long DEFAULT_MIN_BYTES_PER_SECOND = 16 * 1024;
+
+    private static final long MIN_SAMPLE_BYTES = 8 * 1024;
+    private static final long SAMPLE_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+    private static final LinkQuality instance = new LinkQuality();
+
+    private long minBytesPerSecond = DEFAULT_MIN_BYTES_PER_SECOND;
+    private double bytesPerSecond = -1;
+    private long updated;
+
+    private LinkQuality() {
+    }
+
+    @NonNull
+    public static LinkQuality getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the throughput below which the link counts as constrained.
+     */
+    public synchronized void setMinBytesPerSecond(long minBytesPerSecond) {
+        if (minBytesPerSecond < 0)
+            throw new IllegalArgumentException("Minimum throughput must not be negative");
+        this.minBytesPerSecond = minBytesPerSecond;
+    }
+
+    /**
+     * Records an upload of {@code bytes} that took {@code millis} until the response arrived.
+     * Small uploads are ignored, as their duration is dominated by latency.
+     */
+    public synchronized void recordTransfer(long bytes, long millis) {
+        if (bytes < MIN_SAMPLE_BYTES) return;
+        double sample = bytes * 1000d / Math.max(1, millis);
+        long now = SystemClock.elapsedRealtime();
+        bytesPerSecond = bytesPerSecond < 0 || now - updated > SAMPLE_MAX_AGE_MILLIS ? sample :
+                THROUGHPUT_SMOOTHING * sample + (1 - THROUGHPUT_SMOOTHING) * bytesPerSecond;
+        updated = now;
+    }
+
+    /**
+     * The smoothed throughput of recent uploads in bytes per second, or -1 if there's no recent
+     * estimate.
+     */
+    public synchronized long getBytesPerSecond() {
+        if (bytesPerSecond < 0 || SystemClock.elapsedRealtime() - updated > SAMPLE_MAX_AGE_MILLIS)
+            return -1;
+        return (long) bytesPerSecond;
+    }
+
+    /**
+     * Whether recent uploads were slower than the minimum throughput. Without a recent
+     * estimate the link isn't considered slow.
+     */
+    public synchronized boolean isSlow() {
+        long bytesPerSecond = getBytesPerSecond();
+        return bytesPerSecond >= 0 && bytesPerSecond < minBytesPerSecond;
+    }
+
+    public boolean isConstrained(@NonNull Context context) {
+        return isConstrainedNetwork(context) || isSlow();
+    }
+
+    private static boolean isConstrainedNetwork(Context context) {
+        ConnectivityManager connectivityManager = (ConnectivityManager)
+                context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) return false;
+        @SuppressLint("MissingPermission")
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) return false;
+        if (networkInfo.isRoaming()) return true;
+        if (networkInfo.getType() != ConnectivityManager.TYPE_MOBILE) return false;
+        switch (networkInfo.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import static com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.RESULT_INVALID_TOKEN;
+import static com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.RESULT_ISSUES_NOT_ENABLED;
+import static com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.RESULT_OK;
+import static com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.RESULT_UNKNOWN;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter.Result;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.model.github.Repository;
+import com.heinrichreimersoftware.androidissuereporter.util.Hashes;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Checks up front whether reports to a target can succeed: the repository must exist and have
+ * issues enabled, and the token must be valid with a scope allowing to open issues. Results
+ * are cached and revalidated with {@code If-None-Match}, so repeated checks cost a {@code 304}
+ * response, which doesn't count against the rate limit.
+ */
+public class RepositoryPreflight {
+    private static final String TAG = RepositoryPreflight.class.getSimpleName();
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String PREFERENCES_NAME = "air_preflight";
+    private static final String KEY_ETAG = "etag:";
+    private static final String KEY_RESULT = "result:";
+    private static final String KEY_CHECKED_AT = "checked_at:";
+
+    private static final String HEADER_OAUTH_SCOPES = "X-OAuth-Scopes";
+    private static final String SCOPE_REPO = "repo";
+    private static final String SCOPE_PUBLIC_REPO = "public_repo";
+
+    private static final int STATUS_BAD_CREDENTIALS = 401;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_ISSUES_NOT_ENABLED = 410;
+    private static final int STATUS_SERVER_ERROR = 500;
+
+    private static RepositoryPreflight instance;
+
+    private final SharedPreferences preferences;
+    /** Counts invalidations, so a check started before one doesn't store its stale result. */
+    private int generation;
+
+    private RepositoryPreflight(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized RepositoryPreflight getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new RepositoryPreflight(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Checks the target in the background, e.g. at app start, so the reporter finds a fresh
+     * result when it opens.
+     */
+    public void prefetch(@NonNull GithubTarget target, @Nullable GithubLogin login) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> check(target, login, DEFAULT_MAX_AGE_MILLIS));
+    }
+
+    /**
+     * Returns the cached result without any network access, or {@code null} if the target
+     * wasn't checked yet.
+     */
+    @Nullable
+    @Result
+    public synchronized String getCached(@NonNull GithubTarget target,
+                                         @Nullable GithubLogin login) {
+        //noinspection WrongConstant
+        return preferences.getString(KEY_RESULT + key(target, login), null);
+    }
+
+    /**
+     * Returns the cached result if it's younger than {@code maxAgeMillis}, and revalidates it
+     * otherwise. If the check fails, e.g. when offline, the last known result is returned, or
+     * {@link IssueSubmitter#RESULT_UNKNOWN} if there is none.
+     * <p>
+     * Only the cache access holds the lock, so {@link #getCached} and {@link #invalidate} don't
+     * wait for the network.
+     */
+    @WorkerThread
+    @NonNull
+    @Result
+    public String check(@NonNull GithubTarget target, @Nullable GithubLogin login,
+                        long maxAgeMillis) {
+        String key = key(target, login);
+        long now = System.currentTimeMillis();
+        String cached;
+        String etag;
+        int checkedGeneration;
+        synchronized (this) {
+            //noinspection WrongConstant
+            cached = preferences.getString(KEY_RESULT + key, null);
+            if (cached != null
+                    && now - preferences.getLong(KEY_CHECKED_AT + key, 0) < maxAgeMillis) {
+                return cached;
+            }
+            etag = cached != null ? preferences.getString(KEY_ETAG + key, null) : null;
+            checkedGeneration = generation;
+        }
+
+        EndpointHealth health = EndpointHealth.getInstance();
+        for (String endpoint : health.rank(target)) {
+            StreamingGitHubClient client = login != null ?
+                    GitHubClientCache.get(endpoint, login) :
+                    StreamingGitHubClient.forBaseUrl(endpoint);
+            String result;
+            try {
+                StreamingGitHubClient.Conditional<Repository> response = client.getIfNoneMatch(
+                        "/repos/" + target.getUsername() + "/" + target.getRepository(),
+                        etag, Repository::readJson);
+                health.recordSuccess(endpoint);
+                if (response.isNotModified()) {
+                    result = cached;
+                } else {
+                    etag = response.getEtag();
+                    result = getResult(response, login);
+                }
+            } catch (RequestException e) {
+                if (e.getStatus() >= STATUS_SERVER_ERROR) {
+                    health.recordFailure(endpoint);
+                    Log.w(TAG, "Checking " + target + " on " + endpoint + " failed", e);
+                    continue;
+                }
+                health.recordSuccess(endpoint);
+                etag = null;
+                result = getResult(e, login);
+            } catch (IOException e) {
+                health.recordFailure(endpoint);
+                Log.w(TAG, "Checking " + target + " on " + endpoint + " failed", e);
+                continue;
+            }
+            if (RESULT_UNKNOWN.equals(result)) break;
+            synchronized (this) {
+                if (checkedGeneration == generation) {
+                    preferences.edit()
+                            .putString(KEY_ETAG + key, etag)
+                            .putString(KEY_RESULT + key, result)
+                            .putLong(KEY_CHECKED_AT + key, now)
+                            .apply();
+                }
+            }
+            return result;
+        }
+        return cached != null ? cached : RESULT_UNKNOWN;
+    }
+
+    /**
+     * Forgets the cached result, e.g. after a submission failed in a way the check didn't
+     * predict.
+     */
+    public synchronized void invalidate(@NonNull GithubTarget target,
+                                        @Nullable GithubLogin login) {
+        String key = key(target, login);
+        generation++;
+        preferences.edit()
+                .remove(KEY_ETAG + key)
+                .remove(KEY_RESULT + key)
+                .remove(KEY_CHECKED_AT + key)
+                .apply();
+    }
+
+    @Result
+    private static String getResult(StreamingGitHubClient.Conditional<Repository> response,
+                                    @Nullable GithubLogin login) {
+        Repository repository = response.getBody();
+        if (repository == null) return RESULT_UNKNOWN;
+        if (!repository.hasIssues()) return RESULT_ISSUES_NOT_ENABLED;
+        if (login != null && login.shouldUseApiToken()) {
+            // Only classic tokens report their scopes; fine-grained tokens can't be checked here.
+            String scopes = response.getHeader(HEADER_OAUTH_SCOPES);
+            if (scopes != null && !hasScope(scopes, SCOPE_REPO)
+                    && (repository.isPrivate() || !hasScope(scopes, SCOPE_PUBLIC_REPO))) {
+                return RESULT_INVALID_TOKEN;
+            }
+        }
+        return RESULT_OK;
+    }
+
+    @Result
+    private static String getResult(RequestException e, @Nullable GithubLogin login) {
+        switch (e.getStatus()) {
+            case STATUS_BAD_CREDENTIALS:
+                if (login != null) GitHubClientCache.evict(login);
+                return RESULT_INVALID_TOKEN;
+            case STATUS_NOT_FOUND:
+                // The repository doesn't exist or isn't visible with this login.
+            case STATUS_ISSUES_NOT_ENABLED:
+                return RESULT_ISSUES_NOT_ENABLED;
+            default:
+                Log.w(TAG, "Unexpected preflight response", e);
+                return RESULT_UNKNOWN;
+        }
+    }
+
+    private static boolean hasScope(String scopes, String scope) {
+        for (String granted : scopes.split(",")) {
+            if (granted.trim().equals(scope)) return true;
+        }
+        return false;
+    }
+
+    private static String key(GithubTarget target, @Nullable GithubLogin login) {
+        String credentials = login == null ? "" : login.shouldUseApiToken() ?
+                login.getApiToken() : login.getUsername();
+        // Tokens are only stored as a hash.
+        return target + "#" + (TextUtils.isEmpty(credentials) ? "" :
+                Hashes.fnv1a64(credentials));
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.JsonReader;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.Comment;
+import com.heinrichreimersoftware.androidissuereporter.model.github.Issue;
+import com.heinrichreimersoftware.androidissuereporter.model.github.Repository;
+import com.heinrichreimersoftware.androidissuereporter.storage.ReportBuffer;
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Minimal client for the few GitHub REST endpoints the reporter needs. Request bodies are
+ * streamed, e.g. the issue body straight from a {@link ReportBuffer}, and responses are read
+ * with a {@link JsonReader} that keeps only the fields the reporter uses.
+ */
+public class StreamingGitHubClient {
+    static final String HOST_API = "api.github.com";
+
+    private static final String PREFIX_ENTERPRISE = "/api/v3";
+    private static final String ACCEPT = "application/vnd.github.v3+json";
+    private static final String USER_AGENT = "android-issue-reporter";
+    private static final String CHARSET = "UTF-8";
+    private static final int PAGE_SIZE = 100;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private final String apiRoot;
+    @Nullable
+    private String authorization;
+    private volatile int remainingRequests = -1;
+    private volatile int requestLimit = -1;
+
+    public StreamingGitHubClient() {
+        this(HOST_API, -1, "https");
+    }
+
+    public StreamingGitHubClient(@NonNull String hostname, int port, @NonNull String scheme) {
+        StringBuilder root = new StringBuilder(scheme).append("://").append(hostname);
+        if (port > 0) root.append(':').append(port);
+        // GitHub Enterprise serves the API under a prefix.
+        if (!HOST_API.equals(hostname)) root.append(PREFIX_ENTERPRISE);
+        this.apiRoot = root.toString();
+    }
+
+    /**
+     * Creates a client for an API base URL such as {@code https://api.github.com} or
+     * {@code https://github.example.com/api/v3}. Only scheme, host and port are used; the
+     * {@code /api/v3} prefix is added for every host other than api.github.com.
+     */
+    @NonNull
+    public static StreamingGitHubClient forBaseUrl(@NonNull String apiBaseUrl) {
+        try {
+            URL url = new URL(apiBaseUrl);
+            return new StreamingGitHubClient(url.getHost(), url.getPort(), url.getProtocol());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid API base URL: " + apiBaseUrl, e);
+        }
+    }
+
+    /**
+     * Returns the URL that API paths are appended to.
+     */
+    @NonNull
+    static String apiRoot(@NonNull String apiBaseUrl) {
+        return forBaseUrl(apiBaseUrl).apiRoot;
+    }
+
+    public StreamingGitHubClient setOAuth2Token(@Nullable String token) {
+        authorization = token != null ? "token " + token : null;
+        return this;
+    }
+
+    public StreamingGitHubClient setCredentials(@Nullable String username,
+                                                @Nullable String password) {
+        if (username == null || password == null) {
+            authorization = null;
+            return this;
+        }
+        try {
+            byte[] credentials = (username + ':' + password).getBytes(CHARSET);
+            authorization = "Basic " + Base64.encodeToString(credentials, Base64.NO_WRAP);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Requests left in the current rate limit window as of the last response, or -1 if unknown.
+     */
+    public int getRemainingRequests() {
+        return remainingRequests;
+    }
+
+    public int getRequestLimit() {
+        return requestLimit;
+    }
+
+    @NonNull
+    public Issue createIssue(@NonNull String owner, @NonNull String repository,
+                             @NonNull String title, @NonNull ReportBuffer body) throws IOException {
+        return createIssue(owner, repository, title, body, Collections.<String>emptyList(),
+                Collections.<String>emptyList());
+    }
+
+    /**
+     * Creates an issue with labels and assignees. GitHub silently drops both if the
+     * authenticated user has no push access to the repository.
+     */
+    @NonNull
+    public Issue createIssue(@NonNull String owner, @NonNull String repository,
+                             @NonNull String title, @NonNull ReportBuffer body,
+                             @NonNull List<String> labels, @NonNull List<String> assignees)
+            throws IOException {
+        return post(repositoryPath(owner, repository) + "/issues", writer -> {
+            writer.write("{\"title\":");
+            JsonUtils.writeString(writer, title);
+            writer.write(",\"body\":");
+            try (Reader reader = body.openReader()) {
+                JsonUtils.writeString(writer, reader);
+            }
+            writeArray(writer, "labels", labels);
+            writeArray(writer, "assignees", assignees);
+            writer.write('}');
+        }, Issue::readJson);
+    }
+
+    @NonNull
+    public Comment createComment(@NonNull String owner, @NonNull String repository, int number,
+                                 @NonNull String body) throws IOException {
+        return post(repositoryPath(owner, repository) + "/issues/" + number + "/comments",
+                writer -> {
+                    writer.write("{\"body\":");
+                    JsonUtils.writeString(writer, body);
+                    writer.write('}');
+                }, Comment::readJson);
+    }
+
+    /**
+     * Lists all comments of an issue, oldest first.
+     */
+    @NonNull
+    public List<Comment> getComments(@NonNull String owner, @NonNull String repository,
+                                     int number) throws IOException {
+        return getAll(repositoryPath(owner, repository) + "/issues/" + number + "/comments?",
+                Comment::readJson);
+    }
+
+    /**
+     * Lists all issues and pull requests matching the filter, e.g. {@code state}, {@code since},
+     * {@code sort} and {@code direction}.
+     */
+    @NonNull
+    public List<Issue> getIssues(@NonNull String owner, @NonNull String repository,
+                                 @NonNull Map<String, String> filter) throws IOException {
+        StringBuilder uri = new StringBuilder(repositoryPath(owner, repository))
+                .append("/issues?");
+        for (Map.Entry<String, String> parameter : filter.entrySet()) {
+            uri.append(encode(parameter.getKey())).append('=')
+                    .append(encode(parameter.getValue())).append('&');
+        }
+        return getAll(uri.toString(), Issue::readJson);
+    }
+
+    /**
+     * Searches issues and pull requests with GitHub's search syntax, e.g.
+     * {@code repo:owner/repository is:issue is:open crash}. Search results may lag behind
+     * recent changes.
+     */
+    @NonNull
+    public List<Issue> searchIssues(@NonNull String query, int limit) throws IOException {
+        String uri = "/search/issues?q=" + encode(query) + "&per_page="
+                + Math.max(1, Math.min(limit, PAGE_SIZE));
+        List<Issue> issues = get(uri, reader -> {
+            List<Issue> items = Collections.emptyList();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("items".equals(reader.nextName())) {
+                    items = readList(reader, Issue::readJson);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return items;
+        });
+        return issues.size() > limit ? issues.subList(0, limit) : issues;
+    }
+
+    @NonNull
+    public Repository getRepository(@NonNull String owner, @NonNull String repository)
+            throws IOException {
+        return get(repositoryPath(owner, repository), Repository::readJson);
+    }
+
+    @NonNull
+    public <V> V get(@NonNull String uri, @NonNull Parser<V> parser) throws IOException {
+        return this.<V>getIfNoneMatch(uri, null, parser).getBody();
+    }
+
+    /**
+     * Sends a GET request with {@code If-None-Match}, so an unchanged resource costs a
+     * {@code 304} response without a body. GitHub doesn't count those against the rate limit.
+     */
+    @NonNull
+    public <V> Conditional<V> getIfNoneMatch(@NonNull String uri, @Nullable String etag,
+                                             @NonNull Parser<V> parser) throws IOException {
+        HttpURLConnection request = open("GET", apiRoot + uri);
+        if (etag != null) {
+            request.setRequestProperty("If-None-Match", etag);
+        }
+        int code = request.getResponseCode();
+        updateRateLimits(request);
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            close(request.getInputStream());
+            return new Conditional<>(true, null, etag, request.getHeaderFields());
+        }
+        V body = read(request, code, parser);
+        return new Conditional<>(false, body, request.getHeaderField("ETag"),
+                request.getHeaderFields());
+    }
+
+    /**
+     * Reads an array of values.
+     */
+    @NonNull
+    public static <V> List<V> readList(@NonNull JsonReader reader, @NonNull Parser<V> parser)
+            throws IOException {
+        List<V> values = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            values.add(parser.parse(reader));
+        }
+        reader.endArray();
+        return values;
+    }
+
+    private <V> List<V> getAll(String uri, Parser<V> parser) throws IOException {
+        List<V> values = new ArrayList<>();
+        String url = apiRoot + uri + "per_page=" + PAGE_SIZE;
+        while (url != null) {
+            HttpURLConnection request = open("GET", url);
+            int code = request.getResponseCode();
+            updateRateLimits(request);
+            values.addAll(read(request, code, reader -> readList(reader, parser)));
+            url = nextPage(request.getHeaderField("Link"));
+        }
+        return values;
+    }
+
+    private <V> V post(String uri, BodyWriter body, Parser<V> parser) throws IOException {
+        HttpURLConnection request = open("POST", apiRoot + uri);
+        request.setDoOutput(true);
+        request.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        request.setChunkedStreamingMode(0);
+        long start = SystemClock.elapsedRealtime();
+        CountingOutputStream output = new CountingOutputStream(request.getOutputStream());
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, CHARSET))) {
+            body.write(writer);
+        }
+        int code = request.getResponseCode();
+        LinkQuality.getInstance().recordTransfer(output.count,
+                SystemClock.elapsedRealtime() - start);
+        updateRateLimits(request);
+        return read(request, code, parser);
+    }
+
+    private HttpURLConnection open(String method, String url) throws IOException {
+        HttpURLConnection request = (HttpURLConnection) new URL(url).openConnection();
+        request.setRequestMethod(method);
+        request.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        request.setReadTimeout(READ_TIMEOUT_MILLIS);
+        request.setRequestProperty("Accept", ACCEPT);
+        request.setRequestProperty("User-Agent", USER_AGENT);
+        if (authorization != null) {
+            request.setRequestProperty("Authorization", authorization);
+        }
+        return request;
+    }
+
+    /**
+     * Parses a successful response, or throws a {@link RequestException} with GitHub's error
+     * message. Either way the response is read to the end, so the connection can be reused.
+     */
+    private static <V> V read(HttpURLConnection request, int code, Parser<V> parser)
+            throws IOException {
+        if (code >= 200 && code < 300) {
+            try (JsonReader reader = new JsonReader(new BufferedReader(
+                    new InputStreamReader(request.getInputStream(), CHARSET)))) {
+                V value = parser.parse(reader);
+                if (value == null) throw new IOException("Empty response");
+                return value;
+            }
+        }
+        throw createException(request.getErrorStream(), code);
+    }
+
+    private static RequestException createException(@Nullable InputStream stream, int code) {
+        if (stream == null) return new RequestException(code, null);
+        String message = null;
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(stream, CHARSET)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("message".equals(reader.nextName())) {
+                    message = JsonUtils.nextString(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            // Not a JSON error, e.g. a proxy's error page.
+        }
+        return new RequestException(code, message);
+    }
+
+    private void updateRateLimits(HttpURLConnection request) {
+        remainingRequests = parseInt(request.getHeaderField("X-RateLimit-Remaining"),
+                remainingRequests);
+        requestLimit = parseInt(request.getHeaderField("X-RateLimit-Limit"), requestLimit);
+    }
+
+    private static int parseInt(@Nullable String value, int fallback) {
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Returns the {@code rel="next"} URL of a {@code Link} header.
+     */
+    @Nullable
+    private static String nextPage(@Nullable String link) {
+        if (link == null) return null;
+        for (String part : link.split(",")) {
+            int start = part.indexOf('<');
+            int end = part.indexOf('>', start + 1);
+            if (start >= 0 && end > start && part.indexOf("rel=\"next\"", end) > 0) {
+                return part.substring(start + 1, end);
+            }
+        }
+        return null;
+    }
+
+    private static void close(@Nullable InputStream stream) throws IOException {
+        if (stream != null) stream.close();
+    }
+
+    private static void writeArray(Writer writer, String name, List<String> values)
+            throws IOException {
+        if (values.isEmpty()) return;
+        writer.write(",\"" + name + "\":[");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) writer.write(',');
+            JsonUtils.writeString(writer, values.get(i));
+        }
+        writer.write(']');
+    }
+
+    private static String repositoryPath(String owner, String repository) throws IOException {
+        return "/repos/" + encode(owner) + "/" + encode(repository);
+    }
+
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, CHARSET);
+    }
+
+    /**
+     * Reads a response body.
+     */
+    public interface Parser<V> {
+        V parse(@NonNull JsonReader reader) throws IOException;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private interface BodyWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    public static final class Conditional<V> {
+        private final boolean notModified;
+        @Nullable
+        private final V body;
+        @Nullable
+        private final String etag;
+        private final Map<String, List<String>> headers;
+
+        private Conditional(boolean notModified, @Nullable V body, @Nullable String etag,
+                            @Nullable Map<String, List<String>> headers) {
+            this.notModified = notModified;
+            this.body = body;
+            this.etag = etag;
+            this.headers = headers != null ? headers : Collections.emptyMap();
+        }
+
+        public boolean isNotModified() {
+            return notModified;
+        }
+
+        /**
+         * The parsed response, or {@code null} if the resource wasn't modified.
+         */
+        @Nullable
+        public V getBody() {
+            return body;
+        }
+
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Returns the first value of the response header, ignoring the case of its name.
+         */
+        @Nullable
+        public String getHeader(@NonNull String name) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                    return header.getValue().get(0);
+                }
+            }
+            return null;
+        }
+    }
+}
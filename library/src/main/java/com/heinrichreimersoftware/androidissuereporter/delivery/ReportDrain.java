@@ -0,0 +1,198 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.delivery;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.routing.ReportRouter;
+import com.heinrichreimersoftware.androidissuereporter.storage.ReportQueue;
+import com.heinrichreimersoftware.androidissuereporter.util.Hashes;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+/**
+ * Defers delivery of reports to a {@link ReportDrainWorker} that runs once the given
+ * constraints are met, e.g. on an unmetered network while charging. Only logins with an API
+ * token are supported, as passwords are never persisted. The token is kept in the app's private
+ * preferences; the work request only refers to it.
+ */
+public final class ReportDrain {
+    public static final Constraints DEFAULT_CONSTRAINTS = new Constraints.Builder()
+            .setRequiredNetworkType(NetworkType.UNMETERED)
+            .setRequiresBatteryNotLow(true)
+            .build();
+    public static final int DEFAULT_BATCH_SIZE = 10;
+
+    private static final String UNIQUE_WORK_PREFIX = "air_drain:";
+    private static final String PREFERENCES_NAME = "air_drain_logins";
+    private static final long BACKOFF_DELAY_MINUTES = 15;
+
+    static final String KEY_USERNAME = "username";
+    static final String KEY_REPOSITORY = "repository";
+    static final String KEY_API_BASE_URL = "apiBaseUrl";
+    static final String KEY_WEB_BASE_URL = "webBaseUrl";
+    static final String KEY_FALLBACK_API_BASE_URLS = "fallbackApiBaseUrls";
+    static final String KEY_LOGIN = "login";
+    static final String KEY_EMBED_JSON = "embedJson";
+    static final String KEY_BATCH_SIZE = "batchSize";
+    static final String KEY_ROUTER = "router";
+
+    private ReportDrain() {
+    }
+
+    /**
+     * Stores the report and schedules its delivery. Collects the report's diagnostics, so call
+     * this off the main thread.
+     */
+    @WorkerThread
+    public static void enqueue(@NonNull Context context, @NonNull GithubTarget target,
+                               @NonNull GithubLogin login, @NonNull Report report,
+                               @NonNull Constraints constraints, boolean embedJson)
+            throws IOException {
+        enqueue(context, target, login, report, constraints, embedJson, null);
+    }
+
+    /**
+     * Like {@link #enqueue(Context, GithubTarget, GithubLogin, Report, Constraints, boolean)},
+     * labeling the issue with the {@link ReportRouter} registered as {@code router}.
+     */
+    @WorkerThread
+    public static void enqueue(@NonNull Context context, @NonNull GithubTarget target,
+                               @NonNull GithubLogin login, @NonNull Report report,
+                               @NonNull Constraints constraints, boolean embedJson,
+                               @Nullable String router) throws IOException {
+        enqueue(context, target, login, report, constraints, embedJson, router, false);
+    }
+
+    /**
+     * Like {@link #enqueue(Context, GithubTarget, GithubLogin, Report, Constraints, boolean,
+     * String)}. If {@code followUpAsComment} is set, a report of an already reported problem is
+     * added as a comment to the earlier issue, like
+     * {@link com.heinrichreimersoftware.androidissuereporter.IssueReporterLauncher#followUpAsComment(boolean)}.
+     */
+    @WorkerThread
+    public static void enqueue(@NonNull Context context, @NonNull GithubTarget target,
+                               @NonNull GithubLogin login, @NonNull Report report,
+                               @NonNull Constraints constraints, boolean embedJson,
+                               @Nullable String router, boolean followUpAsComment)
+            throws IOException {
+        checkLogin(login);
+        new ReportQueue(context, target).add(report, followUpAsComment);
+        schedule(context, target, login, constraints, embedJson, router, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Schedules delivery of the reports queued for the target. Does nothing if a drain is
+     * already pending for the target; a running drain picks up newly queued reports.
+     */
+    public static void schedule(@NonNull Context context, @NonNull GithubTarget target,
+                                @NonNull GithubLogin login, @NonNull Constraints constraints,
+                                boolean embedJson, int batchSize) {
+        schedule(context, target, login, constraints, embedJson, null, batchSize);
+    }
+
+    /**
+     * Schedules delivery like {@link #schedule(Context, GithubTarget, GithubLogin, Constraints,
+     * boolean, int)}. As only one drain is pending per target, the options of the pending drain
+     * apply to every report queued meanwhile, except whether to follow up as a comment, which is
+     * stored with each report.
+     */
+    public static void schedule(@NonNull Context context, @NonNull GithubTarget target,
+                                @NonNull GithubLogin login, @NonNull Constraints constraints,
+                                boolean embedJson, @Nullable String router, int batchSize) {
+        checkLogin(login);
+        // Work data ends up in WorkManager's database, so it only refers to the stored token.
+        String reference = Hashes.fnv1a64(target.toString());
+        getLogins(context).edit()
+                .putString(reference, login.getApiToken())
+                .commit();
+        List<String> fallbacks = target.getFallbackApiBaseUrls();
+        Data input = new Data.Builder()
+                .putString(KEY_USERNAME, target.getUsername())
+                .putString(KEY_REPOSITORY, target.getRepository())
+                .putString(KEY_API_BASE_URL, target.getApiBaseUrl())
+                .putString(KEY_WEB_BASE_URL, target.getWebBaseUrl())
+                .putStringArray(KEY_FALLBACK_API_BASE_URLS, fallbacks.toArray(new String[0]))
+                .putString(KEY_LOGIN, reference)
+                .putBoolean(KEY_EMBED_JSON, embedJson)
+                .putInt(KEY_BATCH_SIZE, batchSize)
+                .putString(KEY_ROUTER, router)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(ReportDrainWorker.class)
+                .setConstraints(constraints)
+                .setInputData(input)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY_MINUTES,
+                        TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(getUniqueWorkName(target),
+                ExistingWorkPolicy.KEEP, request);
+    }
+
+    static String getUniqueWorkName(GithubTarget target) {
+        return UNIQUE_WORK_PREFIX + target;
+    }
+
+    static GithubTarget getTarget(Data input) {
+        String[] fallbacks = input.getStringArray(KEY_FALLBACK_API_BASE_URLS);
+        return new GithubTarget(input.getString(KEY_USERNAME), input.getString(KEY_REPOSITORY),
+                input.getString(KEY_API_BASE_URL), input.getString(KEY_WEB_BASE_URL),
+                fallbacks != null ? fallbacks : new String[0]);
+    }
+
+    /**
+     * Returns the API token stored for the work's {@link #KEY_LOGIN} reference.
+     */
+    @Nullable
+    static String getApiToken(@NonNull Context context, @NonNull Data input) {
+        String reference = input.getString(KEY_LOGIN);
+        return reference != null ? getLogins(context).getString(reference, null) : null;
+    }
+
+    private static SharedPreferences getLogins(Context context) {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static void checkLogin(GithubLogin login) {
+        if (!login.shouldUseApiToken())
+            throw new IllegalArgumentException("Deferred delivery requires an API token login");
+    }
+}
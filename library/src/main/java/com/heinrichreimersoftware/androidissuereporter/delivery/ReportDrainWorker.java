@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.delivery;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.routing.ReportRouter;
+import com.heinrichreimersoftware.androidissuereporter.routing.Route;
+import com.heinrichreimersoftware.androidissuereporter.storage.IssueHistory;
+import com.heinrichreimersoftware.androidissuereporter.storage.ReportQueue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.work.Data;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * Submits queued reports in batches until the queue is empty. Transient failures are retried
+ * with backoff; the reports stay queued until they were delivered. Reports GitHub rejects are
+ * moved aside, so they don't block the rest of the queue. Only one drain per queue runs at a
+ * time, even if several processes of the app schedule one.
+ */
+public class ReportDrainWorker extends Worker {
+    private static final String TAG = ReportDrainWorker.class.getSimpleName();
+
+    public ReportDrainWorker(@NonNull Context context, @NonNull WorkerParameters parameters) {
+        super(context, parameters);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Data input = getInputData();
+        Context context = getApplicationContext();
+        String apiToken = ReportDrain.getApiToken(context, input);
+        if (TextUtils.isEmpty(apiToken)) return Result.failure();
+
+        GithubTarget target = ReportDrain.getTarget(input);
+        ReportQueue queue = new ReportQueue(context, target);
+        IssueSubmitter submitter = new IssueSubmitter(context, target, new GithubLogin(apiToken))
+                .setEmbedJson(input.getBoolean(ReportDrain.KEY_EMBED_JSON, false));
+        ReportRouter router = getRouter(input.getString(ReportDrain.KEY_ROUTER));
+        int batchSize = Math.max(1, input.getInt(ReportDrain.KEY_BATCH_SIZE,
+                ReportDrain.DEFAULT_BATCH_SIZE));
+
+        // Another process of the app may run a drain for the same queue.
+        try (Closeable claim = queue.tryClaim()) {
+            if (claim == null) return Result.retry();
+            return drain(queue, submitter, IssueHistory.getInstance(context), router, batchSize);
+        } catch (IOException e) {
+            Log.w(TAG, "Claiming the queue failed", e);
+            return Result.retry();
+        }
+    }
+
+    private Result drain(ReportQueue queue, IssueSubmitter submitter, IssueHistory history,
+                         @Nullable ReportRouter router, int batchSize) {
+        List<ReportQueue.Entry> batch;
+        while (!(batch = queue.peekEntries(batchSize)).isEmpty()) {
+            for (ReportQueue.Entry entry : batch) {
+                if (isStopped()) return Result.retry();
+
+                Report report = entry.getReport();
+                submitter.setHistory(entry.isFollowUpAsComment() ? history : null);
+                // Queued reports include their diagnostics, so the rules can match them too.
+                Route route = router != null ? router.route(report) : null;
+                String result = submitter.submit(report, route);
+                switch (result) {
+                    case IssueSubmitter.RESULT_OK:
+                        // Stop if the report stays queued, the next batch would send it again.
+                        if (!remove(queue, report, false)) return Result.retry();
+                        break;
+                    case IssueSubmitter.RESULT_REJECTED:
+                        // Sending the report again won't help, but the next ones may succeed.
+                        Log.w(TAG, "GitHub rejected report " + report.getId());
+                        if (!remove(queue, report, true)) return Result.retry();
+                        break;
+                    case IssueSubmitter.RESULT_UNKNOWN:
+                        // Likely a network or server problem, so try again later.
+                        return Result.retry();
+                    default:
+                        // Retrying won't help with bad credentials or disabled issues. Keep the
+                        // reports, so they're sent once the app ships a working configuration.
+                        Log.w(TAG, "Delivering queued reports failed: " + result);
+                        return Result.failure();
+                }
+            }
+        }
+        return Result.success();
+    }
+
+    private static boolean remove(ReportQueue queue, Report report, boolean rejected) {
+        try {
+            if (rejected) {
+                queue.reject(report);
+            } else {
+                queue.remove(report);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Removing report " + report.getId() + " from the queue failed", e);
+            return false;
+        }
+    }
+
+    @Nullable
+    private static ReportRouter getRouter(@Nullable String name) {
+        if (name == null) return null;
+        ReportRouter router = ReportRouter.get(name);
+        if (router == null) {
+            // Routers must be registered in Application.onCreate() to exist in this process.
+            Log.w(TAG, "No router registered as " + name + ", not labeling reports");
+        }
+        return router;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.diagnostics;
+
+import android.annotation.SuppressLint;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Environment;
+import android.os.StatFs;
+import android.text.format.Formatter;
+
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Built-in {@link DiagnosticSource}s for common device state.
+ */
+public final class DiagnosticSources {
+    private static final int MAX_STACK_TRACE_DEPTH = 16;
+
+    private DiagnosticSources() {
+    }
+
+    public static void addDefaults(@NonNull DiagnosticsCollector collector, @NonNull Context context) {
+        collector.add("storage", storage(context))
+                .add("memory", memory(context))
+                .add("battery", battery(context))
+                .add("network", network(context));
+    }
+
+    @NonNull
+    public static DiagnosticSource storage(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        return extraInfo -> {
+            StatFs statFs = new StatFs(Environment.getDataDirectory().getPath());
+            long available;
+            long total;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                available = statFs.getAvailableBytes();
+                total = statFs.getTotalBytes();
+            } else {
+                //noinspection deprecation
+                available = (long) statFs.getAvailableBlocks() * statFs.getBlockSize();
+                //noinspection deprecation
+                total = (long) statFs.getBlockCount() * statFs.getBlockSize();
+            }
+            extraInfo.put("Storage available", Formatter.formatFileSize(appContext, available)
+                    + " / " + Formatter.formatFileSize(appContext, total));
+        };
+    }
+
+    @NonNull
+    public static DiagnosticSource memory(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        return extraInfo -> {
+            ActivityManager activityManager = (ActivityManager)
+                    appContext.getSystemService(Context.ACTIVITY_SERVICE);
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(memoryInfo);
+            String available = Formatter.formatFileSize(appContext, memoryInfo.availMem);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                available += " / " + Formatter.formatFileSize(appContext, memoryInfo.totalMem);
+            }
+            extraInfo.put("Memory available", available);
+            extraInfo.put("Memory low", memoryInfo.lowMemory);
+
+            Runtime runtime = Runtime.getRuntime();
+            extraInfo.put("Heap used", Formatter.formatFileSize(appContext,
+                    runtime.totalMemory() - runtime.freeMemory())
+                    + " / " + Formatter.formatFileSize(appContext, runtime.maxMemory()));
+        };
+    }
+
+    @NonNull
+    public static DiagnosticSource battery(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        return extraInfo -> {
+            Intent battery = appContext.registerReceiver(null,
+                    new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (battery == null) return;
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                extraInfo.put("Battery level", (100 * level / scale) + "%");
+            }
+            extraInfo.put("Battery charging",
+                    battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0);
+        };
+    }
+
+    @NonNull
+    public static DiagnosticSource network(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        return extraInfo -> {
+            ConnectivityManager connectivityManager = (ConnectivityManager)
+                    appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+            @SuppressLint("MissingPermission")
+            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+            if (networkInfo == null || !networkInfo.isConnected()) {
+                extraInfo.put("Network", "disconnected");
+                return;
+            }
+            String network = networkInfo.getTypeName();
+            if (networkInfo.getSubtypeName() != null && !networkInfo.getSubtypeName().isEmpty()) {
+                network += " (" + networkInfo.getSubtypeName() + ")";
+            }
+            extraInfo.put("Network", network);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                extraInfo.put("Network metered", connectivityManager.isActiveNetworkMetered());
+            }
+        };
+    }
+
+    @NonNull
+    public static DiagnosticSource threadDump() {
+        return extraInfo -> {
+            StringBuilder dump = new StringBuilder();
+            for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+                Thread thread = entry.getKey();
+                dump.append('"').append(thread.getName()).append("\" ")
+                        .append(thread.getState()).append('\n');
+                StackTraceElement[] stackTrace = entry.getValue();
+                for (int i = 0; i < stackTrace.length && i < MAX_STACK_TRACE_DEPTH; i++) {
+                    dump.append("    at ").append(stackTrace[i]).append('\n');
+                }
+                if (stackTrace.length > MAX_STACK_TRACE_DEPTH) {
+                    dump.append("    ...\n");
+                }
+            }
+            extraInfo.put("Threads", dump.toString());
+        };
+    }
+}
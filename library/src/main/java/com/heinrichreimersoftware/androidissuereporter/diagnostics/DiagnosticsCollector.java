@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.diagnostics;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Runs {@link DiagnosticSource}s concurrently and joins their results in registration order.
+ * Every source has its own timeout and all sources share an overall deadline, so the total
+ * collection time is bounded by the deadline rather than the sum of all sources.
+ */
+public class DiagnosticsCollector {
+    private static final String TAG = DiagnosticsCollector.class.getSimpleName();
+
+    public static final long DEFAULT_DEADLINE_MILLIS = 3000;
+
+    public static final String EXTRA_INFO_TIMED_OUT = "Diagnostics timed out";
+    public static final String EXTRA_INFO_FAILED = "Diagnostics failed";
+
+    private static ExecutorService executor;
+
+    private final List<Source> sources = new ArrayList<>();
+    private long deadlineMillis = DEFAULT_DEADLINE_MILLIS;
+
+    public synchronized DiagnosticsCollector add(@NonNull String name,
+                                                 @NonNull DiagnosticSource source) {
+        return add(name, source, Long.MAX_VALUE);
+    }
+
+    public synchronized DiagnosticsCollector add(@NonNull String name,
+                                                 @NonNull DiagnosticSource source,
+                                                 long timeoutMillis) {
+        sources.add(new Source(name, source, timeoutMillis));
+        return this;
+    }
+
+    public synchronized DiagnosticsCollector addAll(@NonNull DiagnosticsCollector collector) {
+        synchronized (collector) {
+            sources.addAll(collector.sources);
+        }
+        return this;
+    }
+
+    public synchronized DiagnosticsCollector deadline(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+        return this;
+    }
+
+    public synchronized boolean isEmpty() {
+        return sources.isEmpty();
+    }
+
+    @WorkerThread
+    @NonNull
+    public Result collect() {
+        List<Source> sources;
+        long deadlineMillis;
+        synchronized (this) {
+            sources = new ArrayList<>(this.sources);
+            deadlineMillis = this.deadlineMillis;
+        }
+        Result result = new Result();
+        if (sources.isEmpty()) return result;
+
+        ExecutorService executor = getExecutor();
+        long start = now();
+        long deadline = add(start, deadlineMillis);
+
+        List<Future<ExtraInfo>> futures = new ArrayList<>(sources.size());
+        for (final Source source : sources) {
+            futures.add(executor.submit(() -> {
+                ExtraInfo extraInfo = new ExtraInfo();
+                source.source.collect(extraInfo);
+                return extraInfo;
+            }));
+        }
+
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+            Future<ExtraInfo> future = futures.get(i);
+            long sourceDeadline = Math.min(deadline, add(start, source.timeoutMillis));
+            long remaining = sourceDeadline - now();
+            try {
+                result.extraInfo.putAll(future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                result.timedOut.add(source.name);
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Diagnostic source \"" + source.name + "\" failed.", e.getCause());
+                result.failed.add(source.name);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                result.timedOut.add(source.name);
+            }
+        }
+        result.durationMillis = now() - start;
+        return result;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "IssueReporter-diagnostics-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    // Monotonic like SystemClock.elapsedRealtime(), but also advances in JVM unit tests.
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static long add(long a, long b) {
+        long sum = a + b;
+        return sum < a ? Long.MAX_VALUE : sum;
+    }
+
+    public static final class Result {
+        private final ExtraInfo extraInfo = new ExtraInfo();
+        private final List<String> timedOut = new ArrayList<>();
+        private final List<String> failed = new ArrayList<>();
+        private long durationMillis;
+
+        private Result() {
+        }
+
+        public ExtraInfo getExtraInfo() {
+            return extraInfo;
+        }
+
+        public List<String> getTimedOut() {
+            return Collections.unmodifiableList(timedOut);
+        }
+
+        public List<String> getFailed() {
+            return Collections.unmodifiableList(failed);
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        /**
+         * Adds the collected values and the names of sources that timed out or failed.
+         */
+        public void addTo(@NonNull ExtraInfo target) {
+            target.putAll(extraInfo);
+            if (!timedOut.isEmpty()) target.put(EXTRA_INFO_TIMED_OUT, TextUtils.join(", ", timedOut));
+            if (!failed.isEmpty()) target.put(EXTRA_INFO_FAILED, TextUtils.join(", ", failed));
+        }
+    }
+
+    private static final class Source {
+        private final String name;
+        private final DiagnosticSource source;
+        private final long timeoutMillis;
+
+        private Source(String name, DiagnosticSource source, long timeoutMillis) {
+            this.name = name;
+            this.source = source;
+            this.timeoutMillis = timeoutMillis;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.diagnostics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Named {@link ExtraInfoProvider}s and {@link DiagnosticSource}s that are evaluated in parallel
+ * by a {@link DiagnosticsCollector}, each with its own timeout.
+ */
+public class ExtraInfoProviders {
+    public static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+
+    private static final ExtraInfoProviders DEFAULT = new ExtraInfoProviders();
+
+    private final Map<String, Registration> registrations = new LinkedHashMap<>();
+
+    /**
+     * Process wide providers, added to every report. Register them once, e.g. in
+     * {@code Application.onCreate()}.
+     */
+    @NonNull
+    public static ExtraInfoProviders getDefault() {
+        return DEFAULT;
+    }
+
+    public synchronized ExtraInfoProviders register(@NonNull String key,
+                                                    @NonNull ExtraInfoProvider provider) {
+        return register(key, provider, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public synchronized ExtraInfoProviders register(@NonNull String key,
+                                                    @NonNull ExtraInfoProvider provider,
+                                                    long timeoutMillis) {
+        registrations.put(key, new Registration(key,
+                extraInfo -> extraInfo.put(key, provider.provide()), timeoutMillis));
+        return this;
+    }
+
+    /**
+     * Registers a source that adds several values at once, replacing any provider or source
+     * registered under the same name.
+     */
+    public synchronized ExtraInfoProviders registerSource(@NonNull String name,
+                                                          @NonNull DiagnosticSource source,
+                                                          long timeoutMillis) {
+        registrations.put(name, new Registration(name, source, timeoutMillis));
+        return this;
+    }
+
+    public synchronized void unregister(@NonNull String key) {
+        registrations.remove(key);
+    }
+
+    public synchronized void registerAll(@NonNull ExtraInfoProviders providers) {
+        synchronized (providers) {
+            registrations.putAll(providers.registrations);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    /**
+     * Adds all providers to the collector, each as a source with its own timeout.
+     */
+    public synchronized void addTo(@NonNull DiagnosticsCollector collector) {
+        for (final Registration registration : registrations.values()) {
+            collector.add(registration.key, registration.source, registration.timeoutMillis);
+        }
+    }
+
+    private static final class Registration {
+        private final String key;
+        private final DiagnosticSource source;
+        private final long timeoutMillis;
+
+        private Registration(String key, DiagnosticSource source, long timeoutMillis) {
+            this.key = key;
+            this.source = source;
+            this.timeoutMillis = timeoutMillis;
+        }
+    }
+}
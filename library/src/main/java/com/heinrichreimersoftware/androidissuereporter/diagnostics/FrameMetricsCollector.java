@@ -0,0 +1,350 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.diagnostics;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import com.heinrichreimersoftware.androidissuereporter.IssueReporterActivity;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Collects frame durations per activity and adds jank statistics and the slowest frames to
+ * every report, so complaints about a slow app arrive with the data to act on them.
+ * <p>
+ * Frame metrics are delivered on a background thread. Each activity's frames are counted in a
+ * fixed-size histogram with 1 ms buckets, and only the slowest few frames are kept, so
+ * recording a frame doesn't allocate. Requires Android 7.0; on older versions, measuring frames
+ * would mean waking the main thread on every vsync, so nothing is collected. The reporter's own
+ * frames are not collected.
+ */
+public final class FrameMetricsCollector implements DiagnosticSource {
+    public static final String SOURCE_NAME = "frame metrics";
+    public static final int DEFAULT_MAX_ACTIVITIES = 3;
+
+    private static final int HISTOGRAM_MILLIS = 150;
+    private static final int SLOWEST_FRAMES = 5;
+    private static final int MAX_TRACKED_ACTIVITIES = 32;
+    private static final long FROZEN_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(700);
+    private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int[] BREAKDOWN = {
+            FrameMetrics.INPUT_HANDLING_DURATION,
+            FrameMetrics.ANIMATION_DURATION,
+            FrameMetrics.LAYOUT_MEASURE_DURATION,
+            FrameMetrics.DRAW_DURATION,
+            FrameMetrics.SYNC_DURATION,
+            FrameMetrics.COMMAND_ISSUE_DURATION,
+            FrameMetrics.SWAP_BUFFERS_DURATION,
+    };
+    private static final String[] BREAKDOWN_NAMES = {
+            "input", "animation", "layout", "draw", "sync", "commands", "swap",
+    };
+
+    private static FrameMetricsCollector instance;
+
+    private final Application application;
+    // Least recently resumed first.
+    private final LinkedHashMap<String, Stats> stats =
+            new LinkedHashMap<String, Stats>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Stats> eldest) {
+                    return size() > MAX_TRACKED_ACTIVITIES;
+                }
+            };
+    private final Map<Activity, Window.OnFrameMetricsAvailableListener> listeners =
+            new HashMap<>();
+    private int maxActivities = DEFAULT_MAX_ACTIVITIES;
+    private HandlerThread thread;
+    private Handler handler;
+
+    private final Application.ActivityLifecycleCallbacks callbacks =
+            new Application.ActivityLifecycleCallbacks() {
+                @Override
+                public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+                }
+
+                @Override
+                public void onActivityStarted(Activity activity) {
+                }
+
+                @Override
+                public void onActivityResumed(Activity activity) {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                        startListening(activity);
+                    }
+                }
+
+                @Override
+                public void onActivityPaused(Activity activity) {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                        stopListening(activity);
+                    }
+                }
+
+                @Override
+                public void onActivityStopped(Activity activity) {
+                }
+
+                @Override
+                public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+                }
+
+                @Override
+                public void onActivityDestroyed(Activity activity) {
+                }
+            };
+
+    private FrameMetricsCollector(Application application) {
+        this.application = application;
+    }
+
+    @NonNull
+    public static synchronized FrameMetricsCollector getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new FrameMetricsCollector(
+                    (Application) context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Starts collecting frames of activities resumed from now on, and adds the statistics to
+     * every report. Call it in {@code Application.onCreate()}.
+     */
+    @MainThread
+    public synchronized FrameMetricsCollector start() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || thread != null) return this;
+        thread = new HandlerThread("IssueReporter-frames", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        application.registerActivityLifecycleCallbacks(callbacks);
+        ExtraInfoProviders.getDefault().registerSource(SOURCE_NAME, this,
+                ExtraInfoProviders.DEFAULT_TIMEOUT_MILLIS);
+        return this;
+    }
+
+    @MainThread
+    public synchronized void stop() {
+        if (thread == null) return;
+        ExtraInfoProviders.getDefault().unregister(SOURCE_NAME);
+        application.unregisterActivityLifecycleCallbacks(callbacks);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            for (Activity activity : new ArrayList<>(listeners.keySet())) {
+                stopListening(activity);
+            }
+        }
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    /**
+     * Number of most recently resumed activities included in reports.
+     */
+    public synchronized FrameMetricsCollector maxActivities(int maxActivities) {
+        if (maxActivities < 1)
+            throw new IllegalArgumentException("maxActivities must be at least 1");
+        this.maxActivities = maxActivities;
+        return this;
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+    }
+
+    @Override
+    public void collect(@NonNull ExtraInfo extraInfo) {
+        List<Stats> recent = new ArrayList<>(maxActivities);
+        synchronized (this) {
+            List<Stats> all = new ArrayList<>(stats.values());
+            for (int i = all.size() - 1; i >= 0 && recent.size() < maxActivities; i--) {
+                recent.add(all.get(i));
+            }
+        }
+        for (Stats activity : recent) {
+            activity.writeTo(extraInfo);
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    private synchronized void startListening(Activity activity) {
+        if (activity instanceof IssueReporterActivity || handler == null) return;
+        String name = activity.getClass().getSimpleName();
+        Stats activityStats = stats.get(name);
+        if (activityStats == null) {
+            activityStats = new Stats(name);
+            stats.put(name, activityStats);
+        }
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        long deadlineNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(refreshRate, 1));
+        Window.OnFrameMetricsAvailableListener listener =
+                new FrameListener(activityStats, deadlineNanos);
+        activity.getWindow().addOnFrameMetricsAvailableListener(listener, handler);
+        listeners.put(activity, listener);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    private synchronized void stopListening(Activity activity) {
+        Window.OnFrameMetricsAvailableListener listener = listeners.remove(activity);
+        if (listener == null) return;
+        try {
+            activity.getWindow().removeOnFrameMetricsAvailableListener(listener);
+        } catch (IllegalArgumentException e) {
+            // The window already dropped the listener.
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    private static final class FrameListener implements Window.OnFrameMetricsAvailableListener {
+        private final Stats stats;
+        private final long deadlineNanos;
+
+        private FrameListener(Stats stats, long deadlineNanos) {
+            this.stats = stats;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics,
+                                            int dropCountSinceLastInvocation) {
+            stats.record(frameMetrics, deadlineNanos, dropCountSinceLastInvocation);
+        }
+    }
+
+    /**
+     * Frame statistics of one activity class. Updated on the frame metrics thread and read when
+     * a report is created.
+     */
+    private static final class Stats {
+        private final String name;
+        // Frames per whole millisecond of total duration; the last bucket counts longer frames.
+        private final int[] histogram = new int[HISTOGRAM_MILLIS + 1];
+        // Slowest frames first, with the duration of each stage.
+        private final long[] slowest = new long[SLOWEST_FRAMES];
+        private final long[][] slowestStages = new long[SLOWEST_FRAMES][BREAKDOWN.length];
+        private long frames;
+        private long janky;
+        private long frozen;
+        private long dropped;
+
+        private Stats(String name) {
+            this.name = name;
+        }
+
+        @RequiresApi(Build.VERSION_CODES.N)
+        synchronized void record(FrameMetrics metrics, long deadlineNanos, int dropCount) {
+            dropped += dropCount;
+            // The first frame includes inflating the layout, which isn't jank.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    && metrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) return;
+
+            long total = metrics.getMetric(FrameMetrics.TOTAL_DURATION);
+            long deadline = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ?
+                    metrics.getMetric(FrameMetrics.DEADLINE) : deadlineNanos;
+            frames++;
+            if (total > deadline) janky++;
+            if (total >= FROZEN_FRAME_NANOS) frozen++;
+            histogram[(int) Math.min(total / NANOS_PER_MILLI, HISTOGRAM_MILLIS)]++;
+
+            int last = SLOWEST_FRAMES - 1;
+            if (total <= slowest[last]) return;
+            // Reuse the row of the frame that drops out.
+            long[] stages = slowestStages[last];
+            int i = last;
+            for (; i > 0 && slowest[i - 1] < total; i--) {
+                slowest[i] = slowest[i - 1];
+                slowestStages[i] = slowestStages[i - 1];
+            }
+            slowest[i] = total;
+            slowestStages[i] = stages;
+            for (int stage = 0; stage < BREAKDOWN.length; stage++) {
+                stages[stage] = metrics.getMetric(BREAKDOWN[stage]);
+            }
+        }
+
+        synchronized void writeTo(ExtraInfo extraInfo) {
+            if (frames == 0) return;
+            StringBuilder summary = new StringBuilder()
+                    .append(frames).append(" frames, ")
+                    .append(janky).append(" janky (")
+                    .append(String.format(Locale.US, "%.1f", 100.0 * janky / frames))
+                    .append("%), ")
+                    .append(frozen).append(" frozen; p50 ").append(percentile(0.5))
+                    .append(", p90 ").append(percentile(0.9))
+                    .append(", p95 ").append(percentile(0.95))
+                    .append(", p99 ").append(percentile(0.99));
+            if (dropped > 0) summary.append("; ").append(dropped).append(" not measured");
+            extraInfo.put("Frames (" + name + ")", summary.toString());
+
+            StringBuilder slowestFrames = new StringBuilder();
+            for (int i = 0; i < SLOWEST_FRAMES && slowest[i] > 0; i++) {
+                if (i > 0) slowestFrames.append(", ");
+                slowestFrames.append(slowest[i] / NANOS_PER_MILLI).append(" ms (");
+                boolean first = true;
+                for (int stage = 0; stage < BREAKDOWN.length; stage++) {
+                    long millis = slowestStages[i][stage] / NANOS_PER_MILLI;
+                    if (millis == 0) continue;
+                    if (!first) slowestFrames.append(' ');
+                    slowestFrames.append(BREAKDOWN_NAMES[stage]).append(' ').append(millis);
+                    first = false;
+                }
+                slowestFrames.append(')');
+            }
+            extraInfo.put("Slowest frames (" + name + ")", slowestFrames.toString());
+        }
+
+        private String percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * frames);
+            long count = 0;
+            for (int millis = 0; millis < histogram.length; millis++) {
+                count += histogram[millis];
+                if (count >= rank) {
+                    return millis == HISTOGRAM_MILLIS ? "≥" + millis + " ms" : millis + " ms";
+                }
+            }
+            return "≥" + HISTOGRAM_MILLIS + " ms";
+        }
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.digest;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter;
+import com.heinrichreimersoftware.androidissuereporter.model.DeviceInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.policy.SubmissionGate;
+import com.heinrichreimersoftware.androidissuereporter.routing.ReportRouter;
+import com.heinrichreimersoftware.androidissuereporter.storage.IssueHistory;
+import com.heinrichreimersoftware.androidissuereporter.util.Redactor;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Aggregates frequent non-fatal events, such as caught exceptions and slow operations, and
+ * submits them as a single digest report per interval.
+ * <p>
+ * Recording never blocks: events are counted per signature in a concurrent map, and a few
+ * sample stack traces per signature are kept by reservoir sampling. Stack traces are only
+ * formatted for events that end up in a reservoir. Digests use a fixed title, so with the
+ * {@link IssueHistory} later digests are posted as comments on the first digest's issue. If a
+ * digest fails because of a network or server problem, its events go out with the next one.
+ * Events recorded while a digest is being taken may be lost, as are events that were not
+ * submitted before the process died.
+ */
+public final class EventDigest {
+    private static final String TAG = EventDigest.class.getSimpleName();
+
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+    public static final int DEFAULT_TOP_SIGNATURES = 10;
+    public static final int DEFAULT_SAMPLES_PER_SIGNATURE = 3;
+    public static final int DEFAULT_MAX_SIGNATURES = 256;
+    public static final String DEFAULT_TITLE = "Non-fatal event digest";
+
+    private static final int MAX_SAMPLE_LENGTH = 4 * 1024;
+    private static final long NO_VALUE = -1;
+
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "IssueReporter-digest");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final Context context;
+    private final GithubTarget target;
+    private final IssueSubmitter submitter;
+    @Nullable
+    private final ReportRouter router;
+    private final String title;
+    private final Redactor redactor;
+    private final long intervalMillis;
+    private final int topSignatures;
+    private final int samplesPerSignature;
+    private final int maxSignatures;
+    private final AtomicReference<Window> window = new AtomicReference<>(new Window());
+    private ScheduledFuture<?> schedule;
+
+    private EventDigest(Builder builder) {
+        this.context = builder.context;
+        this.target = builder.target;
+        this.title = builder.title;
+        this.redactor = builder.redactor;
+        this.intervalMillis = builder.intervalMillis;
+        this.topSignatures = builder.topSignatures;
+        this.samplesPerSignature = builder.samplesPerSignature;
+        this.maxSignatures = builder.maxSignatures;
+        this.router = builder.router;
+        this.submitter = new IssueSubmitter(context, target, builder.login)
+                .setHistory(IssueHistory.getInstance(context));
+    }
+
+    /**
+     * Records a caught exception. Its signature is the exception type and the top stack frame.
+     */
+    @AnyThread
+    public void record(@NonNull Throwable throwable) {
+        record(signatureOf(throwable), throwable, NO_VALUE);
+    }
+
+    @AnyThread
+    public void record(@NonNull String signature, @Nullable Throwable sample) {
+        record(signature, sample, NO_VALUE);
+    }
+
+    /**
+     * Records an operation that took longer than expected. Samples capture the calling stack.
+     */
+    @AnyThread
+    public void recordSlow(@NonNull String operation, long durationMillis) {
+        record("Slow: " + operation, null, Math.max(0, durationMillis));
+    }
+
+    /**
+     * Counts an event that wasn't recorded, e.g. because it was rate limited.
+     */
+    @AnyThread
+    public void recordUntracked() {
+        window.get().untracked.incrementAndGet();
+    }
+
+    private void record(String name, @Nullable Throwable sample, long value) {
+        Window current = window.get();
+        Signature signature = current.signatures.get(name);
+        if (signature == null) {
+            if (current.size.get() >= maxSignatures) {
+                current.untracked.incrementAndGet();
+                return;
+            }
+            Signature created = new Signature(name, samplesPerSignature);
+            signature = current.signatures.putIfAbsent(name, created);
+            if (signature == null) {
+                signature = created;
+                current.size.incrementAndGet();
+            }
+        }
+
+        long count = signature.count.incrementAndGet();
+        if (value != NO_VALUE) {
+            signature.total.addAndGet(value);
+            long max;
+            while (value > (max = signature.max.get())) {
+                if (signature.max.compareAndSet(max, value)) break;
+            }
+        }
+
+        // Reservoir sampling keeps each event with equal probability.
+        long slot = count <= samplesPerSignature ? count - 1 :
+                (long) (random.get().nextDouble() * count);
+        if (slot < samplesPerSignature) {
+            Throwable stack = sample != null ? sample : new Throwable(name);
+            signature.samples.set((int) slot, stackTraceOf(stack));
+        }
+    }
+
+    /**
+     * Submits a digest every interval, starting one interval from now.
+     */
+    public synchronized EventDigest start() {
+        if (schedule == null) {
+            schedule = scheduler.scheduleWithFixedDelay(this::submitDigest,
+                    intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+
+    /**
+     * Submits the events recorded so far in the background, without waiting for the interval.
+     */
+    public void flush() {
+        scheduler.execute(this::submitDigest);
+    }
+
+    @WorkerThread
+    void submitDigest() {
+        Window previous = window.getAndSet(new Window());
+        if (previous.size.get() == 0 && previous.untracked.get() == 0) return;
+
+        // An exception would cancel the schedule, so no digest would be submitted again.
+        String result;
+        try {
+            result = submit(previous);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Submitting digest failed", e);
+            result = IssueSubmitter.RESULT_UNKNOWN;
+        }
+        if (IssueSubmitter.RESULT_UNKNOWN.equals(result)) {
+            // Likely a network or server problem, so send the events with the next digest.
+            merge(window.getAndSet(previous), previous);
+        } else if (!IssueSubmitter.RESULT_OK.equals(result)) {
+            Log.w(TAG, "Submitting digest failed, dropping " + previous.size.get()
+                    + " signatures: " + result);
+        }
+    }
+
+    /**
+     * Submits the window's digest, unless the {@link SubmissionGate} drops it.
+     */
+    @IssueSubmitter.Result
+    private String submit(Window previous) {
+        List<Entry> entries = new ArrayList<>(previous.size.get());
+        long events = previous.untracked.get();
+        for (Signature signature : previous.signatures.values()) {
+            Entry entry = new Entry(signature);
+            entries.add(entry);
+            events += entry.count;
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(b.count, a.count));
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        ExtraInfo extraInfo = new ExtraInfo();
+        extraInfo.put("Digest start", format.format(new Date(previous.startMillis)));
+        extraInfo.put("Digest end", format.format(new Date()));
+        extraInfo.put("Events", events);
+        extraInfo.put("Signatures", entries.size());
+        if (previous.untracked.get() > 0) {
+            extraInfo.put("Untracked events", previous.untracked.get());
+        }
+
+        SubmissionGate gate = SubmissionGate.getInstance(context);
+        SubmissionGate.DropCounts dropCounts = gate.attachDropCounts(target, extraInfo);
+        Report report = new Report(title, describe(entries), new DeviceInfo(context), extraInfo,
+                null, redactor);
+        // The gate counts dropped digests, so they aren't retried.
+        if (!gate.admit(target, report, SubmissionGate.PRIORITY_AUTOMATIC)) {
+            return IssueSubmitter.RESULT_OK;
+        }
+
+        String result = submitter.submit(report, router != null ? router.route(report) : null);
+        if (IssueSubmitter.RESULT_OK.equals(result)) {
+            gate.acknowledge(target, dropCounts);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the events of {@code from} to {@code into}, keeping the samples of {@code into} and
+     * filling its empty sample slots.
+     */
+    private void merge(Window from, Window into) {
+        into.untracked.addAndGet(from.untracked.get());
+        for (Signature source : from.signatures.values()) {
+            Signature signature = into.signatures.get(source.name);
+            if (signature == null) {
+                if (into.size.get() >= maxSignatures) {
+                    into.untracked.addAndGet(source.count.get());
+                    continue;
+                }
+                signature = into.signatures.putIfAbsent(source.name, source);
+                if (signature == null) {
+                    into.size.incrementAndGet();
+                    continue;
+                }
+            }
+            signature.count.addAndGet(source.count.get());
+            signature.total.addAndGet(source.total.get());
+            long max;
+            while (source.max.get() > (max = signature.max.get())) {
+                if (signature.max.compareAndSet(max, source.max.get())) break;
+            }
+            for (int i = 0; i < signature.samples.length(); i++) {
+                if (source.samples.get(i) != null) {
+                    signature.samples.compareAndSet(i, null, source.samples.get(i));
+                }
+            }
+        }
+    }
+
+    private String describe(List<Entry> entries) {
+        int shown = Math.min(topSignatures, entries.size());
+        StringBuilder builder = new StringBuilder()
+                .append("Top ").append(shown).append(" of ").append(entries.size())
+                .append(" signatures:\n\n")
+                .append("<table>\n")
+                .append("<tr><th>Count</th><th>Signature</th><th>Avg ms</th><th>Max ms</th></tr>\n");
+        for (int i = 0; i < shown; i++) {
+            Entry entry = entries.get(i);
+            builder.append("<tr><td>").append(entry.count)
+                    .append("</td><td>").append(TextUtils.htmlEncode(entry.name))
+                    .append("</td><td>");
+            if (entry.total > 0) builder.append(entry.total / entry.count);
+            builder.append("</td><td>");
+            if (entry.total > 0) builder.append(entry.max);
+            builder.append("</td></tr>\n");
+        }
+        builder.append("</table>\n");
+
+        for (int i = 0; i < shown; i++) {
+            Entry entry = entries.get(i);
+            if (entry.samples.isEmpty()) continue;
+            builder.append("\n<details><summary>")
+                    .append(TextUtils.htmlEncode(entry.name))
+                    .append("</summary>\n");
+            for (String sample : entry.samples) {
+                builder.append("\n```\n").append(sample).append("\n```\n");
+            }
+            builder.append("</details>\n");
+        }
+        return builder.toString();
+    }
+
+    private static String signatureOf(Throwable throwable) {
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        if (stackTrace.length == 0) return throwable.getClass().getName();
+        StackTraceElement top = stackTrace[0];
+        return throwable.getClass().getName() + " at " + top.getClassName() + "."
+                + top.getMethodName() + ":" + top.getLineNumber();
+    }
+
+    private static String stackTraceOf(Throwable throwable) {
+        String stackTrace = Log.getStackTraceString(throwable);
+        return stackTrace.length() > MAX_SAMPLE_LENGTH ?
+                stackTrace.substring(0, MAX_SAMPLE_LENGTH) + "\n…" : stackTrace;
+    }
+
+    private static final class Window {
+        private final ConcurrentHashMap<String, Signature> signatures = new ConcurrentHashMap<>();
+        // Tracked separately, as size() of the segmented map may lock on older platforms.
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLong untracked = new AtomicLong();
+        private final long startMillis = System.currentTimeMillis();
+    }
+
+    private static final class Signature {
+        private final String name;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicReferenceArray<String> samples;
+
+        private Signature(String name, int samples) {
+            this.name = name;
+            this.samples = new AtomicReferenceArray<>(samples);
+        }
+    }
+
+    /**
+     * Snapshot of a signature, so sorting isn't affected by concurrent updates.
+     */
+    private static final class Entry {
+        private final String name;
+        private final long count;
+        private final long total;
+        private final long max;
+        private final List<String> samples = new ArrayList<>();
+
+        private Entry(Signature signature) {
+            name = signature.name;
+            count = signature.count.get();
+            total = signature.total.get();
+            max = signature.max.get();
+            for (int i = 0; i < signature.samples.length(); i++) {
+                String sample = signature.samples.get(i);
+                if (sample != null) samples.add(sample);
+            }
+        }
+    }
+
+    public static class Builder {
+        private final Context context;
+        private final GithubTarget target;
+        private final GithubLogin login;
+        private String title = DEFAULT_TITLE;
+        private Redactor redactor = Redactor.DEFAULT;
+        private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+        private int topSignatures = DEFAULT_TOP_SIGNATURES;
+        private int samplesPerSignature = DEFAULT_SAMPLES_PER_SIGNATURE;
+        private int maxSignatures = DEFAULT_MAX_SIGNATURES;
+        @Nullable
+        private ReportRouter router;
+
+        public Builder(@NonNull Context context, @NonNull GithubTarget target,
+                       @NonNull GithubLogin login) {
+            this.context = context.getApplicationContext();
+            this.target = target;
+            this.login = login;
+        }
+
+        public Builder title(@NonNull String title) {
+            this.title = title;
+            return this;
+        }
+
+        public Builder redactor(@NonNull Redactor redactor) {
+            this.redactor = redactor;
+            return this;
+        }
+
+        public Builder interval(long intervalMillis) {
+            if (intervalMillis <= 0)
+                throw new IllegalArgumentException("interval must be positive");
+            this.intervalMillis = intervalMillis;
+            return this;
+        }
+
+        public Builder topSignatures(int topSignatures) {
+            if (topSignatures < 1)
+                throw new IllegalArgumentException("topSignatures must be at least 1");
+            this.topSignatures = topSignatures;
+            return this;
+        }
+
+        public Builder samplesPerSignature(int samplesPerSignature) {
+            if (samplesPerSignature < 0)
+                throw new IllegalArgumentException("samplesPerSignature must not be negative");
+            this.samplesPerSignature = samplesPerSignature;
+            return this;
+        }
+
+        public Builder maxSignatures(int maxSignatures) {
+            if (maxSignatures < 1)
+                throw new IllegalArgumentException("maxSignatures must be at least 1");
+            this.maxSignatures = maxSignatures;
+            return this;
+        }
+
+        /**
+         * Labels and assigns digest issues according to {@code router}.
+         */
+        public Builder router(@Nullable ReportRouter router) {
+            this.router = router;
+            return this;
+        }
+
+        public EventDigest build() {
+            return new EventDigest(this);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.digest;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.StrictMode;
+import android.os.SystemClock;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.routing.ReportRouter;
+import com.heinrichreimersoftware.androidissuereporter.util.Redactor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Collects StrictMode violations, such as disk I/O on the main thread or leaked closeables, into
+ * an {@link EventDigest}, so they arrive as one summary report per interval instead of one
+ * report per violation. Meant for debug and dogfood builds.
+ * <p>
+ * Violations are grouped by type and the first stack frame of the app. They are handled on a
+ * background thread, and at most {@link Builder#maxPerSecond(int)} violations per second are
+ * recorded; the rest are only counted. Violations raised by the reporter's own code, like the
+ * untagged socket of a digest upload, are ignored, so one digest doesn't seed the next.
+ * Requires Android 9.
+ */
+public final class StrictModeReporter {
+    public static final String DEFAULT_TITLE = "StrictMode violations";
+    public static final int DEFAULT_MAX_PER_SECOND = 20;
+
+    private static final long SECOND_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final String[] PLATFORM_PACKAGES = {"java.", "javax.", "sun.", "libcore.",
+            "dalvik.", "android.", "androidx.", "com.android.", "kotlin.", "kotlinx."};
+    private static final String LIBRARY_PACKAGE =
+            "com.heinrichreimersoftware.androidissuereporter.";
+
+    private static final Executor executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "IssueReporter-strictmode");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final EventDigest digest;
+    private final int maxPerSecond;
+    // Only accessed on the executor's thread.
+    private long windowStartMillis;
+    private int windowCount;
+
+    private StrictModeReporter(Builder builder) {
+        this.digest = builder.digest.build();
+        this.maxPerSecond = builder.maxPerSecond;
+    }
+
+    /**
+     * Detects all violations and starts submitting digests. Replaces the current policies.
+     */
+    @MainThread
+    @RequiresApi(Build.VERSION_CODES.P)
+    public StrictModeReporter start() {
+        return start(new StrictMode.ThreadPolicy.Builder().detectAll(),
+                new StrictMode.VmPolicy.Builder().detectAll());
+    }
+
+    /**
+     * Applies the policies with this reporter as their penalty listener and starts submitting
+     * digests. StrictMode policies are per thread, so call this on the main thread.
+     */
+    @MainThread
+    @RequiresApi(Build.VERSION_CODES.P)
+    public StrictModeReporter start(@NonNull StrictMode.ThreadPolicy.Builder threadPolicy,
+                                    @NonNull StrictMode.VmPolicy.Builder vmPolicy) {
+        StrictMode.setThreadPolicy(threadPolicy.penaltyListener(executor, this::record).build());
+        StrictMode.setVmPolicy(vmPolicy.penaltyListener(executor, this::record).build());
+        digest.start();
+        return this;
+    }
+
+    /**
+     * Stops submitting digests. The StrictMode policies stay in place; violations are still
+     * recorded and submitted with {@link #flush()}.
+     */
+    public void stop() {
+        digest.stop();
+    }
+
+    public void flush() {
+        digest.flush();
+    }
+
+    void record(Throwable violation) {
+        if (isRaisedByLibrary(violation)) return;
+        long now = SystemClock.elapsedRealtime();
+        if (now - windowStartMillis >= SECOND_MILLIS) {
+            windowStartMillis = now;
+            windowCount = 0;
+        }
+        if (++windowCount > maxPerSecond) {
+            digest.recordUntracked();
+            return;
+        }
+        digest.record(signatureOf(violation), violation);
+    }
+
+    /**
+     * The violation's type and the first frame of the app's code, e.g.
+     * {@code DiskReadViolation at com.example.Settings.load:42}.
+     */
+    private static String signatureOf(Throwable violation) {
+        StackTraceElement[] stackTrace = violation.getStackTrace();
+        String type = violation.getClass().getSimpleName();
+        if (stackTrace.length == 0) return type;
+        StackTraceElement frame = stackTrace[0];
+        for (StackTraceElement element : stackTrace) {
+            if (!isPlatformClass(element.getClassName())) {
+                frame = element;
+                break;
+            }
+        }
+        return type + " at " + frame.getClassName() + "." + frame.getMethodName() + ":"
+                + frame.getLineNumber();
+    }
+
+    private static boolean isRaisedByLibrary(Throwable violation) {
+        for (StackTraceElement element : violation.getStackTrace()) {
+            if (element.getClassName().startsWith(LIBRARY_PACKAGE)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isPlatformClass(String className) {
+        for (String prefix : PLATFORM_PACKAGES) {
+            if (className.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    public static class Builder {
+        private final EventDigest.Builder digest;
+        private int maxPerSecond = DEFAULT_MAX_PER_SECOND;
+
+        public Builder(@NonNull Context context, @NonNull GithubTarget target,
+                       @NonNull GithubLogin login) {
+            this.digest = new EventDigest.Builder(context, target, login).title(DEFAULT_TITLE);
+        }
+
+        public Builder title(@NonNull String title) {
+            digest.title(title);
+            return this;
+        }
+
+        public Builder interval(long intervalMillis) {
+            digest.interval(intervalMillis);
+            return this;
+        }
+
+        public Builder topSignatures(int topSignatures) {
+            digest.topSignatures(topSignatures);
+            return this;
+        }
+
+        public Builder maxSignatures(int maxSignatures) {
+            digest.maxSignatures(maxSignatures);
+            return this;
+        }
+
+        /**
+         * Violations recorded per second at most. Violations beyond that are only counted.
+         */
+        public Builder maxPerSecond(int maxPerSecond) {
+            if (maxPerSecond < 1)
+                throw new IllegalArgumentException("maxPerSecond must be at least 1");
+            this.maxPerSecond = maxPerSecond;
+            return this;
+        }
+
+        public Builder redactor(@NonNull Redactor redactor) {
+            digest.redactor(redactor);
+            return this;
+        }
+
+        public Builder router(@Nullable ReportRouter router) {
+            digest.router(router);
+            return this;
+        }
+
+        public StrictModeReporter build() {
+            return new StrictModeReporter(this);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.exitinfo;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.app.ApplicationExitInfo;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.delivery.ReportDrain;
+import com.heinrichreimersoftware.androidissuereporter.model.DeviceInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.policy.SubmissionGate;
+import com.heinrichreimersoftware.androidissuereporter.util.Redactor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.WorkerThread;
+import androidx.work.Constraints;
+
+/**
+ * Turns the ANRs and native crashes the platform recorded for previous runs of the app into
+ * reports, on Android 11 and later.
+ * <p>
+ * Only exits newer than a persisted per-process watermark are read, so each exit is reported
+ * once. The first run only sets the watermark to the newest recorded exit, so exits from before
+ * the collector was added aren't reported, unless {@link Builder#reportExistingExits(boolean)}
+ * is set. Reports are queued with {@link ReportDrain} and the watermark is stored once all of
+ * them were queued. If the app dies in between, those exits are reported again on the next
+ * start. Traces are streamed and only the relevant thread's stack is kept. Reports carry the
+ * current app version, which differs from the crashed run's if the app was updated since.
+ */
+public final class ApplicationExitCollector {
+    private static final String TAG = ApplicationExitCollector.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_EXITS = 8;
+
+    private static final String PREFERENCES_NAME = "air_exit_info";
+    private static final String KEY_WATERMARK = "watermark:";
+
+    private final Context context;
+    private final GithubTarget target;
+    private final GithubLogin login;
+    private final int[] reasons;
+    private final int maxExits;
+    private final boolean reportExistingExits;
+    private final Constraints constraints;
+    private final boolean embedJson;
+    @Nullable
+    private final String router;
+    private final Redactor redactor;
+
+    private ApplicationExitCollector(Builder builder) {
+        this.context = builder.context;
+        this.target = builder.target;
+        this.login = builder.login;
+        this.reasons = builder.reasons;
+        this.maxExits = builder.maxExits;
+        this.reportExistingExits = builder.reportExistingExits;
+        this.constraints = builder.constraints;
+        this.embedJson = builder.embedJson;
+        this.router = builder.router;
+        this.redactor = builder.redactor;
+    }
+
+    /**
+     * Queues reports for new exits in the background. Does nothing before Android 11.
+     */
+    public void start() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) return;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            try {
+                collect((report, exit) -> {
+                    if (!SubmissionGate.getInstance(context)
+                            .admit(target, report, SubmissionGate.PRIORITY_AUTOMATIC)) return;
+                    ReportDrain.enqueue(context, target, login, report, constraints, embedJson,
+                            router);
+                });
+            } catch (IOException e) {
+                Log.w(TAG, "Queueing exit report failed", e);
+            }
+        });
+    }
+
+    /**
+     * Passes reports for the exits since the last call to {@code sink}, oldest first. At most
+     * the newest {@code maxExits} are passed, older ones are skipped. If the sink throws, that
+     * exit and newer ones are passed again on the next call.
+     *
+     * @return The number of exits passed to the sink.
+     */
+    @WorkerThread
+    @RequiresApi(Build.VERSION_CODES.R)
+    public int collect(@NonNull Sink sink) throws IOException {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) return 0;
+        String process = Application.getProcessName();
+        // Read all records, the platform keeps only a few per app anyway. Limiting the query
+        // would count other processes' exits and ignored reasons against maxExits.
+        List<ApplicationExitInfo> exits =
+                activityManager.getHistoricalProcessExitReasons(null, 0, 0);
+        if (exits == null) return 0;
+
+        SharedPreferences preferences =
+                context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        String key = KEY_WATERMARK + process;
+        boolean firstRun = !preferences.contains(key);
+        long watermark = preferences.getLong(key, 0);
+        long newest = watermark;
+        // Exits are sorted newest first.
+        List<ApplicationExitInfo> pending = new ArrayList<>();
+        for (ApplicationExitInfo exit : exits) {
+            if (exit.getTimestamp() <= watermark) continue;
+            // Each process of the app reports its own exits and keeps its own watermark.
+            if (!TextUtils.equals(process, exit.getProcessName())) continue;
+            newest = Math.max(newest, exit.getTimestamp());
+            if (isCollected(exit.getReason())) pending.add(exit);
+        }
+        if (firstRun && !reportExistingExits) {
+            preferences.edit().putLong(key, newest).commit();
+            return 0;
+        }
+
+        int passed = Math.min(pending.size(), maxExits);
+        long next = passed < pending.size() ? pending.get(passed).getTimestamp() : watermark;
+        int count = 0;
+        try {
+            for (int i = passed - 1; i >= 0; i--) {
+                ApplicationExitInfo exit = pending.get(i);
+                sink.accept(toReport(exit), exit);
+                count++;
+                next = exit.getTimestamp();
+            }
+            next = newest;
+        } finally {
+            if (firstRun || next != watermark) preferences.edit().putLong(key, next).commit();
+        }
+        return count;
+    }
+
+    private boolean isCollected(int reason) {
+        for (int collected : reasons) {
+            if (collected == reason) return true;
+        }
+        return false;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.R)
+    private Report toReport(ApplicationExitInfo exit) {
+        TraceParser.Trace trace = readTrace(exit);
+        boolean anr = exit.getReason() == ApplicationExitInfo.REASON_ANR;
+
+        String title;
+        if (trace != null && trace.topFrame != null) {
+            title = anr ? "ANR in " + trace.topFrame :
+                    "Native crash" + signalOf(trace) + " in " + trace.topFrame;
+        } else if (!TextUtils.isEmpty(exit.getDescription())) {
+            title = (anr ? "ANR: " : "Native crash: ") + exit.getDescription();
+        } else {
+            title = anr ? "ANR" : "Native crash";
+        }
+
+        StringBuilder description = new StringBuilder();
+        if (trace != null) {
+            if (trace.summary != null) description.append(trace.summary).append("\n\n");
+            if (!trace.frames.isEmpty()) {
+                description.append("```\n");
+                for (String frame : trace.frames) description.append(frame).append('\n');
+                description.append("```\n");
+            }
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        ExtraInfo extraInfo = new ExtraInfo();
+        extraInfo.put("Exit reason", reasonName(exit.getReason()));
+        if (!TextUtils.isEmpty(exit.getDescription())) {
+            extraInfo.put("Exit description", exit.getDescription());
+        }
+        extraInfo.put("Exit time", format.format(new Date(exit.getTimestamp())));
+        extraInfo.put("Process", exit.getProcessName());
+        extraInfo.put("Importance", exit.getImportance());
+        extraInfo.put("PSS (KB)", exit.getPss());
+        extraInfo.put("RSS (KB)", exit.getRss());
+
+        return new Report(title, description.toString(), new DeviceInfo(context), extraInfo,
+                null, redactor);
+    }
+
+    /**
+     * Reads the exit's trace. Android 11 keeps traces for ANRs, later versions also keep
+     * tombstones for native crashes.
+     */
+    @Nullable
+    @RequiresApi(Build.VERSION_CODES.R)
+    private static TraceParser.Trace readTrace(ApplicationExitInfo exit) {
+        boolean anr = exit.getReason() == ApplicationExitInfo.REASON_ANR;
+        if (!anr && Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return null;
+        try (InputStream input = exit.getTraceInputStream()) {
+            if (input == null) return null;
+            return anr ? TraceParser.parseAnr(input) : TraceParser.parseTombstone(input);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Reading exit trace failed", e);
+            return null;
+        }
+    }
+
+    private static String signalOf(TraceParser.Trace trace) {
+        if (trace.summary == null || !trace.summary.startsWith("SIG")) return "";
+        int end = 0;
+        while (end < trace.summary.length() && Character.isLetterOrDigit(trace.summary.charAt(end)))
+            end++;
+        return " " + trace.summary.substring(0, end);
+    }
+
+    private static String reasonName(int reason) {
+        switch (reason) {
+            case ApplicationExitInfo.REASON_ANR:
+                return "ANR";
+            case ApplicationExitInfo.REASON_CRASH:
+                return "Crash";
+            case ApplicationExitInfo.REASON_CRASH_NATIVE:
+                return "Native crash";
+            case ApplicationExitInfo.REASON_LOW_MEMORY:
+                return "Low memory";
+            case ApplicationExitInfo.REASON_EXCESSIVE_RESOURCE_USAGE:
+                return "Excessive resource usage";
+            case ApplicationExitInfo.REASON_INITIALIZATION_FAILURE:
+                return "Initialization failure";
+            case ApplicationExitInfo.REASON_SIGNALED:
+                return "Signaled";
+            default:
+                return "Reason " + reason;
+        }
+    }
+
+    /**
+     * Receives the report for an exit.
+     */
+    public interface Sink {
+        @WorkerThread
+        void accept(@NonNull Report report, @NonNull ApplicationExitInfo exit) throws IOException;
+    }
+
+    public static class Builder {
+        private final Context context;
+        private final GithubTarget target;
+        private final GithubLogin login;
+        private int[] reasons = {ApplicationExitInfo.REASON_ANR,
+                ApplicationExitInfo.REASON_CRASH_NATIVE};
+        private int maxExits = DEFAULT_MAX_EXITS;
+        private boolean reportExistingExits = false;
+        private Constraints constraints = ReportDrain.DEFAULT_CONSTRAINTS;
+        private boolean embedJson = false;
+        @Nullable
+        private String router;
+        private Redactor redactor = Redactor.DEFAULT;
+
+        public Builder(@NonNull Context context, @NonNull GithubTarget target,
+                       @NonNull GithubLogin login) {
+            this.context = context.getApplicationContext();
+            this.target = target;
+            this.login = login;
+        }
+
+        /**
+         * Exit reasons to report, from {@code ApplicationExitInfo.REASON_*}. Defaults to ANRs
+         * and native crashes, as Java crashes can be caught in the app.
+         */
+        public Builder reasons(int... reasons) {
+            this.reasons = reasons.clone();
+            return this;
+        }
+
+        /**
+         * Maximum number of exits reported per start. If more happened since the last start,
+         * only the newest ones are reported.
+         */
+        public Builder maxExits(int maxExits) {
+            if (maxExits < 1)
+                throw new IllegalArgumentException("maxExits must be at least 1");
+            this.maxExits = maxExits;
+            return this;
+        }
+
+        /**
+         * Whether the first start also reports the exits the platform recorded before the
+         * collector was added. Defaults to {@code false}, so updating an app that adds the
+         * collector doesn't open issues for old exits.
+         */
+        public Builder reportExistingExits(boolean reportExistingExits) {
+            this.reportExistingExits = reportExistingExits;
+            return this;
+        }
+
+        public Builder constraints(@NonNull Constraints constraints) {
+            this.constraints = constraints;
+            return this;
+        }
+
+        public Builder embedJson(boolean embedJson) {
+            this.embedJson = embedJson;
+            return this;
+        }
+
+        /**
+         * Labels and assigns exit issues with the {@link
+         * com.heinrichreimersoftware.androidissuereporter.routing.ReportRouter} registered as
+         * {@code router}.
+         */
+        public Builder router(@Nullable String router) {
+            this.router = router;
+            return this;
+        }
+
+        public Builder redactor(@NonNull Redactor redactor) {
+            this.redactor = redactor;
+            return this;
+        }
+
+        public ApplicationExitCollector build() {
+            return new ApplicationExitCollector(this);
+        }
+    }
+}
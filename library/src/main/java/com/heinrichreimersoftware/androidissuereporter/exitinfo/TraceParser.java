@@ -0,0 +1,383 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.exitinfo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Extracts the crashing or blocked thread's stack from process exit traces. Traces can be
+ * several megabytes, so they are parsed as a stream: lines and strings are truncated, unneeded
+ * sections are skipped, and reading stops as soon as the stack is complete.
+ */
+final class TraceParser {
+    static final int MAX_FRAMES = 32;
+
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final int MAX_STRING_LENGTH = 1024;
+    private static final String[] PLATFORM_PACKAGES = {"java.", "javax.", "sun.", "libcore.",
+            "dalvik.", "android.", "androidx.", "com.android.", "kotlin.", "kotlinx."};
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    // Field numbers from system/core/debuggerd/proto/tombstone.proto
+    private static final int TOMBSTONE_TID = 6;
+    private static final int TOMBSTONE_SIGNAL = 10;
+    private static final int TOMBSTONE_ABORT_MESSAGE = 14;
+    private static final int TOMBSTONE_THREADS = 16;
+    private static final int SIGNAL_NAME = 2;
+    private static final int SIGNAL_CODE_NAME = 4;
+    private static final int MAP_KEY = 1;
+    private static final int MAP_VALUE = 2;
+    private static final int THREAD_BACKTRACE = 4;
+    private static final int FRAME_REL_PC = 1;
+    private static final int FRAME_FUNCTION_NAME = 4;
+    private static final int FRAME_FUNCTION_OFFSET = 5;
+    private static final int FRAME_FILE_NAME = 6;
+
+    private TraceParser() {
+    }
+
+    /**
+     * Parses the text traces of an ANR, keeping the main thread's stack.
+     */
+    @NonNull
+    static Trace parseAnr(@NonNull InputStream input) throws IOException {
+        Reader reader = new InputStreamReader(input, UTF_8);
+        StringBuilder line = new StringBuilder(128);
+        String subject = null;
+        List<String> frames = new ArrayList<>();
+        String topFrame = null;
+        String firstFrame = null;
+        boolean inMainThread = false;
+        while (readLine(reader, line)) {
+            if (!inMainThread) {
+                if (subject == null && startsWith(line, "Subject: ")) {
+                    subject = line.substring("Subject: ".length());
+                } else if (startsWith(line, "\"main\"")) {
+                    inMainThread = true;
+                }
+                continue;
+            }
+            String frame = line.toString().trim();
+            // The thread's section ends with a blank line.
+            if (frame.isEmpty()) break;
+            if (frame.startsWith("at ")) {
+                String method = stripLocation(frame.substring(3));
+                if (firstFrame == null) firstFrame = method;
+                if (topFrame == null && !isPlatformMethod(method)) topFrame = method;
+            } else if (!frame.startsWith("native: ") && !frame.startsWith("- ")) {
+                continue;
+            }
+            if (frames.size() < MAX_FRAMES) frames.add(frame);
+        }
+        return new Trace(subject, frames, topFrame != null ? topFrame : firstFrame);
+    }
+
+    /**
+     * Parses a native crash tombstone in protobuf format, keeping the signal, abort message and
+     * the crashing thread's backtrace.
+     */
+    @NonNull
+    static Trace parseTombstone(@NonNull InputStream input) throws IOException {
+        ProtoReader reader = new ProtoReader(input);
+        long tid = -1;
+        String signal = null;
+        String abortMessage = null;
+        List<String> frames = new ArrayList<>();
+        String topFrame = null;
+        String firstFrame = null;
+        int tag;
+        while ((tag = reader.readTag()) != -1) {
+            switch (tag >>> 3) {
+                case TOMBSTONE_TID:
+                    tid = reader.readVarint();
+                    break;
+                case TOMBSTONE_SIGNAL: {
+                    long end = reader.readEnd();
+                    String name = null;
+                    String codeName = null;
+                    while (reader.position < end) {
+                        int field = reader.readTag();
+                        if (field >>> 3 == SIGNAL_NAME) name = reader.readString();
+                        else if (field >>> 3 == SIGNAL_CODE_NAME) codeName = reader.readString();
+                        else reader.skip(field & 7);
+                    }
+                    signal = codeName != null ? name + " (" + codeName + ")" : name;
+                    break;
+                }
+                case TOMBSTONE_ABORT_MESSAGE:
+                    abortMessage = reader.readString();
+                    break;
+                case TOMBSTONE_THREADS: {
+                    long end = reader.readEnd();
+                    long key = -1;
+                    while (reader.position < end) {
+                        int field = reader.readTag();
+                        if (field >>> 3 == MAP_KEY) {
+                            key = reader.readVarint();
+                        } else if (field >>> 3 == MAP_VALUE && key == tid && frames.isEmpty()) {
+                            // The tid precedes the threads, so only the crashing one is parsed.
+                            long threadEnd = reader.readEnd();
+                            while (reader.position < threadEnd) {
+                                int threadField = reader.readTag();
+                                if (threadField >>> 3 != THREAD_BACKTRACE
+                                        || frames.size() >= MAX_FRAMES) {
+                                    reader.skip(threadField & 7);
+                                    continue;
+                                }
+                                String[] frame = readFrame(reader, frames.size());
+                                frames.add(frame[0]);
+                                if (firstFrame == null) firstFrame = frame[1];
+                                if (topFrame == null && frame[2] != null) topFrame = frame[1];
+                            }
+                        } else {
+                            reader.skip(field & 7);
+                        }
+                    }
+                    break;
+                }
+                default:
+                    reader.skip(tag & 7);
+            }
+        }
+        String summary = signal;
+        if (abortMessage != null) {
+            summary = summary != null ? summary + ": " + abortMessage : abortMessage;
+        }
+        return new Trace(summary, frames, topFrame != null ? topFrame : firstFrame);
+    }
+
+    /**
+     * Reads a backtrace frame.
+     *
+     * @return The formatted frame, its short form, and its file if it belongs to the app.
+     */
+    private static String[] readFrame(ProtoReader reader, int index) throws IOException {
+        long end = reader.readEnd();
+        long relPc = 0;
+        String function = null;
+        long offset = 0;
+        String file = null;
+        while (reader.position < end) {
+            int field = reader.readTag();
+            switch (field >>> 3) {
+                case FRAME_REL_PC:
+                    relPc = reader.readVarint();
+                    break;
+                case FRAME_FUNCTION_NAME:
+                    function = reader.readString();
+                    break;
+                case FRAME_FUNCTION_OFFSET:
+                    offset = reader.readVarint();
+                    break;
+                case FRAME_FILE_NAME:
+                    file = reader.readString();
+                    break;
+                default:
+                    reader.skip(field & 7);
+            }
+        }
+        String formatted = String.format(Locale.US, "#%02d pc %016x  %s", index, relPc, file);
+        if (function != null && !function.isEmpty()) {
+            formatted += " (" + function + "+" + offset + ")";
+        }
+        String library = file != null ? file.substring(file.lastIndexOf('/') + 1) : "???";
+        String shortForm = function != null && !function.isEmpty() ?
+                library + " (" + function + ")" : library;
+        // Frames in the platform's libraries are the same for many different crashes.
+        boolean isApp = file != null && !file.startsWith("/apex/")
+                && !file.startsWith("/system/") && !file.startsWith("/vendor/");
+        return new String[]{formatted, shortForm, isApp ? file : null};
+    }
+
+    /**
+     * Reads a line into {@code line}, dropping characters beyond {@link #MAX_LINE_LENGTH}.
+     *
+     * @return Whether a line was read before the end of the stream.
+     */
+    private static boolean readLine(Reader reader, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int c = reader.read();
+        if (c == -1) return false;
+        while (c != -1 && c != '\n') {
+            if (line.length() < MAX_LINE_LENGTH && c != '\r') line.append((char) c);
+            c = reader.read();
+        }
+        return true;
+    }
+
+    private static boolean startsWith(StringBuilder line, String prefix) {
+        return line.length() >= prefix.length()
+                && line.substring(0, prefix.length()).equals(prefix);
+    }
+
+    /**
+     * Platform frames, like the main looper waiting for messages, are the same for many ANRs.
+     */
+    private static boolean isPlatformMethod(String method) {
+        for (String prefix : PLATFORM_PACKAGES) {
+            if (method.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Turns {@code com.example.Foo.bar(Foo.java:12)} into {@code com.example.Foo.bar}, so the
+     * frame stays the same across releases.
+     */
+    private static String stripLocation(String frame) {
+        int parenthesis = frame.indexOf('(');
+        return parenthesis > 0 ? frame.substring(0, parenthesis) : frame;
+    }
+
+    static final class Trace {
+        @Nullable
+        final String summary;
+        final List<String> frames;
+        @Nullable
+        final String topFrame;
+
+        private Trace(@Nullable String summary, List<String> frames, @Nullable String topFrame) {
+            this.summary = summary;
+            this.frames = Collections.unmodifiableList(frames);
+            this.topFrame = topFrame;
+        }
+    }
+
+    /**
+     * Minimal reader for the protobuf wire format that tracks its position, so nested messages
+     * can be parsed or skipped without reading them into memory.
+     */
+    private static final class ProtoReader {
+        private final InputStream input;
+        private long position;
+
+        private ProtoReader(InputStream input) {
+            this.input = input;
+        }
+
+        /**
+         * @return The next tag, or -1 at the end of the stream.
+         */
+        int readTag() throws IOException {
+            int first = input.read();
+            if (first == -1) return -1;
+            position++;
+            return (int) readVarint(first);
+        }
+
+        long readVarint() throws IOException {
+            return readVarint(readByte());
+        }
+
+        private long readVarint(int first) throws IOException {
+            long value = first & 0x7f;
+            int b = first;
+            for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+                if (shift > 63) throw new IOException("Malformed varint");
+                b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+            }
+            return value;
+        }
+
+        /**
+         * Reads the length of a length-delimited field and returns the position it ends at.
+         */
+        long readEnd() throws IOException {
+            long length = readVarint();
+            if (length < 0) throw new IOException("Malformed length");
+            return position + length;
+        }
+
+        String readString() throws IOException {
+            long end = readEnd();
+            byte[] bytes = new byte[(int) Math.min(end - position, MAX_STRING_LENGTH)];
+            int read = 0;
+            while (read < bytes.length) {
+                int count = input.read(bytes, read, bytes.length - read);
+                if (count == -1) throw new EOFException();
+                read += count;
+            }
+            position += read;
+            skipTo(end);
+            return new String(bytes, UTF_8);
+        }
+
+        void skip(int wireType) throws IOException {
+            switch (wireType) {
+                case WIRE_VARINT:
+                    readVarint();
+                    break;
+                case WIRE_FIXED64:
+                    skipTo(position + 8);
+                    break;
+                case WIRE_LENGTH_DELIMITED:
+                    skipTo(readEnd());
+                    break;
+                case WIRE_FIXED32:
+                    skipTo(position + 4);
+                    break;
+                default:
+                    throw new IOException("Unsupported wire type " + wireType);
+            }
+        }
+
+        private void skipTo(long end) throws IOException {
+            while (position < end) {
+                long skipped = input.skip(end - position);
+                if (skipped <= 0) {
+                    // skip() may return 0 before the end of the stream, so fall back to read().
+                    if (input.read() == -1) throw new EOFException();
+                    skipped = 1;
+                }
+                position += skipped;
+            }
+        }
+
+        private int readByte() throws IOException {
+            int b = input.read();
+            if (b == -1) throw new EOFException();
+            position++;
+            return b;
+        }
+    }
+}
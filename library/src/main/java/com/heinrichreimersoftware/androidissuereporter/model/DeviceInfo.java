@@ -29,36 +29,55 @@ import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
 
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 
 public class DeviceInfo {
-    private final int versionCode;
-    private final String versionName;
-    private final String buildVersion = Build.VERSION.INCREMENTAL;
-    private final String releaseVersion = Build.VERSION.RELEASE;
+    private static final String JSON_VERSION_CODE = "versionCode";
+    private static final String JSON_VERSION_NAME = "versionName";
+    private static final String JSON_BUILD_VERSION = "buildVersion";
+    private static final String JSON_RELEASE_VERSION = "releaseVersion";
+    private static final String JSON_SDK_VERSION = "sdkVersion";
+    private static final String JSON_BUILD_ID = "buildId";
+    private static final String JSON_BRAND = "brand";
+    private static final String JSON_MANUFACTURER = "manufacturer";
+    private static final String JSON_DEVICE = "device";
+    private static final String JSON_MODEL = "model";
+    private static final String JSON_PRODUCT = "product";
+    private static final String JSON_HARDWARE = "hardware";
+    private static final String JSON_ABIS = "abis";
+    private static final String JSON_ABIS_32_BITS = "abis32Bits";
+    private static final String JSON_ABIS_64_BITS = "abis64Bits";
+
+    private int versionCode;
+    private String versionName;
+    private String buildVersion;
+    private String releaseVersion;
     @IntRange(from = 0)
-    private final int sdkVersion = Build.VERSION.SDK_INT;
-    private final String buildID = Build.DISPLAY;
-    private final String brand = Build.BRAND;
-    private final String manufacturer = Build.MANUFACTURER;
-    private final String device = Build.DEVICE;
-    private final String model = Build.MODEL;
-    private final String product = Build.PRODUCT;
-    private final String hardware = Build.HARDWARE;
-    @SuppressLint("NewApi")
-    private final String[] abis = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ?
-            Build.SUPPORTED_ABIS : new String[]{Build.CPU_ABI, Build.CPU_ABI2};
-    @SuppressLint("NewApi")
-    private final String[] abis32Bits = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ?
-            Build.SUPPORTED_32_BIT_ABIS : null;
-    @SuppressLint("NewApi")
-    private final String[] abis64Bits = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ?
-            Build.SUPPORTED_64_BIT_ABIS : null;
+    private int sdkVersion;
+    private String buildID;
+    private String brand;
+    private String manufacturer;
+    private String device;
+    private String model;
+    private String product;
+    private String hardware;
+    private String[] abis;
+    private String[] abis32Bits;
+    private String[] abis64Bits;
 
+    @SuppressLint("NewApi")
     public DeviceInfo(Context context) {
         PackageInfo packageInfo;
         try {
@@ -74,6 +93,114 @@ public class DeviceInfo {
             versionCode = -1;
             versionName = null;
         }
+        buildVersion = Build.VERSION.INCREMENTAL;
+        releaseVersion = Build.VERSION.RELEASE;
+        sdkVersion = Build.VERSION.SDK_INT;
+        buildID = Build.DISPLAY;
+        brand = Build.BRAND;
+        manufacturer = Build.MANUFACTURER;
+        device = Build.DEVICE;
+        model = Build.MODEL;
+        product = Build.PRODUCT;
+        hardware = Build.HARDWARE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            abis = Build.SUPPORTED_ABIS;
+            abis32Bits = Build.SUPPORTED_32_BIT_ABIS;
+            abis64Bits = Build.SUPPORTED_64_BIT_ABIS;
+        } else {
+            abis = new String[]{Build.CPU_ABI, Build.CPU_ABI2};
+        }
+    }
+
+    private DeviceInfo() {
+    }
+
+    public int getVersionCode() {
+        return versionCode;
+    }
+
+    public String getVersionName() {
+        return versionName;
+    }
+
+    public String getReleaseVersion() {
+        return releaseVersion;
+    }
+
+    public int getSdkVersion() {
+        return sdkVersion;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public String getManufacturer() {
+        return manufacturer;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getProduct() {
+        return product;
+    }
+
+    public String getHardware() {
+        return hardware;
+    }
+
+    /**
+     * Names of the fields accessible with {@link #getField(int)}, as in the JSON form.
+     */
+    static final String[] FIELDS = {JSON_VERSION_CODE, JSON_VERSION_NAME, JSON_BUILD_VERSION,
+            JSON_RELEASE_VERSION, JSON_SDK_VERSION, JSON_BUILD_ID, JSON_BRAND, JSON_MANUFACTURER,
+            JSON_DEVICE, JSON_MODEL, JSON_PRODUCT, JSON_HARDWARE, JSON_ABIS, JSON_ABIS_32_BITS,
+            JSON_ABIS_64_BITS};
+
+    /**
+     * Returns the field at {@code index} in {@link #FIELDS} as it appears in the Markdown table.
+     */
+    String getField(int index) {
+        switch (index) {
+            case 0:
+                return String.valueOf(versionCode);
+            case 1:
+                return versionName;
+            case 2:
+                return buildVersion;
+            case 3:
+                return releaseVersion;
+            case 4:
+                return String.valueOf(sdkVersion);
+            case 5:
+                return buildID;
+            case 6:
+                return brand;
+            case 7:
+                return manufacturer;
+            case 8:
+                return device;
+            case 9:
+                return model;
+            case 10:
+                return product;
+            case 11:
+                return hardware;
+            case 12:
+                return Arrays.toString(abis);
+            case 13:
+                return Arrays.toString(abis32Bits);
+            case 14:
+                return Arrays.toString(abis64Bits);
+            default:
+                throw new IndexOutOfBoundsException("No device info field " + index);
+        }
     }
 
     String toMarkdown() {
@@ -98,6 +225,114 @@ public class DeviceInfo {
                 + "</table>\n";
     }
 
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name(JSON_VERSION_CODE).value(versionCode);
+        writer.name(JSON_VERSION_NAME).value(versionName);
+        writer.name(JSON_BUILD_VERSION).value(buildVersion);
+        writer.name(JSON_RELEASE_VERSION).value(releaseVersion);
+        writer.name(JSON_SDK_VERSION).value(sdkVersion);
+        writer.name(JSON_BUILD_ID).value(buildID);
+        writer.name(JSON_BRAND).value(brand);
+        writer.name(JSON_MANUFACTURER).value(manufacturer);
+        writer.name(JSON_DEVICE).value(device);
+        writer.name(JSON_MODEL).value(model);
+        writer.name(JSON_PRODUCT).value(product);
+        writer.name(JSON_HARDWARE).value(hardware);
+        writeArray(writer.name(JSON_ABIS), abis);
+        writeArray(writer.name(JSON_ABIS_32_BITS), abis32Bits);
+        writeArray(writer.name(JSON_ABIS_64_BITS), abis64Bits);
+        writer.endObject();
+    }
+
+    /**
+     * Restores device info written by {@link #writeJson(JsonWriter)}. Unknown keys are skipped.
+     */
+    public static DeviceInfo readJson(JsonReader reader) throws IOException {
+        DeviceInfo info = new DeviceInfo();
+        info.versionCode = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case JSON_VERSION_CODE:
+                    info.versionCode = reader.nextInt();
+                    break;
+                case JSON_VERSION_NAME:
+                    info.versionName = JsonUtils.nextString(reader);
+                    break;
+                case JSON_BUILD_VERSION:
+                    info.buildVersion = JsonUtils.nextString(reader);
+                    break;
+                case JSON_RELEASE_VERSION:
+                    info.releaseVersion = JsonUtils.nextString(reader);
+                    break;
+                case JSON_SDK_VERSION:
+                    info.sdkVersion = reader.nextInt();
+                    break;
+                case JSON_BUILD_ID:
+                    info.buildID = JsonUtils.nextString(reader);
+                    break;
+                case JSON_BRAND:
+                    info.brand = JsonUtils.nextString(reader);
+                    break;
+                case JSON_MANUFACTURER:
+                    info.manufacturer = JsonUtils.nextString(reader);
+                    break;
+                case JSON_DEVICE:
+                    info.device = JsonUtils.nextString(reader);
+                    break;
+                case JSON_MODEL:
+                    info.model = JsonUtils.nextString(reader);
+                    break;
+                case JSON_PRODUCT:
+                    info.product = JsonUtils.nextString(reader);
+                    break;
+                case JSON_HARDWARE:
+                    info.hardware = JsonUtils.nextString(reader);
+                    break;
+                case JSON_ABIS:
+                    info.abis = readArray(reader);
+                    break;
+                case JSON_ABIS_32_BITS:
+                    info.abis32Bits = readArray(reader);
+                    break;
+                case JSON_ABIS_64_BITS:
+                    info.abis64Bits = readArray(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return info;
+    }
+
+    private static void writeArray(JsonWriter writer, String[] values) throws IOException {
+        if (values == null) {
+            writer.nullValue();
+            return;
+        }
+        writer.beginArray();
+        for (String value : values) {
+            writer.value(value);
+        }
+        writer.endArray();
+    }
+
+    private static String[] readArray(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            values.add(JsonUtils.nextString(reader));
+        }
+        reader.endArray();
+        return values.toArray(new String[0]);
+    }
+
     @NonNull
     @Override
     public String toString() {
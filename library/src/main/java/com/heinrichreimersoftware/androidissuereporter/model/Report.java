@@ -25,52 +25,370 @@
 package com.heinrichreimersoftware.androidissuereporter.model;
 
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonWriter;
 
+import com.heinrichreimersoftware.androidissuereporter.diagnostics.DiagnosticsCollector;
 import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.util.Hashes;
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+import com.heinrichreimersoftware.androidissuereporter.util.Redactor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 public class Report {
     private static final String PARAGRAPH_BREAK = "\n\n";
     private static final String HORIZONTAL_RULE = "---";
+    private static final String ID_MARKER_PREFIX = "<!-- issue-reporter-id: ";
+    private static final String ID_MARKER_SUFFIX = " -->";
+
+    private static final int JSON_SCHEMA_VERSION = 1;
+    private static final String JSON_SCHEMA = "schemaVersion";
+    private static final String JSON_ID = "id";
+    private static final String JSON_FINGERPRINT = "fingerprint";
+    private static final String JSON_TITLE = "title";
+    private static final String JSON_SUBMITTER = "submitter";
+    private static final String JSON_DESCRIPTION = "description";
+    private static final String JSON_DEVICE_INFO = "deviceInfo";
+    private static final String JSON_EXTRA_INFO = "extraInfo";
+
+    private final String id;
 
     private final String title;
     private final String description;
     private final DeviceInfo deviceInfo;
     private final ExtraInfo extraInfo;
     private final String email;
+    private final Redactor redactor;
+    @Nullable
+    private final DiagnosticsCollector diagnostics;
+    private boolean diagnosticsCollected;
 
     public Report(String title, String description, DeviceInfo deviceInfo, ExtraInfo extraInfo, String email) {
-        this.title = title;
+        this(title, description, deviceInfo, extraInfo, email, Redactor.DEFAULT);
+    }
+
+    public Report(String title, String description, DeviceInfo deviceInfo, ExtraInfo extraInfo,
+                  String email, Redactor redactor) {
+        this(title, description, deviceInfo, extraInfo, email, redactor, null);
+    }
+
+    public Report(String title, String description, DeviceInfo deviceInfo, ExtraInfo extraInfo,
+                  String email, Redactor redactor, @Nullable DiagnosticsCollector diagnostics) {
+        this(UUID.randomUUID().toString(), title, description, deviceInfo, extraInfo, email,
+                redactor, diagnostics);
+    }
+
+    private Report(String id, String title, String description, DeviceInfo deviceInfo,
+                   ExtraInfo extraInfo, String email, Redactor redactor,
+                   @Nullable DiagnosticsCollector diagnostics) {
+        this.id = id;
+        this.title = title == null || redactor == null ? title : redactor.redact(title);
         this.description = description;
         this.deviceInfo = deviceInfo;
         this.extraInfo = extraInfo;
         this.email = email;
+        this.redactor = redactor == null ? Redactor.NONE : redactor;
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Random identifier of this report instance. It is embedded invisibly in the issue body, so
+     * a retry can find an issue that was created even though the response got lost.
+     */
+    public String getId() {
+        return id;
     }
 
+    public String getIdMarker() {
+        return ID_MARKER_PREFIX + id + ID_MARKER_SUFFIX;
+    }
+
+    /**
+     * The title, redacted like the description.
+     */
     public String getTitle() {
         return title;
     }
 
+    /**
+     * The description as entered by the user, without redaction.
+     */
+    public String getUserDescription() {
+        return description;
+    }
+
+    /**
+     * Stable identifier grouping reports of the same problem. Derived from the normalized title.
+     */
+    public String getFingerprint() {
+        return Hashes.fnv1a64(title == null ? "" : title.trim().toLowerCase(Locale.US));
+    }
+
+    @WorkerThread
     public String getDescription() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeDescription(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Streams the report body to {@code writer}. Together with a
+     * {@link com.heinrichreimersoftware.androidissuereporter.storage.ReportBuffer} this renders
+     * large bodies without holding additional copies in memory.
+     */
+    @WorkerThread
+    public void writeDescription(Writer writer) throws IOException {
+        ExtraInfo extraInfo = getExtraInfo();
         StringBuilder builder = new StringBuilder();
+        appendSubmitter(builder);
+        builder.append("Description:\n")
+                .append(HORIZONTAL_RULE)
+                .append(PARAGRAPH_BREAK);
+        writer.append(builder);
+        redactor.redact(description, writer);
+        writer.write(PARAGRAPH_BREAK);
+        writer.write(deviceInfo.toMarkdown());
+        writer.write(PARAGRAPH_BREAK);
+        extraInfo.writeMarkdown(writer, redactor);
+        writer.write(PARAGRAPH_BREAK);
+        writer.write(getIdMarker());
+    }
+
+    /**
+     * Writes the report as a single JSON object for machine ingestion. Personal data is redacted
+     * and masked the same way as in {@link #writeDescription(Writer)}.
+     */
+    @WorkerThread
+    public void writeJson(Writer writer) throws IOException {
+        ExtraInfo extraInfo = getExtraInfo();
+        writer.write('{');
+        JsonUtils.writeString(writer, JSON_SCHEMA);
+        writer.write(':');
+        writer.write(Integer.toString(JSON_SCHEMA_VERSION));
+        writeName(writer, JSON_ID);
+        JsonUtils.writeString(writer, id);
+        writeName(writer, JSON_FINGERPRINT);
+        JsonUtils.writeString(writer, getFingerprint());
+        writeName(writer, JSON_TITLE);
+        JsonUtils.writeString(writer, title);
         if (!TextUtils.isEmpty(email)) {
-            builder.append("*Submitted by ");
-            String[] encrypt = email.split("@");
-            builder.append(encrypt[0]).append("@");
-            String[] domain = encrypt[1].split("\\.");
-            for (int i = 0; i < domain[0].length(); i ++) {
-                builder.append("*");
+            writeName(writer, JSON_SUBMITTER);
+            JsonUtils.writeString(writer, Redactor.maskEmail(email));
+        }
+        writeName(writer, JSON_DESCRIPTION);
+        JsonUtils.writeString(writer, description == null ? "" : description, redactor);
+        writeName(writer, JSON_DEVICE_INFO);
+        JsonWriter json = new JsonWriter(writer);
+        deviceInfo.writeJson(json);
+        // Don't close the JSON writer, as that would close the underlying writer.
+        json.flush();
+        writeName(writer, JSON_EXTRA_INFO);
+        extraInfo.writeJson(writer, redactor);
+        writer.write('}');
+    }
+
+    private static void writeName(Writer writer, String name) throws IOException {
+        writer.write(',');
+        JsonUtils.writeString(writer, name);
+        writer.write(':');
+    }
+
+    /**
+     * Writes the JSON inside a collapsed fenced block, so it can be embedded in the issue body
+     * and extracted again without parsing the Markdown tables.
+     */
+    @WorkerThread
+    public void writeJsonBlock(Writer writer) throws IOException {
+        writer.write("<details><summary>Report data</summary>\n\n```json\n");
+        writeJson(writer);
+        writer.write("\n```\n</details>");
+    }
+
+    /**
+     * Reads a report written by {@link #writeJson(Writer)}. The report keeps its ID; its content
+     * is already redacted, so it is not redacted again.
+     */
+    public static Report readJson(Reader reader) throws IOException {
+        return readJson(new JsonReader(reader));
+    }
+
+    public static Report readJson(JsonReader reader) throws IOException {
+        String id = null;
+        String title = null;
+        String submitter = null;
+        String description = null;
+        DeviceInfo deviceInfo = null;
+        ExtraInfo extraInfo = new ExtraInfo();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case JSON_SCHEMA:
+                    int schema = reader.nextInt();
+                    if (schema > JSON_SCHEMA_VERSION)
+                        throw new IOException("Unsupported report schema version " + schema);
+                    break;
+                case JSON_ID:
+                    id = JsonUtils.nextString(reader);
+                    break;
+                case JSON_TITLE:
+                    title = JsonUtils.nextString(reader);
+                    break;
+                case JSON_SUBMITTER:
+                    submitter = JsonUtils.nextString(reader);
+                    break;
+                case JSON_DESCRIPTION:
+                    description = JsonUtils.nextString(reader);
+                    break;
+                case JSON_DEVICE_INFO:
+                    deviceInfo = DeviceInfo.readJson(reader);
+                    break;
+                case JSON_EXTRA_INFO:
+                    extraInfo = ExtraInfo.readJson(reader);
+                    break;
+                default:
+                    reader.skipValue();
             }
-            builder.append(".").append(domain[1]);
-            builder.append("*").append(PARAGRAPH_BREAK);
         }
-        builder.append("Description:\n")
+        reader.endObject();
+        if (TextUtils.isEmpty(id) || deviceInfo == null)
+            throw new IOException("Report JSON is missing the ID or device info");
+        return new Report(id, title, description, deviceInfo, extraInfo, submitter,
+                Redactor.NONE, null);
+    }
+
+    /**
+     * Describes this report as a follow-up to an earlier report of the same issue. Only the new
+     * description, a changed app version and added or changed extra info are included. Ends
+     * with the ID marker like {@link #writeDescription(Writer)}, so a retry can detect the
+     * comment.
+     */
+    @WorkerThread
+    public String getFollowUpDescription(@Nullable String previousVersionName,
+                                         @Nullable Map<String, String> previousExtraInfoHashes) {
+        ExtraInfo extraInfo = getExtraInfo();
+        StringBuilder builder = new StringBuilder();
+        appendSubmitter(builder);
+        builder.append("Follow-up:\n")
                 .append(HORIZONTAL_RULE)
-                .append(PARAGRAPH_BREAK)
-                .append(description)
-                .append(PARAGRAPH_BREAK)
-                .append(deviceInfo.toMarkdown())
-                .append(PARAGRAPH_BREAK)
-                .append(extraInfo.toMarkdown());
+                .append(PARAGRAPH_BREAK);
+        redactor.redact(description, builder);
+        String versionName = deviceInfo.getVersionName();
+        if (!TextUtils.equals(previousVersionName, versionName)) {
+            builder.append(PARAGRAPH_BREAK)
+                    .append("App version: ")
+                    .append(previousVersionName)
+                    .append(" → ")
+                    .append(versionName)
+                    .append(" (")
+                    .append(deviceInfo.getVersionCode())
+                    .append(")");
+        }
+        ExtraInfo changed = extraInfo.changedSince(previousExtraInfoHashes);
+        if (!changed.isEmpty()) {
+            StringWriter writer = new StringWriter();
+            try {
+                changed.writeMarkdown(writer, redactor);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            builder.append(PARAGRAPH_BREAK).append(writer);
+        }
+        builder.append(PARAGRAPH_BREAK).append(getIdMarker());
+        return builder.toString();
+    }
+
+    /**
+     * Describes this report as a +1 on an existing issue: the app and Android version, the
+     * device and the description, if any. Ends with the ID marker like
+     * {@link #writeDescription(Writer)}, so a retry can detect the comment.
+     */
+    public String getPlusOneDescription() {
+        StringBuilder builder = new StringBuilder();
+        appendSubmitter(builder);
+        builder.append("+1 — App version ")
+                .append(deviceInfo.getVersionName())
+                .append(" (")
+                .append(deviceInfo.getVersionCode())
+                .append("), Android ")
+                .append(deviceInfo.getReleaseVersion())
+                .append(" (API ")
+                .append(deviceInfo.getSdkVersion())
+                .append("), ")
+                .append(deviceInfo.getManufacturer())
+                .append(" ")
+                .append(deviceInfo.getModel());
+        if (!TextUtils.isEmpty(description)) {
+            builder.append(PARAGRAPH_BREAK);
+            redactor.redact(description, builder);
+        }
+        builder.append(PARAGRAPH_BREAK).append(getIdMarker());
         return builder.toString();
     }
+
+    /**
+     * Returns a copy of this report with the same ID, but {@code extraInfo} instead of the
+     * extra info and diagnostics.
+     */
+    public Report withExtraInfo(ExtraInfo extraInfo) {
+        return new Report(id, title, description, deviceInfo, extraInfo, email, redactor, null);
+    }
+
+    /**
+     * Returns a new report of the same problem with only {@code extraInfo}, e.g. to send
+     * details that were left out of this report later.
+     */
+    public Report forExtraInfo(ExtraInfo extraInfo) {
+        return new Report(UUID.randomUUID().toString(), title, "", deviceInfo, extraInfo, email,
+                redactor, null);
+    }
+
+    public DeviceInfo getDeviceInfo() {
+        return deviceInfo;
+    }
+
+    /**
+     * Returns the extra info including the collected diagnostics. Diagnostics are collected on
+     * the first call only; later calls return the memoized result.
+     */
+    @WorkerThread
+    public synchronized ExtraInfo getExtraInfo() {
+        if (!diagnosticsCollected) {
+            if (diagnostics != null) {
+                diagnostics.collect().addTo(extraInfo);
+            }
+            diagnosticsCollected = true;
+        }
+        return extraInfo;
+    }
+
+    Redactor getRedactor() {
+        return redactor;
+    }
+
+    @Nullable
+    String getMaskedEmail() {
+        return TextUtils.isEmpty(email) ? null : Redactor.maskEmail(email);
+    }
+
+    private void appendSubmitter(StringBuilder builder) {
+        if (!TextUtils.isEmpty(email)) {
+            builder.append("*Submitted by ")
+                    .append(Redactor.maskEmail(email))
+                    .append("*").append(PARAGRAPH_BREAK);
+        }
+    }
 }
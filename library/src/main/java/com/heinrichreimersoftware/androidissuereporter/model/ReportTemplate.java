@@ -0,0 +1,291 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.model;
+
+import android.text.TextUtils;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Renders the issue body from a Mustache-like template instead of the built-in layout.
+ * Templates are parsed once by {@link #compile(String)}; rendering walks the parsed nodes and
+ * streams straight into a {@link Writer}.
+ * <p>
+ * Variables: {@code {{title}}}, {@code {{submitter}}} (masked e-mail address),
+ * {@code {{description}}}, {@code {{id}}}, {@code {{fingerprint}}}, {@code {{device.<name>}}}
+ * with the field names of the report JSON, {@code {{extra.<key>}}}, and {@code {{deviceInfo}}}
+ * and {@code {{extraInfo}}} for the default tables. Sections: {@code {{#name}}...{{/name}}}
+ * renders if the variable is not empty, {@code {{^name}}...{{/name}}} if it is.
+ * {@code {{#extraInfo}}...{{/extraInfo}}} repeats for each entry, with {@code {{key}}} and
+ * {@code {{value}}} inside.
+ * <p>
+ * The description and extra info values are redacted. The report's ID marker is always
+ * appended, so retries can still find the issue.
+ */
+public final class ReportTemplate {
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    private static final String DEVICE_PREFIX = "device.";
+    private static final String EXTRA_PREFIX = "extra.";
+    private static final String EXTRA_INFO = "extraInfo";
+    private static final String PARAGRAPH_BREAK = "\n\n";
+
+    private static final Map<GithubTarget, ReportTemplate> templates = new HashMap<>();
+
+    private final Node[] nodes;
+
+    private ReportTemplate(Node[] nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Parses {@code template}.
+     *
+     * @throws IllegalArgumentException if a tag is unknown or sections aren't balanced
+     */
+    @NonNull
+    public static ReportTemplate compile(@NonNull String template) {
+        Deque<Frame> stack = new ArrayDeque<>();
+        Frame frame = new Frame(null, false);
+        int position = 0;
+        while (position < template.length()) {
+            int open = template.indexOf(OPEN, position);
+            if (open < 0) {
+                frame.addText(template.substring(position));
+                break;
+            }
+            int close = template.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0)
+                throw new IllegalArgumentException("Unclosed tag at " + open);
+            frame.addText(template.substring(position, open));
+            position = close + CLOSE.length();
+
+            String tag = template.substring(open + OPEN.length(), close).trim();
+            if (tag.isEmpty())
+                throw new IllegalArgumentException("Empty tag at " + open);
+            char type = tag.charAt(0);
+            String name = tag.substring(1).trim();
+            if (type == '#' || type == '^') {
+                stack.push(frame);
+                frame = new Frame(name, type == '^');
+            } else if (type == '/') {
+                if (!name.equals(frame.name))
+                    throw new IllegalArgumentException("Unexpected {{/" + name + "}} at " + open);
+                Node section = frame.toSection(inLoop(stack));
+                frame = stack.pop();
+                frame.nodes.add(section);
+            } else {
+                frame.nodes.add(variable(tag, inLoop(stack) || frame.isLoop()));
+            }
+        }
+        if (frame.name != null)
+            throw new IllegalArgumentException("Unclosed section {{#" + frame.name + "}}");
+        return new ReportTemplate(frame.nodes.toArray(new Node[0]));
+    }
+
+    public static synchronized void register(@NonNull GithubTarget target,
+                                             @NonNull ReportTemplate template) {
+        templates.put(target, template);
+    }
+
+    @Nullable
+    public static synchronized ReportTemplate get(@NonNull GithubTarget target) {
+        return templates.get(target);
+    }
+
+    /**
+     * Streams the body of {@code report} to {@code writer}, followed by its ID marker.
+     */
+    @WorkerThread
+    public void render(@NonNull Report report, @NonNull Writer writer) throws IOException {
+        Scope scope = new Scope(report);
+        render(nodes, scope, writer);
+        writer.write(PARAGRAPH_BREAK);
+        writer.write(report.getIdMarker());
+    }
+
+    private static void render(Node[] nodes, Scope scope, Writer writer) throws IOException {
+        for (Node node : nodes) {
+            node.render(scope, writer);
+        }
+    }
+
+    private static boolean inLoop(Deque<Frame> stack) {
+        for (Frame frame : stack) {
+            if (frame.isLoop()) return true;
+        }
+        return false;
+    }
+
+    private static Node variable(String name, boolean inLoop) {
+        switch (name) {
+            case "deviceInfo":
+                return (scope, writer) -> writer.write(scope.report.getDeviceInfo().toMarkdown());
+            case EXTRA_INFO:
+                return (scope, writer) ->
+                        scope.extraInfo.writeMarkdown(writer, scope.report.getRedactor());
+            default:
+                Value value = value(name, inLoop);
+                if (value instanceof RedactedValue) {
+                    return (scope, writer) -> {
+                        String string = value.get(scope);
+                        if (string != null) scope.report.getRedactor().redact(string, writer);
+                    };
+                }
+                return (scope, writer) -> {
+                    String string = value.get(scope);
+                    if (string != null) writer.write(string);
+                };
+        }
+    }
+
+    private static Value value(String name, boolean inLoop) {
+        switch (name) {
+            case "title":
+                return scope -> scope.report.getTitle();
+            case "submitter":
+                return scope -> scope.report.getMaskedEmail();
+            case "description":
+                return new RedactedValue(scope -> scope.report.getUserDescription());
+            case "id":
+                return scope -> scope.report.getId();
+            case "fingerprint":
+                return scope -> scope.report.getFingerprint();
+            case "key":
+                if (!inLoop) break;
+                return scope -> scope.key;
+            case "value":
+                if (!inLoop) break;
+                return new RedactedValue(scope -> scope.value);
+        }
+        if (name.startsWith(DEVICE_PREFIX)) {
+            String field = name.substring(DEVICE_PREFIX.length());
+            for (int i = 0; i < DeviceInfo.FIELDS.length; i++) {
+                if (DeviceInfo.FIELDS[i].equals(field)) {
+                    int index = i;
+                    return scope -> scope.report.getDeviceInfo().getField(index);
+                }
+            }
+        } else if (name.startsWith(EXTRA_PREFIX)) {
+            String key = name.substring(EXTRA_PREFIX.length());
+            return new RedactedValue(scope -> scope.extraInfo.getInfo().get(key));
+        }
+        throw new IllegalArgumentException("Unknown template variable " + name);
+    }
+
+    private interface Node {
+        void render(Scope scope, Writer writer) throws IOException;
+    }
+
+    private interface Value {
+        @Nullable
+        String get(Scope scope);
+    }
+
+    private static class RedactedValue implements Value {
+        private final Value value;
+
+        RedactedValue(Value value) {
+            this.value = value;
+        }
+
+        @Nullable
+        @Override
+        public String get(Scope scope) {
+            return value.get(scope);
+        }
+    }
+
+    private static class Scope {
+        final Report report;
+        final ExtraInfo extraInfo;
+        String key;
+        String value;
+
+        Scope(Report report) {
+            this.report = report;
+            this.extraInfo = report.getExtraInfo();
+        }
+    }
+
+    private static class Frame {
+        @Nullable
+        final String name;
+        final boolean inverted;
+        final List<Node> nodes = new ArrayList<>();
+
+        Frame(@Nullable String name, boolean inverted) {
+            this.name = name;
+            this.inverted = inverted;
+        }
+
+        boolean isLoop() {
+            return EXTRA_INFO.equals(name) && !inverted;
+        }
+
+        void addText(String text) {
+            if (!text.isEmpty()) nodes.add((scope, writer) -> writer.write(text));
+        }
+
+        Node toSection(boolean inLoop) {
+            Node[] children = nodes.toArray(new Node[0]);
+            if (isLoop()) {
+                return (scope, writer) -> {
+                    for (Map.Entry<String, String> entry : scope.extraInfo.getInfo().entrySet()) {
+                        scope.key = entry.getKey();
+                        scope.value = entry.getValue();
+                        render(children, scope, writer);
+                    }
+                    scope.key = null;
+                    scope.value = null;
+                };
+            }
+            if (EXTRA_INFO.equals(name)) {
+                return (scope, writer) -> {
+                    if (scope.extraInfo.isEmpty()) render(children, scope, writer);
+                };
+            }
+            Value value = value(name, inLoop);
+            return (scope, writer) -> {
+                if (TextUtils.isEmpty(value.get(scope)) == inverted)
+                    render(children, scope, writer);
+            };
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.model.github;
+
+import android.util.JsonReader;
+
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+
+import java.io.IOException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The fields of a GitHub issue comment the reporter uses.
+ */
+public class Comment {
+    private static final String JSON_ID = "id";
+    private static final String JSON_BODY = "body";
+    private static final String JSON_HTML_URL = "html_url";
+
+    private final long id;
+    @Nullable
+    private final String body;
+    @Nullable
+    private final String htmlUrl;
+
+    private Comment(long id, @Nullable String body, @Nullable String htmlUrl) {
+        this.id = id;
+        this.body = body;
+        this.htmlUrl = htmlUrl;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Nullable
+    public String getBody() {
+        return body;
+    }
+
+    @Nullable
+    public String getHtmlUrl() {
+        return htmlUrl;
+    }
+
+    public static Comment readJson(JsonReader reader) throws IOException {
+        long id = 0;
+        String body = null;
+        String htmlUrl = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case JSON_ID:
+                    id = reader.nextLong();
+                    break;
+                case JSON_BODY:
+                    body = JsonUtils.nextString(reader);
+                    break;
+                case JSON_HTML_URL:
+                    htmlUrl = JsonUtils.nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Comment(id, body, htmlUrl);
+    }
+}
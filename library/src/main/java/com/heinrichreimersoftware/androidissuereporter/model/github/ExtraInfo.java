@@ -25,6 +25,16 @@
 package com.heinrichreimersoftware.androidissuereporter.model.github;
 
 import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.JsonReader;
+
+import com.heinrichreimersoftware.androidissuereporter.util.Hashes;
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+import com.heinrichreimersoftware.androidissuereporter.util.Redactor;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -73,6 +83,62 @@ public class ExtraInfo {
         return extraInfo.isEmpty();
     }
 
+    /**
+     * Returns a hash of each value, so changes can be detected without keeping the values.
+     */
+    public Map<String, String> getHashes() {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : extraInfo.entrySet()) {
+            hashes.put(entry.getKey(), hash(entry.getValue()));
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns the entries that were added or changed compared to the hashes of earlier values
+     * from {@link #getHashes()}.
+     */
+    public ExtraInfo changedSince(Map<String, String> previousHashes) {
+        ExtraInfo changed = new ExtraInfo();
+        for (Map.Entry<String, String> entry : extraInfo.entrySet()) {
+            if (previousHashes == null || !TextUtils.equals(hash(entry.getValue()),
+                    previousHashes.get(entry.getKey()))) {
+                changed.extraInfo.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return changed;
+    }
+
+    private static String hash(String value) {
+        return Hashes.fnv1a64(value == null ? "" : value);
+    }
+
+    /**
+     * Returns the entries whose values are longer than {@code length} characters.
+     */
+    public ExtraInfo longerThan(int length) {
+        ExtraInfo longer = new ExtraInfo();
+        for (Map.Entry<String, String> entry : extraInfo.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().length() > length) {
+                longer.extraInfo.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return longer;
+    }
+
+    /**
+     * Returns the entries whose keys aren't in {@code other}.
+     */
+    public ExtraInfo without(ExtraInfo other) {
+        ExtraInfo remaining = new ExtraInfo();
+        for (Map.Entry<String, String> entry : extraInfo.entrySet()) {
+            if (!other.extraInfo.containsKey(entry.getKey())) {
+                remaining.extraInfo.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return remaining;
+    }
+
     public Map<String, String> getInfo() {
         return extraInfo;
     }
@@ -80,27 +146,68 @@ public class ExtraInfo {
     public String toMarkdown() {
         if (extraInfo.isEmpty()) return "";
 
-        StringBuilder output = new StringBuilder();
+        StringWriter output = new StringWriter();
+        try {
+            writeMarkdown(output, Redactor.NONE);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Writes the same output as {@link #toMarkdown()}, redacting each value on the way, without
+     * building the whole section in memory first.
+     */
+    public void writeMarkdown(Writer output, Redactor redactor) throws IOException {
+        if (extraInfo.isEmpty()) return;
+
         if (extraInfo.containsKey("logcat")) {
-            output.append("Logcat:\n---\n```")
-                    .append(extraInfo.get("logcat"))
-                    .append("```");
+            output.write("Logcat:\n---\n```");
+            redactor.redact(extraInfo.get("logcat"), output);
+            output.write("```");
             if (extraInfo.keySet().size() == 1)
-                return output.toString();
+                return;
         }
-        output.append("Extra info:\n"
+        output.write("Extra info:\n"
                 + "---\n"
                 + "<table>\n");
         for (String key : extraInfo.keySet()) {
-            output.append("<tr><td>")
-                    .append(key)
-                    .append("</td><td>")
-                    .append(extraInfo.get(key))
-                    .append("</td></tr>\n");
+            output.write("<tr><td>");
+            output.write(key);
+            output.write("</td><td>");
+            redactor.redact(extraInfo.get(key), output);
+            output.write("</td></tr>\n");
+        }
+        output.write("</table>\n");
+    }
+
+    /**
+     * Writes the entries as a JSON object, redacting and escaping each value on the way without
+     * building redacted copies of large values in memory.
+     */
+    public void writeJson(Writer output, Redactor redactor) throws IOException {
+        output.write('{');
+        boolean first = true;
+        for (Map.Entry<String, String> entry : extraInfo.entrySet()) {
+            if (!first) output.write(',');
+            first = false;
+            JsonUtils.writeString(output, entry.getKey());
+            output.write(':');
+            JsonUtils.writeString(output, entry.getValue(), redactor);
         }
-        output.append("</table>\n");
+        output.write('}');
+    }
 
-        return output.toString();
+    public static ExtraInfo readJson(JsonReader reader) throws IOException {
+        ExtraInfo extraInfo = new ExtraInfo();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            extraInfo.extraInfo.put(key, JsonUtils.nextString(reader));
+        }
+        reader.endObject();
+        return extraInfo;
     }
 
     public Bundle toBundle() {
@@ -62,4 +62,21 @@ public class GithubLogin {
         return apiToken;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GithubLogin that = (GithubLogin) o;
+        return TextUtils.equals(username, that.username)
+                && TextUtils.equals(password, that.password)
+                && TextUtils.equals(apiToken, that.apiToken);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = username != null ? username.hashCode() : 0;
+        result = 31 * result + (password != null ? password.hashCode() : 0);
+        result = 31 * result + (apiToken != null ? apiToken.hashCode() : 0);
+        return result;
+    }
 }
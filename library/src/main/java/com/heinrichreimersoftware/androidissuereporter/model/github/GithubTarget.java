@@ -24,14 +24,47 @@
 
 package com.heinrichreimersoftware.androidissuereporter.model.github;
 
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
 public class GithubTarget {
+    public static final String DEFAULT_API_BASE_URL = "https://api.github.com";
+    public static final String DEFAULT_WEB_BASE_URL = "https://github.com";
+
     private final String username;
 
     private final String repository;
 
+    private final String apiBaseUrl;
+
+    private final String webBaseUrl;
+
+    private final List<String> fallbackApiBaseUrls;
+
     public GithubTarget(String username, String repository) {
+        this(username, repository, DEFAULT_API_BASE_URL, DEFAULT_WEB_BASE_URL);
+    }
+
+    /**
+     * Target on a GitHub Enterprise instance, e.g. {@code https://github.example.com}.
+     * Optional fallback API hosts, e.g. mirrors, are tried in order of their measured health.
+     */
+    public GithubTarget(String username, String repository, String apiBaseUrl, String webBaseUrl,
+                        String... fallbackApiBaseUrls) {
         this.username = username;
         this.repository = repository;
+        this.apiBaseUrl = TextUtils.isEmpty(apiBaseUrl) ? DEFAULT_API_BASE_URL : trim(apiBaseUrl);
+        this.webBaseUrl = TextUtils.isEmpty(webBaseUrl) ? DEFAULT_WEB_BASE_URL : trim(webBaseUrl);
+        List<String> fallbacks = new ArrayList<>(fallbackApiBaseUrls.length);
+        for (String fallback : fallbackApiBaseUrls) {
+            if (!TextUtils.isEmpty(fallback)) fallbacks.add(trim(fallback));
+        }
+        this.fallbackApiBaseUrls = Collections.unmodifiableList(fallbacks);
     }
 
     public String getUsername() {
@@ -41,4 +74,65 @@ public class GithubTarget {
     public String getRepository() {
         return repository;
     }
+
+    public String getApiBaseUrl() {
+        return apiBaseUrl;
+    }
+
+    public String getWebBaseUrl() {
+        return webBaseUrl;
+    }
+
+    public List<String> getFallbackApiBaseUrls() {
+        return fallbackApiBaseUrls;
+    }
+
+    /**
+     * The primary API base URL followed by all fallbacks.
+     */
+    public List<String> getApiBaseUrls() {
+        List<String> urls = new ArrayList<>(1 + fallbackApiBaseUrls.size());
+        urls.add(apiBaseUrl);
+        urls.addAll(fallbackApiBaseUrls);
+        return urls;
+    }
+
+    public String getIssuesUrl() {
+        return webBaseUrl + "/" + username + "/" + repository + "/issues";
+    }
+
+    private static String trim(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GithubTarget that = (GithubTarget) o;
+        return TextUtils.equals(username, that.username)
+                && TextUtils.equals(repository, that.repository)
+                && apiBaseUrl.equals(that.apiBaseUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = username != null ? username.hashCode() : 0;
+        result = 31 * result + (repository != null ? repository.hashCode() : 0);
+        result = 31 * result + apiBaseUrl.hashCode();
+        return result;
+    }
+
+    /**
+     * Identifies the target, also in persisted state. Targets on github.com keep the plain
+     * {@code owner/repository} form.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        if (DEFAULT_API_BASE_URL.equals(apiBaseUrl)) {
+            return username + "/" + repository;
+        }
+        return apiBaseUrl + "/" + username + "/" + repository;
+    }
 }
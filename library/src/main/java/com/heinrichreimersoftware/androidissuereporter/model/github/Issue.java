@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.model.github;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+
+import java.io.IOException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The fields of a GitHub issue the reporter uses. The issues endpoints also list pull requests.
+ */
+public class Issue {
+    private static final String JSON_NUMBER = "number";
+    private static final String JSON_TITLE = "title";
+    private static final String JSON_BODY = "body";
+    private static final String JSON_STATE = "state";
+    private static final String JSON_HTML_URL = "html_url";
+    private static final String JSON_PULL_REQUEST = "pull_request";
+
+    private final int number;
+    @Nullable
+    private final String title;
+    @Nullable
+    private final String body;
+    @Nullable
+    private final String state;
+    @Nullable
+    private final String htmlUrl;
+    private final boolean pullRequest;
+
+    private Issue(int number, @Nullable String title, @Nullable String body,
+                  @Nullable String state, @Nullable String htmlUrl, boolean pullRequest) {
+        this.number = number;
+        this.title = title;
+        this.body = body;
+        this.state = state;
+        this.htmlUrl = htmlUrl;
+        this.pullRequest = pullRequest;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    @Nullable
+    public String getTitle() {
+        return title;
+    }
+
+    @Nullable
+    public String getBody() {
+        return body;
+    }
+
+    @Nullable
+    public String getState() {
+        return state;
+    }
+
+    @Nullable
+    public String getHtmlUrl() {
+        return htmlUrl;
+    }
+
+    public boolean isPullRequest() {
+        return pullRequest;
+    }
+
+    public static Issue readJson(JsonReader reader) throws IOException {
+        int number = 0;
+        String title = null;
+        String body = null;
+        String state = null;
+        String htmlUrl = null;
+        boolean pullRequest = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case JSON_NUMBER:
+                    number = reader.nextInt();
+                    break;
+                case JSON_TITLE:
+                    title = JsonUtils.nextString(reader);
+                    break;
+                case JSON_BODY:
+                    body = JsonUtils.nextString(reader);
+                    break;
+                case JSON_STATE:
+                    state = JsonUtils.nextString(reader);
+                    break;
+                case JSON_HTML_URL:
+                    htmlUrl = JsonUtils.nextString(reader);
+                    break;
+                case JSON_PULL_REQUEST:
+                    pullRequest = reader.peek() != JsonToken.NULL;
+                    reader.skipValue();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Issue(number, title, body, state, htmlUrl, pullRequest);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.model.github;
+
+import android.util.JsonReader;
+
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+
+import java.io.IOException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The fields of a GitHub repository the reporter uses.
+ */
+public class Repository {
+    private static final String JSON_FULL_NAME = "full_name";
+    private static final String JSON_PRIVATE = "private";
+    private static final String JSON_HAS_ISSUES = "has_issues";
+
+    @Nullable
+    private final String fullName;
+    private final boolean isPrivate;
+    private final boolean hasIssues;
+
+    private Repository(@Nullable String fullName, boolean isPrivate, boolean hasIssues) {
+        this.fullName = fullName;
+        this.isPrivate = isPrivate;
+        this.hasIssues = hasIssues;
+    }
+
+    @Nullable
+    public String getFullName() {
+        return fullName;
+    }
+
+    public boolean isPrivate() {
+        return isPrivate;
+    }
+
+    public boolean hasIssues() {
+        return hasIssues;
+    }
+
+    public static Repository readJson(JsonReader reader) throws IOException {
+        String fullName = null;
+        boolean isPrivate = false;
+        // A missing field shouldn't block reports.
+        boolean hasIssues = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case JSON_FULL_NAME:
+                    fullName = JsonUtils.nextString(reader);
+                    break;
+                case JSON_PRIVATE:
+                    isPrivate = reader.nextBoolean();
+                    break;
+                case JSON_HAS_ISSUES:
+                    hasIssues = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Repository(fullName, isPrivate, hasIssues);
+    }
+}
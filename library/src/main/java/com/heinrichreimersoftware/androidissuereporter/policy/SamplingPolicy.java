@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.policy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Limits how many automatically generated reports are sent for a target.
+ * User initiated reports are never sampled or counted against the quota.
+ */
+public class SamplingPolicy {
+    public static final int UNLIMITED = -1;
+
+    public static final SamplingPolicy DEFAULT = new Builder().build();
+
+    private final double sampleRate;
+    private final Map<String, Double> fingerprintSampleRates;
+    private final int dailyQuota;
+
+    private SamplingPolicy(Builder builder) {
+        this.sampleRate = builder.sampleRate;
+        this.fingerprintSampleRates = new HashMap<>(builder.fingerprintSampleRates);
+        this.dailyQuota = builder.dailyQuota;
+    }
+
+    public double getSampleRate(@Nullable String fingerprint) {
+        if (fingerprint != null) {
+            Double rate = fingerprintSampleRates.get(fingerprint);
+            if (rate != null) return rate;
+        }
+        return sampleRate;
+    }
+
+    public int getDailyQuota() {
+        return dailyQuota;
+    }
+
+    public static class Builder {
+        private double sampleRate = 1;
+        private final Map<String, Double> fingerprintSampleRates = new HashMap<>();
+        private int dailyQuota = UNLIMITED;
+
+        public Builder sampleRate(double sampleRate) {
+            this.sampleRate = checkRate(sampleRate);
+            return this;
+        }
+
+        public Builder sampleRate(@NonNull String fingerprint, double sampleRate) {
+            fingerprintSampleRates.put(fingerprint, checkRate(sampleRate));
+            return this;
+        }
+
+        public Builder dailyQuota(int dailyQuota) {
+            if (dailyQuota < 0 && dailyQuota != UNLIMITED)
+                throw new IllegalArgumentException("dailyQuota must not be negative");
+            this.dailyQuota = dailyQuota;
+            return this;
+        }
+
+        public SamplingPolicy build() {
+            return new SamplingPolicy(this);
+        }
+
+        private static double checkRate(double sampleRate) {
+            if (sampleRate < 0 || sampleRate > 1)
+                throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+            return sampleRate;
+        }
+    }
+}
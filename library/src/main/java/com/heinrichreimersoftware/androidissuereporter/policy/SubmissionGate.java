@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.policy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+
+/**
+ * Decides whether a report may be submitted according to the {@link SamplingPolicy} registered
+ * for its target. Quotas and drop counts are persisted, so they survive process restarts.
+ */
+public class SubmissionGate {
+    private static final String PREFERENCES_NAME = "air_submission_gate";
+    private static final String KEY_QUOTA_DAY = "quota_day:";
+    private static final String KEY_QUOTA_COUNT = "quota_count:";
+    private static final String KEY_DROPPED_SAMPLED = "dropped_sampled:";
+    private static final String KEY_DROPPED_QUOTA = "dropped_quota:";
+
+    public static final String EXTRA_INFO_DROPPED_SAMPLED = "Dropped reports (sampled)";
+    public static final String EXTRA_INFO_DROPPED_QUOTA = "Dropped reports (quota)";
+
+    @IntDef({PRIORITY_AUTOMATIC, PRIORITY_USER_INITIATED})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {
+    }
+    public static final int PRIORITY_AUTOMATIC = 0;
+    public static final int PRIORITY_USER_INITIATED = 1;
+
+    private static SubmissionGate instance;
+
+    private final SharedPreferences preferences;
+    private final Map<GithubTarget, SamplingPolicy> policies = new HashMap<>();
+    private final Random random = new Random();
+
+    private SubmissionGate(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized SubmissionGate getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new SubmissionGate(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public synchronized void setPolicy(@NonNull GithubTarget target, @NonNull SamplingPolicy policy) {
+        policies.put(target, policy);
+    }
+
+    @NonNull
+    public synchronized SamplingPolicy getPolicy(@NonNull GithubTarget target) {
+        SamplingPolicy policy = policies.get(target);
+        return policy != null ? policy : SamplingPolicy.DEFAULT;
+    }
+
+    /**
+     * Returns whether the report may be sent. Rejected reports are counted and reported with the
+     * next report that is sent to the same target.
+     */
+    public boolean admit(@NonNull GithubTarget target, @NonNull Report report,
+                         @Priority int priority) {
+        return admit(target, report, priority, System.currentTimeMillis());
+    }
+
+    synchronized boolean admit(@NonNull GithubTarget target, @NonNull Report report,
+                               @Priority int priority, long nowMillis) {
+        if (priority == PRIORITY_USER_INITIATED) return true;
+
+        SamplingPolicy policy = getPolicy(target);
+        String key = target.toString();
+
+        if (random.nextDouble() >= policy.getSampleRate(report.getFingerprint())) {
+            increment(KEY_DROPPED_SAMPLED + key);
+            return false;
+        }
+
+        int quota = policy.getDailyQuota();
+        if (quota != SamplingPolicy.UNLIMITED) {
+            long today = TimeUnit.MILLISECONDS.toDays(nowMillis);
+            int count = preferences.getLong(KEY_QUOTA_DAY + key, -1) == today ?
+                    preferences.getInt(KEY_QUOTA_COUNT + key, 0) : 0;
+            if (count >= quota) {
+                increment(KEY_DROPPED_QUOTA + key);
+                return false;
+            }
+            preferences.edit()
+                    .putLong(KEY_QUOTA_DAY + key, today)
+                    .putInt(KEY_QUOTA_COUNT + key, count + 1)
+                    .apply();
+        }
+        return true;
+    }
+
+    /**
+     * Adds the number of reports dropped since the last successful submission to the extra info.
+     * Call {@link #acknowledge(GithubTarget, DropCounts)} with the result once the report was sent.
+     */
+    @NonNull
+    public synchronized DropCounts attachDropCounts(@NonNull GithubTarget target,
+                                                    @NonNull ExtraInfo extraInfo) {
+        String key = target.toString();
+        DropCounts counts = new DropCounts(
+                preferences.getInt(KEY_DROPPED_SAMPLED + key, 0),
+                preferences.getInt(KEY_DROPPED_QUOTA + key, 0));
+        if (counts.sampled > 0) extraInfo.put(EXTRA_INFO_DROPPED_SAMPLED, counts.sampled);
+        if (counts.quota > 0) extraInfo.put(EXTRA_INFO_DROPPED_QUOTA, counts.quota);
+        return counts;
+    }
+
+    public synchronized void acknowledge(@NonNull GithubTarget target, @NonNull DropCounts counts) {
+        if (counts.sampled == 0 && counts.quota == 0) return;
+        String key = target.toString();
+        // Only subtract what was reported; drops recorded in the meantime are kept.
+        preferences.edit()
+                .putInt(KEY_DROPPED_SAMPLED + key,
+                        Math.max(0, preferences.getInt(KEY_DROPPED_SAMPLED + key, 0) - counts.sampled))
+                .putInt(KEY_DROPPED_QUOTA + key,
+                        Math.max(0, preferences.getInt(KEY_DROPPED_QUOTA + key, 0) - counts.quota))
+                .apply();
+    }
+
+    private void increment(String key) {
+        preferences.edit()
+                .putInt(key, preferences.getInt(key, 0) + 1)
+                .apply();
+    }
+
+    public static final class DropCounts {
+        private final int sampled;
+        private final int quota;
+
+        private DropCounts(int sampled, int quota) {
+            this.sampled = sampled;
+            this.quota = quota;
+        }
+
+        public int getSampled() {
+            return sampled;
+        }
+
+        public int getQuota() {
+            return quota;
+        }
+    }
+}
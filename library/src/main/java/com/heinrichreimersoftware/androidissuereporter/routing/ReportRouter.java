@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.routing;
+
+import com.heinrichreimersoftware.androidissuereporter.model.DeviceInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.routing.RoutingRule.Condition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Picks the target, labels and assignees of a report from an ordered list of
+ * {@link RoutingRule}s. The first matching rule with a target decides the target; labels and
+ * assignees are collected from all matching rules for that target or without one.
+ * <p>
+ * Rules are compiled once: equal conditions are shared between rules and evaluated at most once
+ * per report, and each rule tests its cheap numeric conditions before its regular expressions.
+ * <p>
+ * Register routers by name in {@code Application.onCreate()}, so the reporter and background
+ * delivery can look them up after the process was restarted.
+ */
+public final class ReportRouter {
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte NO_MATCH = 2;
+
+    private static final Map<String, ReportRouter> routers = new HashMap<>();
+
+    private final RoutingRule[] rules;
+    private final Condition[] conditions;
+    private final int[][] ruleConditions;
+
+    private ReportRouter(List<RoutingRule> rules) {
+        this.rules = rules.toArray(new RoutingRule[0]);
+        Map<Condition, Integer> ids = new LinkedHashMap<>();
+        ruleConditions = new int[this.rules.length][];
+        for (int i = 0; i < this.rules.length; i++) {
+            List<Condition> conditions = new ArrayList<>(this.rules[i].conditions);
+            Collections.sort(conditions, (a, b) -> cost(a) - cost(b));
+            ruleConditions[i] = new int[conditions.size()];
+            for (int j = 0; j < conditions.size(); j++) {
+                Integer id = ids.get(conditions.get(j));
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(conditions.get(j), id);
+                }
+                ruleConditions[i][j] = id;
+            }
+        }
+        conditions = ids.keySet().toArray(new Condition[0]);
+    }
+
+    public static synchronized void register(@NonNull String name, @NonNull ReportRouter router) {
+        routers.put(name, router);
+    }
+
+    @Nullable
+    public static synchronized ReportRouter get(@NonNull String name) {
+        return routers.get(name);
+    }
+
+    /**
+     * Routes a report that wasn't created yet. Only the given extra info is considered;
+     * diagnostics collected when the report is sent are not.
+     */
+    @NonNull
+    public Route route(@Nullable CharSequence title, @Nullable CharSequence description,
+                       @NonNull DeviceInfo deviceInfo, @NonNull ExtraInfo extraInfo) {
+        byte[] results = new byte[conditions.length];
+        Map<String, String> info = extraInfo.getInfo();
+        List<RoutingRule> matched = new ArrayList<>();
+        GithubTarget target = null;
+        for (int i = 0; i < rules.length; i++) {
+            if (!matches(ruleConditions[i], results, title, description, deviceInfo, info))
+                continue;
+            matched.add(rules[i]);
+            if (target == null) target = rules[i].target;
+        }
+
+        Set<String> labels = new LinkedHashSet<>();
+        Set<String> assignees = new LinkedHashSet<>();
+        for (RoutingRule rule : matched) {
+            if (rule.target == null || rule.target.equals(target)) {
+                labels.addAll(rule.labels);
+                assignees.addAll(rule.assignees);
+            }
+        }
+        return new Route(target, new ArrayList<>(labels), new ArrayList<>(assignees));
+    }
+
+    /**
+     * Routes a report, including its diagnostics, which are collected if they weren't yet.
+     */
+    @WorkerThread
+    @NonNull
+    public Route route(@NonNull Report report) {
+        return route(report.getTitle(), report.getUserDescription(), report.getDeviceInfo(),
+                report.getExtraInfo());
+    }
+
+    private boolean matches(int[] ids, byte[] results, CharSequence title,
+                            CharSequence description, DeviceInfo deviceInfo,
+                            Map<String, String> info) {
+        for (int id : ids) {
+            if (results[id] == UNKNOWN) {
+                results[id] = evaluate(conditions[id], title, description, deviceInfo, info) ?
+                        MATCH : NO_MATCH;
+            }
+            if (results[id] == NO_MATCH) return false;
+        }
+        return true;
+    }
+
+    private static boolean evaluate(Condition condition, CharSequence title,
+                                    CharSequence description, DeviceInfo deviceInfo,
+                                    Map<String, String> info) {
+        switch (condition.kind) {
+            case Condition.KIND_TITLE:
+                return find(condition.pattern, title);
+            case Condition.KIND_DESCRIPTION:
+                return find(condition.pattern, description);
+            case Condition.KIND_TEXT:
+                return find(condition.pattern, title) || find(condition.pattern, description);
+            case Condition.KIND_EXTRA_INFO:
+                return find(condition.pattern, info.get(condition.key));
+            case Condition.KIND_EXTRA_INFO_PRESENT:
+                return info.containsKey(condition.key);
+            case Condition.KIND_DEVICE:
+                return find(condition.pattern, getField(deviceInfo, condition.field));
+            case Condition.KIND_VERSION_CODE:
+                return deviceInfo.getVersionCode() >= condition.min
+                        && deviceInfo.getVersionCode() <= condition.max;
+            case Condition.KIND_SDK_VERSION:
+                return deviceInfo.getSdkVersion() >= condition.min
+                        && deviceInfo.getSdkVersion() <= condition.max;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean find(Pattern pattern, @Nullable CharSequence input) {
+        return input != null && pattern.matcher(input).find();
+    }
+
+    @Nullable
+    private static String getField(DeviceInfo deviceInfo, @RoutingRule.DeviceField int field) {
+        switch (field) {
+            case RoutingRule.FIELD_BRAND:
+                return deviceInfo.getBrand();
+            case RoutingRule.FIELD_MANUFACTURER:
+                return deviceInfo.getManufacturer();
+            case RoutingRule.FIELD_MODEL:
+                return deviceInfo.getModel();
+            case RoutingRule.FIELD_DEVICE:
+                return deviceInfo.getDevice();
+            case RoutingRule.FIELD_PRODUCT:
+                return deviceInfo.getProduct();
+            case RoutingRule.FIELD_HARDWARE:
+                return deviceInfo.getHardware();
+            case RoutingRule.FIELD_RELEASE_VERSION:
+                return deviceInfo.getReleaseVersion();
+            case RoutingRule.FIELD_VERSION_NAME:
+                return deviceInfo.getVersionName();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Orders conditions so the cheap ones can reject a rule before any text is scanned.
+     */
+    private static int cost(Condition condition) {
+        switch (condition.kind) {
+            case Condition.KIND_VERSION_CODE:
+            case Condition.KIND_SDK_VERSION:
+            case Condition.KIND_EXTRA_INFO_PRESENT:
+                return 0;
+            case Condition.KIND_DEVICE:
+            case Condition.KIND_EXTRA_INFO:
+                return 1;
+            case Condition.KIND_TITLE:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    public static class Builder {
+        private final List<RoutingRule> rules = new ArrayList<>();
+
+        /**
+         * Adds a rule. Rules are evaluated in the order they were added.
+         */
+        public Builder rule(@NonNull RoutingRule rule) {
+            rules.add(rule);
+            return this;
+        }
+
+        public ReportRouter build() {
+            return new ReportRouter(rules);
+        }
+    }
+}
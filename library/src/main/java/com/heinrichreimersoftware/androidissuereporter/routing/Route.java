@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.routing;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Result of {@link ReportRouter#route(com.heinrichreimersoftware.androidissuereporter.model.Report)}.
+ */
+public final class Route {
+    @Nullable
+    private final GithubTarget target;
+    private final List<String> labels;
+    private final List<String> assignees;
+
+    Route(@Nullable GithubTarget target, List<String> labels, List<String> assignees) {
+        this.target = target;
+        this.labels = Collections.unmodifiableList(labels);
+        this.assignees = Collections.unmodifiableList(assignees);
+    }
+
+    /**
+     * The target picked by the rules, or {@code null} to use the default target.
+     */
+    @Nullable
+    public GithubTarget getTarget() {
+        return target;
+    }
+
+    @NonNull
+    public GithubTarget getTarget(@NonNull GithubTarget defaultTarget) {
+        return target != null ? target : defaultTarget;
+    }
+
+    /**
+     * Whether the labels and assignees were picked for issues in {@code target}.
+     */
+    public boolean appliesTo(@NonNull GithubTarget target) {
+        return this.target == null || this.target.equals(target);
+    }
+
+    @NonNull
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    @NonNull
+    public List<String> getAssignees() {
+        return assignees;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.routing;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A rule of a {@link ReportRouter}. A rule matches if all of its conditions match, and then
+ * picks the target and adds its labels and assignees. Text conditions are regular expressions
+ * that may match anywhere in the value, e.g. {@code "(?i)crash"}.
+ */
+public final class RoutingRule {
+    @IntDef({FIELD_BRAND, FIELD_MANUFACTURER, FIELD_MODEL, FIELD_DEVICE, FIELD_PRODUCT,
+            FIELD_HARDWARE, FIELD_RELEASE_VERSION, FIELD_VERSION_NAME})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface DeviceField {
+    }
+    public static final int FIELD_BRAND = 0;
+    public static final int FIELD_MANUFACTURER = 1;
+    public static final int FIELD_MODEL = 2;
+    public static final int FIELD_DEVICE = 3;
+    public static final int FIELD_PRODUCT = 4;
+    public static final int FIELD_HARDWARE = 5;
+    public static final int FIELD_RELEASE_VERSION = 6;
+    public static final int FIELD_VERSION_NAME = 7;
+
+    final List<Condition> conditions;
+    @Nullable
+    final GithubTarget target;
+    final List<String> labels;
+    final List<String> assignees;
+
+    private RoutingRule(Builder builder) {
+        this.conditions = Collections.unmodifiableList(new ArrayList<>(builder.conditions));
+        this.target = builder.target;
+        this.labels = Collections.unmodifiableList(new ArrayList<>(builder.labels));
+        this.assignees = Collections.unmodifiableList(new ArrayList<>(builder.assignees));
+    }
+
+    /**
+     * A single test of a rule. Equal conditions of different rules are evaluated only once
+     * per report.
+     */
+    static final class Condition {
+        static final int KIND_TITLE = 0;
+        static final int KIND_DESCRIPTION = 1;
+        static final int KIND_TEXT = 2;
+        static final int KIND_EXTRA_INFO = 3;
+        static final int KIND_EXTRA_INFO_PRESENT = 4;
+        static final int KIND_DEVICE = 5;
+        static final int KIND_VERSION_CODE = 6;
+        static final int KIND_SDK_VERSION = 7;
+
+        final int kind;
+        final int field;
+        @Nullable
+        final String key;
+        @Nullable
+        final Pattern pattern;
+        final long min;
+        final long max;
+
+        private Condition(int kind, int field, @Nullable String key, @Nullable String regex,
+                          long min, long max) {
+            this.kind = kind;
+            this.field = field;
+            this.key = key;
+            this.pattern = regex != null ? Pattern.compile(regex) : null;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Condition that = (Condition) o;
+            return kind == that.kind && field == that.field && min == that.min
+                    && max == that.max
+                    && (key != null ? key.equals(that.key) : that.key == null)
+                    && (pattern != null ? that.pattern != null
+                    && pattern.pattern().equals(that.pattern.pattern()) : that.pattern == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = kind;
+            result = 31 * result + field;
+            result = 31 * result + (key != null ? key.hashCode() : 0);
+            result = 31 * result + (pattern != null ? pattern.pattern().hashCode() : 0);
+            result = 31 * result + (int) (min ^ (min >>> 32));
+            result = 31 * result + (int) (max ^ (max >>> 32));
+            return result;
+        }
+    }
+
+    public static class Builder {
+        private final List<Condition> conditions = new ArrayList<>();
+        @Nullable
+        private GithubTarget target;
+        private final List<String> labels = new ArrayList<>();
+        private final List<String> assignees = new ArrayList<>();
+
+        public Builder whenTitle(@NonNull String regex) {
+            return add(new Condition(Condition.KIND_TITLE, 0, null, regex, 0, 0));
+        }
+
+        public Builder whenDescription(@NonNull String regex) {
+            return add(new Condition(Condition.KIND_DESCRIPTION, 0, null, regex, 0, 0));
+        }
+
+        /**
+         * Matches if the title or the description matches.
+         */
+        public Builder whenText(@NonNull String regex) {
+            return add(new Condition(Condition.KIND_TEXT, 0, null, regex, 0, 0));
+        }
+
+        public Builder whenExtraInfo(@NonNull String key, @NonNull String regex) {
+            return add(new Condition(Condition.KIND_EXTRA_INFO, 0, key, regex, 0, 0));
+        }
+
+        public Builder whenExtraInfoPresent(@NonNull String key) {
+            return add(new Condition(Condition.KIND_EXTRA_INFO_PRESENT, 0, key, null, 0, 0));
+        }
+
+        public Builder whenDevice(@DeviceField int field, @NonNull String regex) {
+            return add(new Condition(Condition.KIND_DEVICE, field, null, regex, 0, 0));
+        }
+
+        /**
+         * Matches app version codes from {@code min} to {@code max}, inclusive.
+         */
+        public Builder whenVersionCode(long min, long max) {
+            return add(new Condition(Condition.KIND_VERSION_CODE, 0, null, null, min, max));
+        }
+
+        /**
+         * Matches Android API levels from {@code min} to {@code max}, inclusive.
+         */
+        public Builder whenSdkVersion(int min, int max) {
+            return add(new Condition(Condition.KIND_SDK_VERSION, 0, null, null, min, max));
+        }
+
+        /**
+         * Sends matching reports to {@code target} instead of the reporter's default target.
+         */
+        public Builder target(@NonNull GithubTarget target) {
+            this.target = target;
+            return this;
+        }
+
+        /**
+         * Adds labels to issues created for matching reports. GitHub silently drops labels
+         * set by users without push access to the repository, e.g. a guest account.
+         */
+        public Builder label(@NonNull String... labels) {
+            this.labels.addAll(Arrays.asList(labels));
+            return this;
+        }
+
+        /**
+         * Assigns issues created for matching reports. Like labels, assignees require push
+         * access to the repository.
+         */
+        public Builder assignee(@NonNull String... assignees) {
+            this.assignees.addAll(Arrays.asList(assignees));
+            return this;
+        }
+
+        public RoutingRule build() {
+            return new RoutingRule(this);
+        }
+
+        private Builder add(Condition condition) {
+            conditions.add(condition);
+            return this;
+        }
+    }
+}
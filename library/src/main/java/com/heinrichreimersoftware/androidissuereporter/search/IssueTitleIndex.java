@@ -0,0 +1,410 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.search;
+
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.client.EndpointHealth;
+import com.heinrichreimersoftware.androidissuereporter.client.GitHubClientCache;
+import com.heinrichreimersoftware.androidissuereporter.client.RequestException;
+import com.heinrichreimersoftware.androidissuereporter.client.StreamingGitHubClient;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.model.github.Issue;
+import com.heinrichreimersoftware.androidissuereporter.util.Hashes;
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * On-device index of the open issue titles of a target, used to suggest likely duplicates while
+ * the user types a title. Lookups only touch the in-memory {@link TrigramIndex}; the titles are
+ * synced in the background with conditional requests, so an unchanged repository costs a single
+ * {@code 304} response.
+ */
+public class IssueTitleIndex {
+    private static final String TAG = IssueTitleIndex.class.getSimpleName();
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final float DEFAULT_MIN_SCORE = 0.35f;
+
+    /**
+     * Closing an issue beyond the first page doesn't change that page's ETag, so the conditional
+     * request is skipped once a day to drop such issues.
+     */
+    private static final long FULL_SYNC_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 5;
+    private static final int MIN_QUERY_LENGTH = 4;
+    private static final int STATUS_SERVER_ERROR = 500;
+
+    private static final String DIRECTORY_NAME = "air_titles";
+    private static final String SUFFIX = ".json";
+    private static final String SUFFIX_TEMPORARY = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String JSON_ETAG = "etag";
+    private static final String JSON_SYNCED_AT = "syncedAt";
+    private static final String JSON_FULL_SYNCED_AT = "fullSyncedAt";
+    private static final String JSON_ISSUES = "issues";
+    private static final String JSON_NUMBER = "number";
+    private static final String JSON_TITLE = "title";
+
+    private static final Map<GithubTarget, IssueTitleIndex> instances = new HashMap<>();
+
+    private final GithubTarget target;
+    private final File file;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private boolean loaded;
+
+    private IssueTitleIndex(Context context, GithubTarget target) {
+        this.target = target;
+        this.file = new File(new File(context.getFilesDir(), DIRECTORY_NAME),
+                Hashes.fnv1a64(target.toString()) + SUFFIX);
+    }
+
+    public static synchronized IssueTitleIndex getInstance(@NonNull Context context,
+                                                           @NonNull GithubTarget target) {
+        IssueTitleIndex index = instances.get(target);
+        if (index == null) {
+            index = new IssueTitleIndex(context.getApplicationContext(), target);
+            instances.put(target, index);
+        }
+        return index;
+    }
+
+    /**
+     * Loads the titles stored by the last sync. Called by {@link #sync(GithubLogin, long)}, so
+     * it's only needed to show suggestions before syncing.
+     */
+    @WorkerThread
+    public synchronized void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.isFile()) return;
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), UTF_8)))) {
+            snapshot = readSnapshot(reader);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            Log.w(TAG, "Dropping unreadable title index", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Fetches the open issues if the last sync is older than {@code intervalMillis}. Without a
+     * login, the unauthenticated rate limit applies and only public repositories can be synced.
+     *
+     * @return Whether the titles changed.
+     */
+    @WorkerThread
+    public synchronized boolean sync(@Nullable GithubLogin login, long intervalMillis) {
+        load();
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (now - current.syncedAt < intervalMillis) return false;
+        String etag = now - current.fullSyncedAt < FULL_SYNC_INTERVAL_MILLIS ? current.etag : null;
+
+        EndpointHealth health = EndpointHealth.getInstance();
+        for (String endpoint : health.rank(target)) {
+            StreamingGitHubClient client = login != null ?
+                    GitHubClientCache.get(endpoint, login) :
+                    StreamingGitHubClient.forBaseUrl(endpoint);
+            try {
+                boolean changed = fetch(client, current, etag, now);
+                health.recordSuccess(endpoint);
+                return changed;
+            } catch (RequestException e) {
+                if (e.getStatus() < STATUS_SERVER_ERROR) {
+                    // The host is up but rejected the request, so a fallback won't help.
+                    health.recordSuccess(endpoint);
+                    Log.w(TAG, "Syncing issue titles failed", e);
+                    return false;
+                }
+                health.recordFailure(endpoint);
+                Log.w(TAG, "Syncing issue titles from " + endpoint + " failed", e);
+            } catch (IOException e) {
+                health.recordFailure(endpoint);
+                Log.w(TAG, "Syncing issue titles from " + endpoint + " failed", e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns open issues with titles similar to {@code title}, best match first. Never blocks,
+     * so it can be called on every keystroke; returns nothing until the index is loaded.
+     */
+    @AnyThread
+    @NonNull
+    public List<Suggestion> suggest(@Nullable CharSequence title, int limit) {
+        if (title == null || title.length() < MIN_QUERY_LENGTH) return Collections.emptyList();
+        Snapshot current = snapshot;
+        List<TrigramIndex.Match> matches = current.index.query(title, limit, DEFAULT_MIN_SCORE);
+        List<Suggestion> suggestions = new ArrayList<>(matches.size());
+        for (TrigramIndex.Match match : matches) {
+            int number = current.numbers[match.getDocument()];
+            suggestions.add(new Suggestion(number, current.titles.get(match.getDocument()),
+                    target.getIssuesUrl() + "/" + number, match.getScore()));
+        }
+        return suggestions;
+    }
+
+    public int size() {
+        return snapshot.numbers.length;
+    }
+
+    private boolean fetch(StreamingGitHubClient client, Snapshot current, @Nullable String etag,
+                          long now) throws IOException {
+        String uri = "/repos/" + target.getUsername() + "/" + target.getRepository()
+                + "/issues?state=open&sort=updated&direction=desc&per_page=" + PAGE_SIZE
+                + "&page=";
+        StreamingGitHubClient.Parser<List<Issue>> parser =
+                reader -> StreamingGitHubClient.readList(reader, Issue::readJson);
+        StreamingGitHubClient.Conditional<List<Issue>> first =
+                client.getIfNoneMatch(uri + 1, etag, parser);
+        if (first.isNotModified()) {
+            snapshot = new Snapshot(current.numbers, current.titles, current.index,
+                    current.etag, now, current.fullSyncedAt);
+            save(snapshot);
+            return false;
+        }
+
+        List<Integer> numbers = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        List<Issue> page = first.getBody();
+        for (int i = 2; add(page, numbers, titles) && i <= MAX_PAGES; i++) {
+            page = client.get(uri + i, parser);
+        }
+        snapshot = new Snapshot(toArray(numbers), titles, first.getEtag(), now, now);
+        save(snapshot);
+        return true;
+    }
+
+    /**
+     * Adds the issues of a page, skipping pull requests, which the issues endpoint lists too.
+     *
+     * @return Whether there may be another page.
+     */
+    private static boolean add(@Nullable List<Issue> page, List<Integer> numbers,
+                               List<String> titles) {
+        if (page == null) return false;
+        for (Issue issue : page) {
+            if (issue.isPullRequest()) continue;
+            if (issue.getTitle() == null) continue;
+            numbers.add(issue.getNumber());
+            titles.add(issue.getTitle());
+        }
+        return page.size() == PAGE_SIZE;
+    }
+
+    private void save(Snapshot snapshot) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create " + directory);
+            return;
+        }
+        File temporary = new File(directory, file.getName() + SUFFIX_TEMPORARY);
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(temporary), UTF_8)))) {
+            writeSnapshot(writer, snapshot);
+        } catch (IOException e) {
+            Log.w(TAG, "Storing the title index failed", e);
+            //noinspection ResultOfMethodCallIgnored
+            temporary.delete();
+            return;
+        }
+        if (!temporary.renameTo(file)) {
+            Log.w(TAG, "Could not store " + file);
+            //noinspection ResultOfMethodCallIgnored
+            temporary.delete();
+        }
+    }
+
+    private static void writeSnapshot(JsonWriter writer, Snapshot snapshot) throws IOException {
+        writer.beginObject();
+        if (snapshot.etag != null) {
+            writer.name(JSON_ETAG).value(snapshot.etag);
+        }
+        writer.name(JSON_SYNCED_AT).value(snapshot.syncedAt);
+        writer.name(JSON_FULL_SYNCED_AT).value(snapshot.fullSyncedAt);
+        writer.name(JSON_ISSUES).beginArray();
+        for (int i = 0; i < snapshot.numbers.length; i++) {
+            writer.beginObject();
+            writer.name(JSON_NUMBER).value(snapshot.numbers[i]);
+            writer.name(JSON_TITLE).value(snapshot.titles.get(i));
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static Snapshot readSnapshot(JsonReader reader) throws IOException {
+        String etag = null;
+        long syncedAt = 0;
+        long fullSyncedAt = 0;
+        List<Integer> numbers = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case JSON_ETAG:
+                    etag = JsonUtils.nextString(reader);
+                    break;
+                case JSON_SYNCED_AT:
+                    syncedAt = reader.nextLong();
+                    break;
+                case JSON_FULL_SYNCED_AT:
+                    fullSyncedAt = reader.nextLong();
+                    break;
+                case JSON_ISSUES:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        int number = 0;
+                        String title = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case JSON_NUMBER:
+                                    number = reader.nextInt();
+                                    break;
+                                case JSON_TITLE:
+                                    title = JsonUtils.nextString(reader);
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        if (number > 0 && title != null) {
+                            numbers.add(number);
+                            titles.add(title);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Snapshot(toArray(numbers), titles, etag, syncedAt, fullSyncedAt);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Immutable state of the index, swapped atomically so lookups never need a lock.
+     */
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new int[0],
+                Collections.<String>emptyList(), TrigramIndex.EMPTY, null, 0, 0);
+
+        private final int[] numbers;
+        private final List<String> titles;
+        private final TrigramIndex index;
+        @Nullable
+        private final String etag;
+        private final long syncedAt;
+        private final long fullSyncedAt;
+
+        private Snapshot(int[] numbers, List<String> titles, @Nullable String etag,
+                         long syncedAt, long fullSyncedAt) {
+            this(numbers, titles, new TrigramIndex(titles), etag, syncedAt, fullSyncedAt);
+        }
+
+        private Snapshot(int[] numbers, List<String> titles, TrigramIndex index,
+                         @Nullable String etag, long syncedAt, long fullSyncedAt) {
+            this.numbers = numbers;
+            this.titles = titles;
+            this.index = index;
+            this.etag = etag;
+            this.syncedAt = syncedAt;
+            this.fullSyncedAt = fullSyncedAt;
+        }
+    }
+
+    public static final class Suggestion {
+        private final int number;
+        private final String title;
+        private final String htmlUrl;
+        private final float score;
+
+        private Suggestion(int number, String title, String htmlUrl, float score) {
+            this.number = number;
+            this.title = title;
+            this.htmlUrl = htmlUrl;
+            this.score = score;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getHtmlUrl() {
+            return htmlUrl;
+        }
+
+        /**
+         * Similarity of the titles between 0 and 1.
+         */
+        public float getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable trigram index over short texts such as issue titles. Postings are stored in three
+ * flat arrays (sorted trigrams, offsets and document IDs), so a lookup is one binary search per
+ * query trigram without boxing or hashing. Documents are ranked by the Dice coefficient of their
+ * trigram sets.
+ */
+public final class TrigramIndex {
+    public static final TrigramIndex EMPTY = new TrigramIndex(Collections.<String>emptyList());
+
+    /**
+     * Document IDs are packed into the low 16 bits of a posting while building.
+     */
+    private static final int MAX_DOCUMENTS = 1 << 16;
+
+    private final long[] trigrams;
+    private final int[] offsets;
+    private final int[] documents;
+    private final int[] sizes;
+
+    public TrigramIndex(@NonNull List<String> texts) {
+        if (texts.size() > MAX_DOCUMENTS)
+            throw new IllegalArgumentException("At most " + MAX_DOCUMENTS + " documents");
+        sizes = new int[texts.size()];
+        long[][] perDocument = new long[texts.size()][];
+        int count = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            perDocument[i] = trigrams(texts.get(i));
+            sizes[i] = perDocument[i].length;
+            count += sizes[i];
+        }
+
+        // Trigrams use 48 bits, so trigram and document fit one long. Flipping the sign bit makes
+        // the signed sort order match the unsigned order of the packed values.
+        long[] postings = new long[count];
+        int position = 0;
+        for (int i = 0; i < perDocument.length; i++) {
+            for (long trigram : perDocument[i]) {
+                postings[position++] = ((trigram << 16) | i) ^ Long.MIN_VALUE;
+            }
+        }
+        Arrays.sort(postings);
+
+        long[] trigrams = new long[count];
+        int[] offsets = new int[count + 1];
+        documents = new int[count];
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            long posting = postings[i] ^ Long.MIN_VALUE;
+            long trigram = posting >>> 16;
+            if (distinct == 0 || trigrams[distinct - 1] != trigram) {
+                trigrams[distinct] = trigram;
+                offsets[distinct] = i;
+                distinct++;
+            }
+            documents[i] = (int) (posting & 0xffff);
+        }
+        offsets[distinct] = count;
+        this.trigrams = Arrays.copyOf(trigrams, distinct);
+        this.offsets = Arrays.copyOf(offsets, distinct + 1);
+    }
+
+    public int size() {
+        return sizes.length;
+    }
+
+    /**
+     * Returns up to {@code limit} documents scoring at least {@code minScore}, best first.
+     */
+    @NonNull
+    public List<Match> query(@NonNull CharSequence text, int limit, float minScore) {
+        long[] query = trigrams(text);
+        if (query.length == 0 || sizes.length == 0 || limit <= 0) return Collections.emptyList();
+
+        int[] shared = new int[sizes.length];
+        for (long trigram : query) {
+            int index = Arrays.binarySearch(trigrams, trigram);
+            if (index < 0) continue;
+            for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+                shared[documents[i]]++;
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (int document = 0; document < shared.length; document++) {
+            if (shared[document] == 0) continue;
+            float score = 2f * shared[document] / (query.length + sizes[document]);
+            if (score >= minScore) {
+                matches.add(new Match(document, score));
+            }
+        }
+        Collections.sort(matches, (a, b) -> Float.compare(b.score, a.score));
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    /**
+     * Extracts the distinct trigrams of the lower-cased text, in ascending order. Runs of
+     * anything but letters and digits count as a single space, and the text is padded with
+     * spaces, so word boundaries contribute trigrams too.
+     */
+    @NonNull
+    static long[] trigrams(CharSequence text) {
+        if (text == null) return new long[0];
+        char[] normalized = new char[text.length() + 2];
+        int length = 0;
+        normalized[length++] = ' ';
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized[length++] = Character.toLowerCase(c);
+            } else if (normalized[length - 1] != ' ') {
+                normalized[length++] = ' ';
+            }
+        }
+        if (normalized[length - 1] != ' ') normalized[length++] = ' ';
+        if (length < 3) return new long[0];
+
+        long[] trigrams = new long[length - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) normalized[i] << 32)
+                    | ((long) normalized[i + 1] << 16)
+                    | normalized[i + 2];
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (distinct == 0 || trigrams[distinct - 1] != trigrams[i]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    public static final class Match {
+        private final int document;
+        private final float score;
+
+        private Match(int document, float score) {
+            this.document = document;
+            this.score = score;
+        }
+
+        public int getDocument() {
+            return document;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+}
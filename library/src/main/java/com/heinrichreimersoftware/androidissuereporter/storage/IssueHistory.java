@@ -0,0 +1,208 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.storage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Remembers which issue was created for a report fingerprint, so follow-up reports can be
+ * added as comments instead of opening a new issue with the full report body. Only hashes of
+ * the extra info values are kept. Entries expire after {@link #MAX_AGE_MILLIS}, and at most
+ * {@link #MAX_ENTRIES} are kept.
+ */
+public class IssueHistory {
+    private static final String TAG = IssueHistory.class.getSimpleName();
+
+    public static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(90);
+    public static final int MAX_ENTRIES = 100;
+
+    private static final String PREFERENCES_NAME = "air_issue_history";
+
+    private static final String JSON_NUMBER = "number";
+    private static final String JSON_HTML_URL = "htmlUrl";
+    private static final String JSON_VERSION_NAME = "versionName";
+    private static final String JSON_EXTRA_INFO_HASHES = "extraInfoHashes";
+    private static final String JSON_UPDATED = "updated";
+
+    private static IssueHistory instance;
+
+    private final SharedPreferences preferences;
+
+    private IssueHistory(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized IssueHistory getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new IssueHistory(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Nullable
+    public synchronized Entry get(@NonNull GithubTarget target, @NonNull String fingerprint) {
+        String stored = preferences.getString(key(target, fingerprint), null);
+        if (stored == null) return null;
+        try {
+            JSONObject object = new JSONObject(stored);
+            if (isExpired(object)) {
+                remove(target, fingerprint);
+                return null;
+            }
+            Map<String, String> extraInfoHashes = new HashMap<>();
+            JSONObject hashesObject = object.optJSONObject(JSON_EXTRA_INFO_HASHES);
+            if (hashesObject != null) {
+                Iterator<String> keys = hashesObject.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    extraInfoHashes.put(key, hashesObject.getString(key));
+                }
+            }
+            return new Entry(object.getInt(JSON_NUMBER),
+                    object.optString(JSON_HTML_URL, null),
+                    object.optString(JSON_VERSION_NAME, null),
+                    extraInfoHashes);
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping corrupt issue history entry.", e);
+            remove(target, fingerprint);
+            return null;
+        }
+    }
+
+    public synchronized void put(@NonNull GithubTarget target, @NonNull Report report,
+                                 int number, @Nullable String htmlUrl) {
+        try {
+            JSONObject object = new JSONObject()
+                    .put(JSON_NUMBER, number)
+                    .put(JSON_HTML_URL, htmlUrl)
+                    .put(JSON_VERSION_NAME, report.getDeviceInfo().getVersionName())
+                    .put(JSON_EXTRA_INFO_HASHES,
+                            new JSONObject(report.getExtraInfo().getHashes()))
+                    .put(JSON_UPDATED, System.currentTimeMillis());
+            SharedPreferences.Editor editor = preferences.edit()
+                    .putString(key(target, report.getFingerprint()), object.toString());
+            prune(editor, key(target, report.getFingerprint()));
+            editor.apply();
+        } catch (JSONException e) {
+            Log.w(TAG, "Unable to store issue history entry.", e);
+        }
+    }
+
+    public synchronized void remove(@NonNull GithubTarget target, @NonNull String fingerprint) {
+        preferences.edit()
+                .remove(key(target, fingerprint))
+                .apply();
+    }
+
+    /**
+     * Removes expired entries, and the oldest ones beyond {@link #MAX_ENTRIES}, leaving room for
+     * the entry stored as {@code added}.
+     */
+    private void prune(SharedPreferences.Editor editor, String added) {
+        Map<String, Long> updated = new HashMap<>();
+        for (Map.Entry<String, ?> stored : preferences.getAll().entrySet()) {
+            if (stored.getKey().equals(added)) continue;
+            try {
+                JSONObject object = new JSONObject(String.valueOf(stored.getValue()));
+                if (!isExpired(object)) {
+                    updated.put(stored.getKey(), object.optLong(JSON_UPDATED));
+                    continue;
+                }
+            } catch (JSONException e) {
+                // Corrupt entries are dropped like expired ones.
+            }
+            editor.remove(stored.getKey());
+        }
+        int excess = updated.size() + 1 - MAX_ENTRIES;
+        if (excess <= 0) return;
+        List<String> keys = new ArrayList<>(updated.keySet());
+        Collections.sort(keys, (a, b) -> Long.compare(updated.get(a), updated.get(b)));
+        for (String key : keys.subList(0, excess)) {
+            editor.remove(key);
+        }
+    }
+
+    private static boolean isExpired(JSONObject object) {
+        return System.currentTimeMillis() - object.optLong(JSON_UPDATED) > MAX_AGE_MILLIS;
+    }
+
+    private static String key(GithubTarget target, String fingerprint) {
+        return target + "#" + fingerprint;
+    }
+
+    public static final class Entry {
+        private final int number;
+        private final String htmlUrl;
+        private final String versionName;
+        private final Map<String, String> extraInfoHashes;
+
+        private Entry(int number, String htmlUrl, String versionName,
+                      Map<String, String> extraInfoHashes) {
+            this.number = number;
+            this.htmlUrl = htmlUrl;
+            this.versionName = versionName;
+            this.extraInfoHashes = extraInfoHashes;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public String getHtmlUrl() {
+            return htmlUrl;
+        }
+
+        public String getVersionName() {
+            return versionName;
+        }
+
+        /**
+         * Hashes of the extra info values, see {@link
+         * com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo#getHashes()}.
+         */
+        public Map<String, String> getExtraInfoHashes() {
+            return extraInfoHashes;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Holds a rendered report body. Small bodies are kept in memory, larger bodies are
+ * transparently spilled to a temporary file in the given directory so that huge logs never
+ * need to fit into the heap at once. Call {@link #delete()} once the body is no longer needed.
+ */
+public class ReportBuffer extends Writer {
+    public static final int DEFAULT_THRESHOLD = 256 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Nullable
+    private final File directory;
+    private final int threshold;
+
+    private StringBuilder memory = new StringBuilder();
+    private File file;
+    private Writer fileWriter;
+    private long length;
+    private boolean closed;
+
+    public ReportBuffer(@Nullable File directory) {
+        this(directory, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param directory app-private directory for the spill file, e.g.
+     *                  {@code Context.getCacheDir()}. If {@code null}, the body is always
+     *                  kept in memory.
+     * @param threshold number of characters kept in memory before spilling to disk
+     */
+    public ReportBuffer(@Nullable File directory, int threshold) {
+        this.directory = directory;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(@NonNull char[] buffer, int offset, int count) throws IOException {
+        if (closed) throw new IOException("Buffer already closed");
+        if (fileWriter == null && directory != null && memory.length() + count > threshold) {
+            spill();
+        }
+        if (fileWriter != null) {
+            fileWriter.write(buffer, offset, count);
+        } else {
+            memory.append(buffer, offset, count);
+        }
+        length += count;
+    }
+
+    @Override
+    public void write(@NonNull String string, int offset, int count) throws IOException {
+        if (closed) throw new IOException("Buffer already closed");
+        if (fileWriter == null && directory != null && memory.length() + count > threshold) {
+            spill();
+        }
+        if (fileWriter != null) {
+            fileWriter.write(string, offset, count);
+        } else {
+            memory.append(string, offset, offset + count);
+        }
+        length += count;
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("air-report", ".tmp", directory);
+        fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        fileWriter.append(memory);
+        memory = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileWriter != null) fileWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (fileWriter != null) fileWriter.close();
+    }
+
+    /**
+     * Number of characters written so far.
+     */
+    public long length() {
+        return length;
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Opens a new reader over the complete body. The buffer must be closed first.
+     */
+    @NonNull
+    public Reader openReader() throws IOException {
+        if (!closed) throw new IOException("Buffer must be closed before reading");
+        if (file != null) {
+            return new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        }
+        return new StringReader(memory.toString());
+    }
+
+    /**
+     * Materializes the complete body. Prefer {@link #openReader()} for large bodies.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        if (file == null) return memory.toString();
+        StringBuilder builder = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE));
+        try (Reader reader = openReader()) {
+            char[] buffer = new char[8 * 1024];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read spilled report body", e);
+        }
+        return builder.toString();
+    }
+
+    public void delete() {
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
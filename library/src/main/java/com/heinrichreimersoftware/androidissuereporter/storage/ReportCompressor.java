@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Compresses stored report payloads with a raw Deflate stream primed with a preset dictionary.
+ * The dictionary contains the fixed device info and extra info markup and common logcat
+ * fragments, so even small reports compress well; plain gzip has nothing to refer back to
+ * for those short, repetitive snippets.
+ */
+public class ReportCompressor {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0xA1;
+    private static final int DICTIONARY_VERSION = 1;
+
+    // Deflate prefers matches close to the current position, so the most common strings go last.
+    private static final byte[] DICTIONARY = (""
+            + "java.lang.IllegalStateException: java.lang.IllegalArgumentException: "
+            + "java.lang.NullPointerException: Attempt to invoke virtual method 'on a null object reference"
+            + "\tat java.lang.reflect.Method.invoke(Native Method)\n"
+            + "\tat com.android.internal.os.ZygoteInit.main(ZygoteInit.java:\n"
+            + "\tat com.android.internal.os.RuntimeInit$MethodAndArgsCaller.run(RuntimeInit.java:\n"
+            + "\tat android.app.ActivityThread.main(ActivityThread.java:\n"
+            + "\tat android.os.Looper.loop(Looper.java:\n"
+            + "\tat android.os.Handler.dispatchMessage(Handler.java:\n"
+            + "Caused by: E AndroidRuntime: FATAL EXCEPTION: main\nProcess: , PID: \n"
+            + " D  I  W  E  V ActivityManager: \n"
+            + "Logcat:\n---\n```"
+            + "<tr><td>ABIs (64bit)</td><td>[arm64-v8a]</td></tr>\n"
+            + "<tr><td>ABIs (32bit)</td><td>[armeabi-v7a, armeabi]</td></tr>\n"
+            + "<tr><td>ABIs</td><td>[arm64-v8a, armeabi-v7a, armeabi]</td></tr>\n"
+            + "<tr><td>Device hardware name</td><td>qcom</td></tr>\n"
+            + "<tr><td>Device product name</td><td>"
+            + "<tr><td>Device model</td><td>"
+            + "<tr><td>Device name</td><td>"
+            + "<tr><td>Device manufacturer</td><td>samsung</td></tr>\n"
+            + "<tr><td>Device brand</td><td>google</td></tr>\n"
+            + "<tr><td>Android build ID</td><td>"
+            + "<tr><td>Android SDK version</td><td>3</td></tr>\n"
+            + "<tr><td>Android release version</td><td>1"
+            + "<tr><td>Android build version</td><td>"
+            + "<tr><td>App version code</td><td>"
+            + "<tr><td>App version</td><td>1."
+            + "Device info:\n---\n<table>\n"
+            + "Extra info:\n---\n<table>\n"
+            + "Description:\n---\n\n"
+            + "</td></tr>\n</table>\n"
+            + "</td></tr>\n<tr><td>"
+    ).getBytes(UTF_8);
+
+    private ReportCompressor() {
+    }
+
+    @NonNull
+    public static byte[] compress(@NonNull String payload) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(payload.length() / 4 + 16);
+        OutputStream compressed = openCompressed(output);
+        compressed.write(payload.getBytes(UTF_8));
+        compressed.close();
+        return output.toByteArray();
+    }
+
+    @NonNull
+    public static String decompress(@NonNull byte[] data) throws IOException {
+        InputStream input = openDecompressed(new ByteArrayInputStream(data));
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        try {
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+        return new String(output.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Wraps {@code output} in a compressing stream. Closing the returned stream closes
+     * {@code output}.
+     */
+    @NonNull
+    public static OutputStream openCompressed(@NonNull OutputStream output) throws IOException {
+        output.write(MAGIC);
+        output.write(DICTIONARY_VERSION);
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setDictionary(DICTIONARY);
+        return new DeflaterOutputStream(output, deflater, 8 * 1024) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps {@code input} in a decompressing stream. Closing the returned stream closes
+     * {@code input}.
+     */
+    @NonNull
+    public static InputStream openDecompressed(@NonNull InputStream input) throws IOException {
+        if (input.read() != MAGIC)
+            throw new IOException("Not a compressed report");
+        int version = input.read();
+        if (version != DICTIONARY_VERSION)
+            throw new IOException("Unsupported report dictionary version " + version);
+        final Inflater inflater = new Inflater(true);
+        inflater.setDictionary(DICTIONARY);
+        return new InflaterInputStream(input, inflater, 8 * 1024) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
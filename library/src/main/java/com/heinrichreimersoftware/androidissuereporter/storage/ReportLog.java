@@ -0,0 +1,451 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.storage;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Append-only log of queued entries that all processes of the app can write to at once.
+ * <p>
+ * Entries are appended to a memory-mapped segment file as CRC-checked records. Removing an
+ * entry appends a removal record. Writers hold an exclusive lock on a separate lock file, and
+ * readers hold a shared lock. Each process keeps an index of the live entries and only scans
+ * records that other processes appended since its last access. Records only count once the
+ * segment header's end offset includes them, and that offset is updated last. So a process that
+ * dies while appending never leaves a partial record.
+ * <p>
+ * When a segment is full or mostly removed entries, the live entries are copied to a new
+ * segment. The lock file's header then switches every process to the new segment's
+ * generation. A compaction that doesn't finish leaves the current segment untouched.
+ */
+final class ReportLog {
+    private static final String TAG = ReportLog.class.getSimpleName();
+
+    private static final int MAGIC = 0x41495251;
+    private static final String FILE_LOCK = "queue.lock";
+    private static final String FILE_DRAIN_LOCK = "drain.lock";
+    private static final String PREFIX_SEGMENT = "segment-";
+
+    // Lock file header: magic, current segment generation.
+    private static final int LOCK_HEADER_SIZE = 8;
+    private static final int OFFSET_GENERATION = 4;
+    // Segment header: magic, end offset of the last complete record.
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int OFFSET_END = 4;
+    // Record header: payload length, CRC-32 of type and payload, type.
+    private static final int RECORD_HEADER_SIZE = 9;
+
+    private static final byte TYPE_ENTRY = 1;
+    private static final byte TYPE_REMOVAL = 2;
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MAX_RECORD_SIZE = 8 * 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<File, ReportLog> logs = new HashMap<>();
+
+    private final File directory;
+    private final FileChannel lockChannel;
+    private final MappedByteBuffer lockHeader;
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer = new byte[4 * 1024];
+
+    private int generation = -1;
+    private MappedByteBuffer segment;
+    private int scanned;
+    // Live entries by ID, oldest first.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private int liveBytes;
+    private int deadBytes;
+    private boolean claimed;
+
+    private ReportLog(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+        lockChannel = new RandomAccessFile(new File(directory, FILE_LOCK), "rw").getChannel();
+        FileLock lock = lockChannel.lock();
+        try {
+            lockHeader = lockChannel.map(FileChannel.MapMode.READ_WRITE, 0, LOCK_HEADER_SIZE);
+            if (lockHeader.getInt(0) != MAGIC) {
+                createSegment(0, INITIAL_CAPACITY).force();
+                lockHeader.putInt(OFFSET_GENERATION, 0);
+                lockHeader.putInt(0, MAGIC);
+                lockHeader.force();
+            }
+            int current = lockHeader.getInt(OFFSET_GENERATION);
+            if (!segmentFile(current).isFile()) {
+                Log.w(TAG, "Missing segment in " + directory + ", starting over");
+                createSegment(current, INITIAL_CAPACITY).force();
+            }
+            deleteStaleSegments(current);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Returns this process' instance for the directory, so threads share its locks and index.
+     */
+    @WorkerThread
+    @NonNull
+    static synchronized ReportLog open(@NonNull File directory) throws IOException {
+        ReportLog log = logs.get(directory);
+        if (log == null) {
+            log = new ReportLog(directory);
+            logs.put(directory, log);
+        }
+        return log;
+    }
+
+    /**
+     * Appends an entry. If more than {@code maxEntries} are live afterwards, the oldest ones are
+     * removed.
+     *
+     * @return The IDs of the removed entries.
+     */
+    @NonNull
+    synchronized List<String> append(@NonNull String id, @NonNull byte[] data, int maxEntries)
+            throws IOException {
+        byte[] idBytes = id.getBytes(UTF_8);
+        if (idBytes.length > Short.MAX_VALUE || 2 + idBytes.length + data.length > MAX_RECORD_SIZE)
+            throw new IOException("Entry too large");
+        ByteBuffer payload = ByteBuffer.allocate(2 + idBytes.length + data.length);
+        payload.putShort((short) idBytes.length).put(idBytes).put(data);
+
+        List<String> dropped = new ArrayList<>();
+        FileLock lock = lockChannel.lock();
+        try {
+            refresh();
+            write(TYPE_ENTRY, payload.array());
+            Iterator<String> oldest = entries.keySet().iterator();
+            while (entries.size() - dropped.size() > maxEntries && oldest.hasNext()) {
+                dropped.add(oldest.next());
+            }
+            for (String droppedId : dropped) {
+                write(TYPE_REMOVAL, droppedId.getBytes(UTF_8));
+            }
+        } finally {
+            lock.release();
+        }
+        return dropped;
+    }
+
+    synchronized void remove(@NonNull String id) throws IOException {
+        FileLock lock = lockChannel.lock();
+        try {
+            refresh();
+            if (!entries.containsKey(id)) return;
+            write(TYPE_REMOVAL, id.getBytes(UTF_8));
+            if (deadBytes > INITIAL_CAPACITY / 2 && deadBytes > liveBytes) {
+                compact(0);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Returns the data of up to {@code max} of the oldest entries by ID.
+     */
+    @NonNull
+    synchronized LinkedHashMap<String, byte[]> peek(int max) throws IOException {
+        LinkedHashMap<String, byte[]> result = new LinkedHashMap<>();
+        FileLock lock = lockChannel.lock(0, Long.MAX_VALUE, true);
+        try {
+            refresh();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (result.size() >= max) break;
+                Entry value = entry.getValue();
+                byte[] data = new byte[value.dataLength];
+                ByteBuffer view = segment.duplicate();
+                view.position(value.dataOffset);
+                view.get(data);
+                result.put(entry.getKey(), data);
+            }
+        } finally {
+            lock.release();
+        }
+        return result;
+    }
+
+    synchronized int size() throws IOException {
+        FileLock lock = lockChannel.lock(0, Long.MAX_VALUE, true);
+        try {
+            refresh();
+            return entries.size();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Claims the log for draining, so that only one process submits its entries at a time.
+     *
+     * @return The claim to close when done, or {@code null} if another thread or process holds
+     * it.
+     */
+    @Nullable
+    synchronized Claim tryClaim() throws IOException {
+        if (claimed) return null;
+        FileChannel channel =
+                new RandomAccessFile(new File(directory, FILE_DRAIN_LOCK), "rw").getChannel();
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+            channel.close();
+            return null;
+        }
+        claimed = true;
+        return new Claim(channel);
+    }
+
+    /**
+     * Catches up with records appended by other processes and switches to a new segment after
+     * compaction. Call with the lock held.
+     */
+    private void refresh() throws IOException {
+        int current = lockHeader.getInt(OFFSET_GENERATION);
+        if (current != generation) {
+            File file = segmentFile(current);
+            if (!file.isFile()) throw new IOException("Missing segment " + file);
+            try (RandomAccessFile segmentFile = new RandomAccessFile(file, "rw")) {
+                // The mapping stays valid after the file is closed.
+                segment = segmentFile.getChannel()
+                        .map(FileChannel.MapMode.READ_WRITE, 0, segmentFile.length());
+            }
+            generation = current;
+            scanned = SEGMENT_HEADER_SIZE;
+            entries.clear();
+            liveBytes = 0;
+            deadBytes = 0;
+        }
+        scan(Math.min(segment.getInt(OFFSET_END), segment.capacity()));
+    }
+
+    private void scan(int end) {
+        int position = scanned;
+        while (position + RECORD_HEADER_SIZE <= end) {
+            int length = segment.getInt(position);
+            if (length < 0 || length > end - position - RECORD_HEADER_SIZE
+                    || segment.getInt(position + 4) != checksum(position + 8, length + 1)) {
+                // Only possible if the device lost power before the page was written.
+                Log.w(TAG, "Ignoring corrupt records in " + segmentFile(generation));
+                break;
+            }
+            index(segment.get(position + 8), position + RECORD_HEADER_SIZE, length);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        scanned = position;
+    }
+
+    private void index(byte type, int offset, int length) {
+        int size = RECORD_HEADER_SIZE + length;
+        if (type == TYPE_ENTRY) {
+            int idLength = segment.getShort(offset);
+            String id = readString(offset + 2, idLength);
+            entries.put(id, new Entry(offset + 2 + idLength, length - 2 - idLength, size));
+            liveBytes += size;
+        } else {
+            Entry removed = entries.remove(readString(offset, length));
+            if (removed != null) {
+                liveBytes -= removed.recordSize;
+                deadBytes += removed.recordSize;
+            }
+            deadBytes += size;
+        }
+    }
+
+    /**
+     * Appends a record and indexes it. Call with the exclusive lock held, after
+     * {@link #refresh()}.
+     */
+    private void write(byte type, byte[] payload) throws IOException {
+        int size = RECORD_HEADER_SIZE + payload.length;
+        // Appending after corrupt records would hide the new record too.
+        int end = scanned;
+        if (end + size > segment.capacity()) {
+            compact(size);
+            end = scanned;
+        }
+        crc.reset();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        ByteBuffer view = segment.duplicate();
+        view.position(end);
+        view.putInt(payload.length).putInt((int) crc.getValue()).put(type).put(payload);
+        // Publishing the new end offset last makes the record visible atomically.
+        segment.putInt(OFFSET_END, end + size);
+        scan(end + size);
+    }
+
+    /**
+     * Copies the live entries to a new segment with room for {@code extra} more bytes. Call with
+     * the exclusive lock held, after {@link #refresh()}.
+     */
+    private void compact(int extra) throws IOException {
+        int required = SEGMENT_HEADER_SIZE + liveBytes + extra;
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * required && capacity < Integer.MAX_VALUE / 2) capacity *= 2;
+        if (required > capacity) throw new IOException("Log too large");
+
+        int next = generation + 1;
+        MappedByteBuffer target = createSegment(next, capacity);
+        ByteBuffer view = target.duplicate();
+        view.position(SEGMENT_HEADER_SIZE);
+        LinkedHashMap<String, Entry> moved = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            int recordStart = value.dataOffset + value.dataLength - value.recordSize;
+            int newStart = view.position();
+            ByteBuffer record = segment.duplicate();
+            record.position(recordStart).limit(recordStart + value.recordSize);
+            view.put(record);
+            moved.put(entry.getKey(), new Entry(newStart + value.dataOffset - recordStart,
+                    value.dataLength, value.recordSize));
+        }
+        target.putInt(OFFSET_END, view.position());
+        target.force();
+
+        // Switches all processes to the new segment.
+        lockHeader.putInt(OFFSET_GENERATION, next);
+        lockHeader.force();
+        //noinspection ResultOfMethodCallIgnored
+        segmentFile(generation).delete();
+
+        generation = next;
+        segment = target;
+        scanned = view.position();
+        entries.clear();
+        entries.putAll(moved);
+        deadBytes = 0;
+    }
+
+    private MappedByteBuffer createSegment(int generation, int capacity) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(generation), "rw")) {
+            file.setLength(capacity);
+            MappedByteBuffer segment =
+                    file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            segment.putInt(0, MAGIC);
+            segment.putInt(OFFSET_END, SEGMENT_HEADER_SIZE);
+            return segment;
+        }
+    }
+
+    /**
+     * Deletes segments left behind by compactions that crashed or whose old segment couldn't be
+     * deleted. Call with the exclusive lock held.
+     */
+    private void deleteStaleSegments(int current) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX_SEGMENT));
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.equals(segmentFile(current))) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private File segmentFile(int generation) {
+        return new File(directory, PREFIX_SEGMENT + generation);
+    }
+
+    private int checksum(int offset, int length) {
+        crc.reset();
+        ByteBuffer view = segment.duplicate();
+        view.position(offset);
+        while (length > 0) {
+            int count = Math.min(length, buffer.length);
+            view.get(buffer, 0, count);
+            crc.update(buffer, 0, count);
+            length -= count;
+        }
+        return (int) crc.getValue();
+    }
+
+    private String readString(int offset, int length) {
+        if (buffer.length < length) buffer = new byte[length];
+        ByteBuffer view = segment.duplicate();
+        view.position(offset);
+        view.get(buffer, 0, length);
+        return new String(buffer, 0, length, UTF_8);
+    }
+
+    private static final class Entry {
+        private final int dataOffset;
+        private final int dataLength;
+        private final int recordSize;
+
+        private Entry(int dataOffset, int dataLength, int recordSize) {
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.recordSize = recordSize;
+        }
+    }
+
+    /**
+     * Exclusive right to drain the log, across all processes of the app.
+     */
+    final class Claim implements Closeable {
+        private final FileChannel channel;
+        private boolean closed;
+
+        private Claim(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (ReportLog.this) {
+                if (closed) return;
+                closed = true;
+                claimed = false;
+                // Closing the channel releases the lock.
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+
+package com.heinrichreimersoftware.androidissuereporter.storage;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.util.Hashes;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Reports waiting for delivery to a target, stored compressed in a {@link ReportLog} in the
+ * app's private files directory. Every process of the app can queue reports. Reports are
+ * delivered oldest first. When the queue is full, the oldest report is dropped. Reports that
+ * GitHub rejects are moved to a separate queue of {@linkplain #getRejected() rejected reports}.
+ */
+public class ReportQueue {
+    private static final String TAG = ReportQueue.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_SIZE = 50;
+
+    private static final String DIRECTORY_NAME = "air_queue";
+    private static final String DIRECTORY_NAME_REJECTED = "air_queue_rejected";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Entries start with the compressor's magic byte, or with this byte followed by flags.
+    private static final int FORMAT_FLAGS = 0x01;
+    private static final int FLAG_FOLLOW_UP_AS_COMMENT = 1;
+
+    private final File directory;
+    private final int maxSize;
+
+    public ReportQueue(@NonNull Context context, @NonNull GithubTarget target) {
+        this(context, target, DEFAULT_MAX_SIZE);
+    }
+
+    public ReportQueue(@NonNull Context context, @NonNull GithubTarget target, int maxSize) {
+        this(new File(new File(context.getFilesDir(), DIRECTORY_NAME), directoryName(target)),
+                maxSize);
+    }
+
+    private ReportQueue(File directory, int maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Stores the report. A crash never leaves a partial report in the queue.
+     */
+    @WorkerThread
+    public void add(@NonNull Report report) throws IOException {
+        add(report, false);
+    }
+
+    /**
+     * Stores the report. If {@code followUpAsComment} is set, the report is meant to be added as
+     * a comment to the issue opened for an earlier report with the same fingerprint.
+     */
+    @WorkerThread
+    public void add(@NonNull Report report, boolean followUpAsComment) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        if (followUpAsComment) {
+            data.write(FORMAT_FLAGS);
+            data.write(FLAG_FOLLOW_UP_AS_COMMENT);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                ReportCompressor.openCompressed(data), UTF_8))) {
+            report.writeJson(writer);
+        }
+        for (String dropped : log().append(report.getId(), data.toByteArray(), maxSize)) {
+            Log.w(TAG, "Queue full, dropping " + dropped);
+        }
+    }
+
+    /**
+     * Returns up to {@code max} of the oldest reports without removing them. Unreadable
+     * reports are removed.
+     */
+    @WorkerThread
+    @NonNull
+    public List<Report> peek(int max) {
+        List<Entry> entries = peekEntries(max);
+        List<Report> reports = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            reports.add(entry.getReport());
+        }
+        return reports;
+    }
+
+    /**
+     * Like {@link #peek(int)}, along with how each report is meant to be delivered.
+     */
+    @WorkerThread
+    @NonNull
+    public List<Entry> peekEntries(int max) {
+        Map<String, byte[]> entries;
+        try {
+            entries = log().peek(max);
+        } catch (IOException e) {
+            Log.w(TAG, "Reading the queue failed", e);
+            return new ArrayList<>();
+        }
+        List<Entry> queued = new ArrayList<>(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            byte[] data = entry.getValue();
+            int flags = 0;
+            int offset = 0;
+            if (data.length >= 2 && data[0] == FORMAT_FLAGS) {
+                flags = data[1];
+                offset = 2;
+            }
+            try (Reader reader = new BufferedReader(new InputStreamReader(
+                    ReportCompressor.openDecompressed(
+                            new ByteArrayInputStream(data, offset, data.length - offset)),
+                    UTF_8))) {
+                queued.add(new Entry(Report.readJson(reader),
+                        (flags & FLAG_FOLLOW_UP_AS_COMMENT) != 0));
+            } catch (IOException | IllegalStateException e) {
+                Log.w(TAG, "Dropping unreadable report " + entry.getKey(), e);
+                try {
+                    log().remove(entry.getKey());
+                } catch (IOException removeFailed) {
+                    Log.w(TAG, "Removing " + entry.getKey() + " from the queue failed",
+                            removeFailed);
+                }
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Removes the report, e.g. after it was delivered.
+     *
+     * @throws IOException If the report could not be removed and is still queued.
+     */
+    @WorkerThread
+    public void remove(@NonNull Report report) throws IOException {
+        log().remove(report.getId());
+    }
+
+    /**
+     * Moves the report to the {@linkplain #getRejected() rejected reports}, so it no longer
+     * blocks the reports queued after it.
+     *
+     * @throws IOException If the report could not be moved and is still queued.
+     */
+    @WorkerThread
+    public void reject(@NonNull Report report) throws IOException {
+        getRejected().add(report);
+        remove(report);
+    }
+
+    /**
+     * Returns the reports GitHub rejected, e.g. because of an invalid assignee, so the app can
+     * inspect or resend them. Rejected reports are never delivered automatically.
+     */
+    @NonNull
+    public ReportQueue getRejected() {
+        File rejected = new File(new File(directory.getParentFile().getParentFile(),
+                DIRECTORY_NAME_REJECTED), directory.getName());
+        return new ReportQueue(rejected, maxSize);
+    }
+
+    @WorkerThread
+    public int size() {
+        try {
+            return log().size();
+        } catch (IOException e) {
+            Log.w(TAG, "Reading the queue failed", e);
+            return 0;
+        }
+    }
+
+    @WorkerThread
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Claims the queue for delivery, so that only one thread in one of the app's processes
+     * submits its reports at a time. Other processes can still add reports meanwhile.
+     *
+     * @return The claim to close after delivery, or {@code null} if the queue is already claimed.
+     */
+    @WorkerThread
+    @Nullable
+    public Closeable tryClaim() throws IOException {
+        return log().tryClaim();
+    }
+
+    private ReportLog log() throws IOException {
+        return ReportLog.open(directory);
+    }
+
+    private static String directoryName(GithubTarget target) {
+        return Hashes.fnv1a64(target.toString());
+    }
+
+    /**
+     * A queued report and how it is meant to be delivered.
+     */
+    public static final class Entry {
+        private final Report report;
+        private final boolean followUpAsComment;
+
+        private Entry(Report report, boolean followUpAsComment) {
+            this.report = report;
+            this.followUpAsComment = followUpAsComment;
+        }
+
+        @NonNull
+        public Report getReport() {
+            return report;
+        }
+
+        public boolean isFollowUpAsComment() {
+            return followUpAsComment;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.util;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import androidx.annotation.NonNull;
+
+public class JsonUtils {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JsonUtils() {
+    }
+
+    /**
+     * Writes {@code value} as a quoted and escaped JSON string.
+     */
+    public static void writeString(Writer writer, CharSequence value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            writeEscaped(writer, value.charAt(i));
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Writes {@code value} as a quoted and escaped JSON string, redacting it on the way. Long
+     * values are redacted line by line, so no redacted copy is built in memory.
+     */
+    public static void writeString(Writer writer, CharSequence value, Redactor redactor)
+            throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        redactor.redact(value, escaping(writer));
+        writer.write('"');
+    }
+
+    /**
+     * Returns a writer that escapes everything written to it for use inside a JSON string.
+     * Closing it doesn't close {@code writer}.
+     */
+    public static Writer escaping(final Writer writer) {
+        return new Writer() {
+            @Override
+            public void write(@NonNull char[] buffer, int offset, int length) throws IOException {
+                for (int i = offset; i < offset + length; i++) {
+                    writeEscaped(writer, buffer[i]);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writer.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Writes the remaining content of {@code reader} as a quoted and escaped JSON string without
+     * loading it into memory.
+     */
+    public static void writeString(Writer writer, Reader reader) throws IOException {
+        writer.write('"');
+        char[] buffer = new char[8 * 1024];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                writeEscaped(writer, buffer[i]);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Reads the next string value, or {@code null} for a JSON {@code null}.
+     */
+    public static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static void writeEscaped(Writer writer, char c) throws IOException {
+        switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            case '\b':
+                writer.write("\\b");
+                break;
+            case '\f':
+                writer.write("\\f");
+                break;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    writer.write("\\u");
+                    writer.write(HEX[(c >> 12) & 0xf]);
+                    writer.write(HEX[(c >> 8) & 0xf]);
+                    writer.write(HEX[(c >> 4) & 0xf]);
+                    writer.write(HEX[c & 0xf]);
+                } else {
+                    writer.write(c);
+                }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.util;
+
+import android.text.TextUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Masks personal data (e-mail addresses, access tokens, IP addresses, phone numbers and
+ * custom patterns) in report text. All rules are compiled into a single alternation so the
+ * input is scanned only once, regardless of how many rules are configured.
+ */
+public class Redactor {
+    private static final String REGEX_EMAIL =
+            "[A-Za-z0-9._%+-]+@(?:[A-Za-z0-9-]+\\.)+[A-Za-z]{2,}";
+    private static final String REGEX_TOKEN =
+            "gh[pousr]_[A-Za-z0-9]{36,}"
+                    + "|github_pat_[A-Za-z0-9_]{22,}"
+                    + "|AIza[0-9A-Za-z_-]{35}"
+                    + "|eyJ[A-Za-z0-9_-]+\\.[A-Za-z0-9_-]+\\.[A-Za-z0-9_-]+"
+                    + "|(?i:bearer|token)\\s+[A-Za-z0-9._~+/-]{16,}=*";
+    private static final String REGEX_IP_ADDRESS =
+            "(?<![0-9.])(?:(?:25[0-5]|2[0-4][0-9]|1?[0-9]?[0-9])\\.){3}"
+                    + "(?:25[0-5]|2[0-4][0-9]|1?[0-9]?[0-9])(?!\\.?[0-9])";
+    private static final String REGEX_PHONE_NUMBER =
+            "\\+[0-9]{1,3}(?:[ .-]?\\(?[0-9]{2,4}\\)?){2,5}(?![0-9])"
+                    + "|\\([0-9]{3}\\) ?[0-9]{3}-[0-9]{4}(?![0-9])";
+
+    private static final String REPLACEMENT_EMAIL = "[email]";
+    private static final String REPLACEMENT_TOKEN = "[token]";
+    private static final String REPLACEMENT_IP_ADDRESS = "[ip]";
+    private static final String REPLACEMENT_PHONE_NUMBER = "[phone]";
+
+    private static final int DEFAULT_MAX_LINE_LENGTH = 8 * 1024;
+
+    public static final Redactor NONE = new Builder().build();
+    public static final Redactor DEFAULT = new Builder()
+            .emails()
+            .tokens()
+            .ipAddresses()
+            .phoneNumbers()
+            .build();
+
+    private final Pattern pattern;
+    private final String[] regexes;
+    private final int[] groups;
+    private final String[] replacements;
+    private final int maxLineLength;
+
+    private Redactor(List<String> regexes, List<String> replacements, int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+        this.regexes = regexes.toArray(new String[0]);
+        this.replacements = replacements.toArray(new String[0]);
+        this.groups = new int[regexes.size()];
+        if (regexes.isEmpty()) {
+            pattern = null;
+            return;
+        }
+        StringBuilder combined = new StringBuilder();
+        int group = 1;
+        for (int i = 0; i < regexes.size(); i++) {
+            String regex = regexes.get(i);
+            if (i > 0) combined.append('|');
+            combined.append('(').append(regex).append(')');
+            groups[i] = group;
+            group += 1 + Pattern.compile(regex).matcher("").groupCount();
+        }
+        pattern = Pattern.compile(combined.toString());
+    }
+
+    public boolean isEmpty() {
+        return pattern == null;
+    }
+
+    @NonNull
+    public String redact(CharSequence input) {
+        if (TextUtils.isEmpty(input)) return input == null ? "" : input.toString();
+        if (pattern == null) return input.toString();
+        StringBuilder output = new StringBuilder(input.length());
+        redact(input, output);
+        return output.toString();
+    }
+
+    public void redact(CharSequence input, StringBuilder output) {
+        if (input == null) {
+            output.append((String) null);
+            return;
+        }
+        if (pattern == null) {
+            output.append(input);
+            return;
+        }
+        Matcher matcher = pattern.matcher(input);
+        int last = 0;
+        while (matcher.find()) {
+            output.append(input, last, matcher.start())
+                    .append(replacementFor(matcher));
+            last = matcher.end();
+        }
+        output.append(input, last, input.length());
+    }
+
+    public void redact(CharSequence input, Writer writer) throws IOException {
+        if (input == null) {
+            writer.write("null");
+        } else if (input.length() <= maxLineLength) {
+            writer.write(redact(input));
+        } else {
+            redact(new StringReader(input.toString()), writer);
+        }
+    }
+
+    /**
+     * Redacts a stream line by line. At most {@code maxLineLength} characters are held in
+     * memory at once, so arbitrarily large logs can be processed. Lines exceeding that limit
+     * are split, which may leave a match spanning the split unredacted.
+     */
+    public void redact(Reader reader, Writer writer) throws IOException {
+        char[] buffer = new char[maxLineLength];
+        StringBuilder line = new StringBuilder(Math.min(maxLineLength, 256));
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n' || line.length() + i - start + 1 >= maxLineLength) {
+                    line.append(buffer, start, i - start + 1);
+                    writer.write(redact(line));
+                    line.setLength(0);
+                    start = i + 1;
+                }
+            }
+            line.append(buffer, start, read - start);
+        }
+        if (line.length() > 0) {
+            writer.write(redact(line));
+        }
+        writer.flush();
+    }
+
+    private String replacementFor(Matcher matcher) {
+        for (int i = 0; i < groups.length; i++) {
+            if (matcher.start(groups[i]) != -1) {
+                return replacements[i];
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Masks the domain name of an e-mail address while keeping the local part and top level
+     * domain readable, e.g. {@code jane@example.com} becomes {@code jane@*******.com}.
+     */
+    @NonNull
+    public static String maskEmail(String email) {
+        if (TextUtils.isEmpty(email)) return "";
+        int at = email.lastIndexOf('@');
+        if (at < 0) return mask(email.length());
+        String local = email.substring(0, at);
+        String domain = email.substring(at + 1);
+        int dot = domain.lastIndexOf('.');
+        if (dot < 0) return local + "@" + mask(domain.length());
+        return local + "@" + mask(dot) + domain.substring(dot);
+    }
+
+    private static String mask(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append('*');
+        }
+        return builder.toString();
+    }
+
+    public static class Builder {
+        private final List<String> regexes = new ArrayList<>();
+        private final List<String> replacements = new ArrayList<>();
+        private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+
+        public Builder() {
+        }
+
+        public Builder(@NonNull Redactor redactor) {
+            this.maxLineLength = redactor.maxLineLength;
+            Collections.addAll(regexes, redactor.regexes);
+            Collections.addAll(replacements, redactor.replacements);
+        }
+
+        public Builder emails() {
+            return pattern(REGEX_EMAIL, REPLACEMENT_EMAIL);
+        }
+
+        public Builder tokens() {
+            return pattern(REGEX_TOKEN, REPLACEMENT_TOKEN);
+        }
+
+        public Builder ipAddresses() {
+            return pattern(REGEX_IP_ADDRESS, REPLACEMENT_IP_ADDRESS);
+        }
+
+        public Builder phoneNumbers() {
+            return pattern(REGEX_PHONE_NUMBER, REPLACEMENT_PHONE_NUMBER);
+        }
+
+        /**
+         * Masks matches of {@code regex}. Backreferences aren't supported, as the expression
+         * becomes part of a larger one and group numbers shift.
+         *
+         * @throws IllegalArgumentException if {@code regex} is invalid or has a backreference
+         */
+        public Builder pattern(@NonNull String regex, @NonNull String replacement) {
+            // Fail fast on invalid expressions instead of when the combined pattern is built.
+            Pattern.compile(regex);
+            checkNoBackreferences(regex);
+            regexes.add(regex);
+            replacements.add(replacement);
+            return this;
+        }
+
+        private static void checkNoBackreferences(String regex) {
+            for (int i = 0; i < regex.length() - 1; i++) {
+                if (regex.charAt(i) != '\\') continue;
+                char escaped = regex.charAt(++i);
+                if (escaped == 'Q') {
+                    // Skip quoted text, where backslashes are literal.
+                    int end = regex.indexOf("\\E", i);
+                    if (end < 0) return;
+                    i = end + 1;
+                } else if (escaped == 'k' || (escaped >= '1' && escaped <= '9')) {
+                    throw new IllegalArgumentException("Backreferences are not supported: "
+                            + regex);
+                }
+            }
+        }
+
+        public Builder maxLineLength(int maxLineLength) {
+            if (maxLineLength < 2)
+                throw new IllegalArgumentException("maxLineLength must be at least 2");
+            this.maxLineLength = maxLineLength;
+            return this;
+        }
+
+        public Redactor build() {
+            return new Redactor(regexes, replacements, maxLineLength);
+        }
+    }
+}
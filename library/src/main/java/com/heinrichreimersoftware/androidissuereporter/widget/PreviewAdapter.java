@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.widget;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.heinrichreimersoftware.androidissuereporter.R;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Shows long texts like device info and log previews as a list of small chunks, so only the
+ * visible lines need to be laid out.
+ */
+public class PreviewAdapter extends RecyclerView.Adapter<PreviewAdapter.ViewHolder> {
+    private static final int LINES_PER_CHUNK = 16;
+    private static final int MAX_CHUNK_LENGTH = 2048;
+
+    private List<String> chunks = Collections.emptyList();
+    private int lineCount;
+
+    /**
+     * Splits {@code text} into chunks of a few lines each, only at line breaks. A chunk ends
+     * early after a line that makes it longer than {@link #MAX_CHUNK_LENGTH} characters. This is
+     * linear in the text length, so call it off the main thread for large texts.
+     */
+    @WorkerThread
+    @NonNull
+    public static Chunks chunk(@NonNull CharSequence text) {
+        List<String> chunks = new ArrayList<>();
+        int lineCount = 0;
+        int start = 0;
+        int lines = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            boolean newline = text.charAt(i) == '\n';
+            if (newline) {
+                lines++;
+                lineCount++;
+            }
+            if (newline && (lines >= LINES_PER_CHUNK || i - start >= MAX_CHUNK_LENGTH)) {
+                // The trailing line break is implied by the next item.
+                chunks.add(text.subSequence(start, i).toString());
+                start = i + 1;
+                lines = 0;
+            }
+        }
+        if (start < length) {
+            chunks.add(text.subSequence(start, length).toString());
+            lineCount++;
+        }
+        return new Chunks(chunks, lineCount);
+    }
+
+    public void setChunks(@NonNull Chunks chunks) {
+        this.chunks = chunks.chunks;
+        this.lineCount = chunks.lineCount;
+        notifyDataSetChanged();
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new ViewHolder(LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.air_item_preview, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.text.setText(chunks.get(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return chunks.size();
+    }
+
+    public static final class Chunks {
+        private final List<String> chunks;
+        private final int lineCount;
+
+        private Chunks(List<String> chunks, int lineCount) {
+            this.chunks = chunks;
+            this.lineCount = lineCount;
+        }
+    }
+
+    public static final class ViewHolder extends RecyclerView.ViewHolder {
+        private final TextView text;
+
+        private ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            text = (TextView) itemView;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import android.content.Context;
+
+import com.heinrichreimersoftware.androidissuereporter.model.DeviceInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ranks two {@link FakeGitHub} hosts, a primary and a fallback, where one of them fails or is
+ * slow.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EndpointHealthTest {
+    private final EndpointHealth health = EndpointHealth.getInstance();
+    private FakeGitHub primary;
+    private FakeGitHub fallback;
+    private GithubTarget target;
+
+    @Before
+    public void setUp() throws IOException {
+        primary = new FakeGitHub();
+        fallback = new FakeGitHub();
+        target = primary.getTarget(fallback);
+    }
+
+    @After
+    public void tearDown() {
+        primary.close();
+        fallback.close();
+    }
+
+    @Test
+    public void ranksFasterHostFirst() {
+        health.recordSuccess(primary.getBaseUrl(), 500);
+        health.recordSuccess(fallback.getBaseUrl(), 100);
+
+        assertEquals(Arrays.asList(fallback.getBaseUrl(), primary.getBaseUrl()),
+                health.rank(target));
+        // Both measurements are fresh, so nothing was probed.
+        assertEquals(0, primary.getRequests());
+        assertEquals(0, fallback.getRequests());
+    }
+
+    @Test
+    public void failureOutweighsLatencyUntilNextSuccess() {
+        health.recordSuccess(primary.getBaseUrl(), 100);
+        health.recordSuccess(fallback.getBaseUrl(), 500);
+        health.recordFailure(primary.getBaseUrl());
+
+        assertEquals(Arrays.asList(fallback.getBaseUrl(), primary.getBaseUrl()),
+                health.rank(target));
+
+        health.recordSuccess(primary.getBaseUrl());
+
+        assertEquals(Arrays.asList(primary.getBaseUrl(), fallback.getBaseUrl()),
+                health.rank(target));
+    }
+
+    @Test
+    public void probesStaleHostsOnRateLimitEndpoint() {
+        primary.setStatus(502);
+
+        assertEquals(Arrays.asList(fallback.getBaseUrl(), primary.getBaseUrl()),
+                health.rank(target));
+        assertEquals(1, primary.getRequests());
+        assertEquals(1, fallback.getRequests());
+    }
+
+    @Test
+    public void slowProbeDoesNotHoldUpRanking() {
+        primary.setDelayMillis(5000);
+
+        long start = System.nanoTime();
+        assertEquals(Arrays.asList(fallback.getBaseUrl(), primary.getBaseUrl()),
+                health.rank(target));
+        // The primary's probe missed the deadline and keeps running in the background.
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 4000);
+    }
+
+    @Test
+    public void singleHostIsNotProbed() {
+        assertEquals(Collections.singletonList(primary.getBaseUrl()),
+                health.rank(primary.getTarget()));
+        assertEquals(0, primary.getRequests());
+    }
+
+    @Test
+    public void submitterFailsOverToFallback() {
+        health.recordSuccess(primary.getBaseUrl(), 100);
+        health.recordSuccess(fallback.getBaseUrl(), 500);
+        primary.setStatus(502);
+        Context context = ApplicationProvider.getApplicationContext();
+        IssueSubmitter submitter = new IssueSubmitter(context, target, new GithubLogin("token"));
+
+        assertEquals(IssueSubmitter.RESULT_OK, submitter.submit(
+                new Report("Title", "Description", new DeviceInfo(context), new ExtraInfo(), null)));
+        assertEquals(1, primary.getRequests());
+        assertEquals(0, primary.getIssues().size());
+        assertEquals(1, fallback.getIssues().size());
+        // The failure moved the primary behind the fallback.
+        assertEquals(Arrays.asList(fallback.getBaseUrl(), primary.getBaseUrl()),
+                health.rank(target));
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local fake of the GitHub REST endpoints the reporter uses, for tests. It keeps created
+ * issues and comments in memory and can fail, drop responses and simulate slow links.
+ * <p>
+ * Like GitHub, it rejects issue and comment bodies longer than {@value #MAX_BODY_LENGTH}
+ * characters.
+ */
+public final class FakeGitHub implements Closeable {
+    public static final String OWNER = "username";
+    public static final String REPOSITORY = "repository";
+    public static final int MAX_BODY_LENGTH = 65536;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String API_PREFIX = "/api/v3";
+    private static final String REPOSITORY_PATH = "/repos/" + OWNER + "/" + REPOSITORY;
+    private static final Pattern COMMENTS = Pattern.compile("/issues/(\\d+)/comments");
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final HttpServer server;
+    private final List<Posted> issues = new ArrayList<>();
+    private final List<Posted> comments = new ArrayList<>();
+    private int status;
+    private int issueStatus;
+    private final Set<String> rejectedTitles = new HashSet<>();
+    private int dropResponses;
+    private long bytesPerSecond;
+    private long delayMillis;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int posts;
+    private int requests;
+
+    public FakeGitHub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * The API base URL. It isn't api.github.com, so clients add the GitHub Enterprise prefix.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public GithubTarget getTarget(FakeGitHub... fallbacks) {
+        String[] fallbackUrls = new String[fallbacks.length];
+        for (int i = 0; i < fallbacks.length; i++) fallbackUrls[i] = fallbacks[i].getBaseUrl();
+        return new GithubTarget(OWNER, REPOSITORY, getBaseUrl(), getBaseUrl(), fallbackUrls);
+    }
+
+    /**
+     * Answers every request with {@code status}, e.g. 502 for an outage. 0 restores normal
+     * responses.
+     */
+    public synchronized void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * Answers requests that create issues with {@code status}, e.g. 422 for a rejected issue.
+     */
+    public synchronized void setIssueStatus(int status) {
+        this.issueStatus = status;
+    }
+
+    /**
+     * Answers requests that create issues titled {@code title} with 422, like an issue with an
+     * invalid label.
+     */
+    public synchronized void rejectTitle(String title) {
+        rejectedTitles.add(title);
+    }
+
+    /**
+     * Processes the next {@code count} posts but closes the connection instead of responding,
+     * like a connection that breaks after the request arrived.
+     */
+    public synchronized void dropResponses(int count) {
+        this.dropResponses = count;
+    }
+
+    /**
+     * Advances the test clock while reading request bodies as if they arrived at
+     * {@code bytesPerSecond}. 0 turns this off.
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Delays every response by {@code delayMillis} of real time.
+     */
+    public synchronized void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    public synchronized void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public synchronized List<Posted> getIssues() {
+        return new ArrayList<>(issues);
+    }
+
+    public synchronized List<Posted> getComments() {
+        return new ArrayList<>(comments);
+    }
+
+    public synchronized int getPendingDrops() {
+        return dropResponses;
+    }
+
+    public synchronized int getPosts() {
+        return posts;
+    }
+
+    public synchronized int getRequests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long delay;
+        synchronized (this) {
+            delay = delayMillis;
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            handleLocked(exchange);
+        }
+    }
+
+    private void handleLocked(HttpExchange exchange) throws IOException {
+        requests++;
+        byte[] request = read(exchange.getRequestBody());
+        if (bytesPerSecond > 0) {
+            ShadowSystemClock.advanceBy(Duration.ofMillis(request.length * 1000L / bytesPerSecond));
+        }
+        if (status != 0) {
+            respond(exchange, status, error("Unavailable"));
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals(API_PREFIX + "/rate_limit")) {
+            respond(exchange, 200, "{}");
+            return;
+        }
+        if (!path.startsWith(API_PREFIX + REPOSITORY_PATH + "/issues")) {
+            respond(exchange, 404, error("Not Found"));
+            return;
+        }
+        String resource = path.substring((API_PREFIX + REPOSITORY_PATH).length());
+        Matcher commentsPath = COMMENTS.matcher(resource);
+        boolean isComments = commentsPath.matches();
+        if (!isComments && !resource.equals("/issues")) {
+            respond(exchange, 404, error("Not Found"));
+            return;
+        }
+        int number = isComments ? Integer.parseInt(commentsPath.group(1)) : 0;
+
+        if ("GET".equals(exchange.getRequestMethod())) {
+            List<Posted> listed = new ArrayList<>();
+            for (Posted posted : isComments ? comments : issues) {
+                if (!isComments || posted.issue == number) listed.add(posted);
+            }
+            respondPage(exchange, listed, isComments);
+            return;
+        }
+
+        posts++;
+        if (!isComments && issueStatus != 0) {
+            respond(exchange, issueStatus, error("Rejected"));
+            return;
+        }
+        Posted posted = parse(request, isComments ? number : 0);
+        if (posted.body != null && posted.body.length() > MAX_BODY_LENGTH ||
+                !isComments && rejectedTitles.contains(posted.title)) {
+            respond(exchange, 422, error("Validation Failed"));
+            return;
+        }
+        List<Posted> created = isComments ? comments : issues;
+        posted.number = created.size() + 1;
+        created.add(posted);
+        if (dropResponses > 0) {
+            dropResponses--;
+            // The request was processed, but the client never sees the response.
+            exchange.close();
+            return;
+        }
+        respond(exchange, 201, toJson(posted, isComments));
+    }
+
+    private void respondPage(HttpExchange exchange, List<Posted> listed, boolean isComments)
+            throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        int size = Math.min(pageSize, queryInt(query, "per_page", DEFAULT_PAGE_SIZE));
+        int page = queryInt(query, "page", 1);
+        int from = Math.min(listed.size(), (page - 1) * size);
+        int to = Math.min(listed.size(), from + size);
+        if (to < listed.size()) {
+            exchange.getResponseHeaders().set("Link", "<" + getBaseUrl()
+                    + exchange.getRequestURI().getPath() + "?per_page=" + size + "&page="
+                    + (page + 1) + ">; rel=\"next\"");
+        }
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            writer.beginArray();
+            for (Posted posted : listed.subList(from, to)) write(writer, posted, isComments);
+            writer.endArray();
+        }
+        respond(exchange, 200, json.toString());
+    }
+
+    private static Posted parse(byte[] request, int issue) throws IOException {
+        Posted posted = new Posted(issue);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(request), UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                } else if ("title".equals(name)) {
+                    posted.title = reader.nextString();
+                } else if ("body".equals(name)) {
+                    posted.body = reader.nextString();
+                } else if ("labels".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) posted.labels.add(reader.nextString());
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return posted;
+    }
+
+    private static String toJson(Posted posted, boolean isComment) throws IOException {
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            write(writer, posted, isComment);
+        }
+        return json.toString();
+    }
+
+    private static void write(JsonWriter writer, Posted posted, boolean isComment)
+            throws IOException {
+        writer.beginObject();
+        if (isComment) {
+            writer.name("id").value(posted.number);
+        } else {
+            writer.name("number").value(posted.number);
+            writer.name("title").value(posted.title);
+            writer.name("state").value("open");
+        }
+        writer.name("body").value(posted.body);
+        writer.name("html_url").value(posted.getHtmlUrl());
+        writer.endObject();
+    }
+
+    private static String error(String message) {
+        return "{\"message\":\"" + message + "\"}";
+    }
+
+    private static int queryInt(String query, String name, int fallback) {
+        if (query == null) return fallback;
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return Integer.parseInt(parameter.substring(name.length() + 1));
+            }
+        }
+        return fallback;
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) output.write(buffer, 0, read);
+        return output.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] data = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, data.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(data);
+        }
+    }
+
+    /**
+     * An issue or comment created on the fake.
+     */
+    public static final class Posted {
+        private final int issue;
+        private final List<String> labels = new ArrayList<>();
+        private int number;
+        private String title;
+        private String body;
+
+        private Posted(int issue) {
+            this.issue = issue;
+        }
+
+        /**
+         * The number of the created issue, or of the issue a comment was posted on.
+         */
+        public int getIssueNumber() {
+            return issue != 0 ? issue : number;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public List<String> getLabels() {
+            return labels;
+        }
+
+        public String getHtmlUrl() {
+            String issueUrl = "https://github.com/" + OWNER + "/" + REPOSITORY + "/issues/"
+                    + getIssueNumber();
+            return issue != 0 ? issueUrl + "#issuecomment-" + number : issueUrl;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import android.content.Context;
+
+import com.heinrichreimersoftware.androidissuereporter.delivery.ReportDrain;
+import com.heinrichreimersoftware.androidissuereporter.model.DeviceInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.storage.IssueHistory;
+import com.heinrichreimersoftware.androidissuereporter.storage.ReportQueue;
+import com.heinrichreimersoftware.androidissuereporter.util.JsonUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.List;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the submitter against a {@link FakeGitHub} that can drop responses, like a connection
+ * that breaks after the request was processed.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IssueSubmitterTest {
+    private FakeGitHub github;
+    private IssueSubmitter submitter;
+
+    @Before
+    public void setUp() throws IOException {
+        github = new FakeGitHub();
+        submitter = new IssueSubmitter(ApplicationProvider.getApplicationContext(),
+                github.getTarget(), new GithubLogin("token"));
+    }
+
+    @After
+    public void tearDown() {
+        github.close();
+    }
+
+    @Test
+    public void createsIssue() {
+        assertEquals(IssueSubmitter.RESULT_OK, submitter.submit(report("a")));
+        assertEquals(1, github.getIssues().size());
+        assertTrue(github.getIssues().get(0).getBody().contains(report("a").getIdMarker()));
+        assertEquals(github.getIssues().get(0).getHtmlUrl(), submitter.getIssueHtmlUrl());
+    }
+
+    @Test
+    public void findsIssueCreatedBeforeResponseGotLost() {
+        github.dropResponses(1);
+
+        assertEquals(IssueSubmitter.RESULT_OK, submitter.submit(report("a")));
+        assertEquals(0, github.getPendingDrops());
+        assertEquals(1, github.getPosts());
+        assertEquals(1, github.getIssues().size());
+    }
+
+    @Test
+    public void doesNotCommentTwiceAfterResponseGotLost() {
+        github.dropResponses(1);
+
+        assertEquals(IssueSubmitter.RESULT_OK,
+                submitter.comment(report("a"), 42, "https://github.com/username/repository/42"));
+        assertEquals(0, github.getPendingDrops());
+        assertEquals(1, github.getPosts());
+        assertEquals(1, github.getComments().size());
+        assertTrue(github.getComments().get(0).getBody().contains(report("a").getIdMarker()));
+    }
+
+    @Test
+    public void rejectedReportIsNotRetried() {
+        github.setIssueStatus(422);
+
+        assertEquals(IssueSubmitter.RESULT_REJECTED, submitter.submit(report("a")));
+        assertEquals(1, github.getPosts());
+    }
+
+    @Test
+    public void missingRepositoryMeansIssuesNotEnabled() {
+        github.setIssueStatus(404);
+
+        assertEquals(IssueSubmitter.RESULT_ISSUES_NOT_ENABLED, submitter.submit(report("a")));
+    }
+
+    @Test
+    public void cutsIssueBodyOverGitHubLimit() {
+        Report report = report("a", "```\n" + log(100_000) + "```");
+
+        assertEquals(IssueSubmitter.RESULT_OK, submitter.submit(report));
+        String body = github.getIssues().get(0).getBody();
+        assertTrue(body.length() <= FakeGitHub.MAX_BODY_LENGTH);
+        assertTrue(body.contains("Truncated"));
+        assertTrue(body.endsWith(report.getIdMarker()));
+        // The cut code block is closed before the note.
+        assertTrue(body.contains("\n```\n\n---\n\n_Truncated"));
+    }
+
+    @Test
+    public void findsCutIssueCreatedBeforeResponseGotLost() {
+        github.dropResponses(1);
+
+        assertEquals(IssueSubmitter.RESULT_OK, submitter.submit(report("a", log(100_000))));
+        assertEquals(1, github.getPosts());
+        assertEquals(1, github.getIssues().size());
+    }
+
+    @Test
+    public void cutsCommentBodyOverGitHubLimit() {
+        Report report = report("a", log(100_000));
+
+        assertEquals(IssueSubmitter.RESULT_OK,
+                submitter.comment(report, 42, "https://github.com/username/repository/42"));
+        String body = github.getComments().get(0).getBody();
+        assertTrue(body.length() <= FakeGitHub.MAX_BODY_LENGTH);
+        assertTrue(body.endsWith(report.getIdMarker()));
+    }
+
+    @Test
+    public void defersLargeExtraInfoWhileLinkIsSlow() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        IssueHistory history = IssueHistory.getInstance(context);
+        IssueSubmitter tiered = new IssueSubmitter(context, github.getTarget(),
+                new GithubLogin("token"))
+                .setHistory(history)
+                .setDeferLargeExtraInfo(ReportDrain.DEFAULT_CONSTRAINTS);
+        slowDownLink(tiered);
+
+        String logcat = log(8 * 1024);
+        assertEquals(IssueSubmitter.RESULT_OK, tiered.submit(reportWithLogcat(logcat)));
+
+        String body = github.getIssues().get(1).getBody();
+        assertTrue(body.contains("en_US"));
+        assertTrue(body.contains("Sent later"));
+        assertFalse(body.contains(logcat));
+
+        List<ReportQueue.Entry> queued = new ReportQueue(context, github.getTarget())
+                .peekEntries(10);
+        assertEquals(1, queued.size());
+        assertTrue(queued.get(0).isFollowUpAsComment());
+
+        // Delivered like the drain does, once the constraints are met.
+        assertEquals(IssueSubmitter.RESULT_OK, new IssueSubmitter(context, github.getTarget(),
+                new GithubLogin("token")).setHistory(history).submit(queued.get(0).getReport()));
+        assertEquals(2, github.getIssues().size());
+        assertEquals(1, github.getComments().size());
+        assertEquals(2, github.getComments().get(0).getIssueNumber());
+        assertTrue(github.getComments().get(0).getBody().contains(logcat.trim()));
+    }
+
+    @Test
+    public void sendsLargeExtraInfoRightAwayWithoutHistory() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        IssueSubmitter tiered = new IssueSubmitter(context, github.getTarget(),
+                new GithubLogin("token"))
+                .setDeferLargeExtraInfo(ReportDrain.DEFAULT_CONSTRAINTS);
+        slowDownLink(tiered);
+
+        String logcat = log(8 * 1024);
+        assertEquals(IssueSubmitter.RESULT_OK, tiered.submit(reportWithLogcat(logcat)));
+
+        assertTrue(github.getIssues().get(1).getBody().contains(logcat.trim()));
+        assertTrue(new ReportQueue(context, github.getTarget()).isEmpty());
+    }
+
+    /**
+     * Submits a large report at a low rate, so the link counts as constrained until the test
+     * clock advances again.
+     */
+    private void slowDownLink(IssueSubmitter submitter) {
+        WorkManagerTestInitHelper.initializeTestWorkManager(
+                ApplicationProvider.getApplicationContext());
+        // Lets the estimate of earlier tests expire.
+        ShadowSystemClock.advanceBy(Duration.ofMinutes(10));
+        github.setBytesPerSecond(4 * 1024);
+        assertEquals(IssueSubmitter.RESULT_OK, submitter.submit(report("slow", log(64 * 1024))));
+        github.setBytesPerSecond(0);
+        assertTrue(LinkQuality.getInstance().isConstrained(
+                ApplicationProvider.getApplicationContext()));
+    }
+
+    private static Report reportWithLogcat(String logcat) {
+        ExtraInfo extraInfo = new ExtraInfo();
+        extraInfo.put("Logcat", logcat);
+        extraInfo.put("Locale", "en_US");
+        return new Report("Slow crash", "Steps",
+                new DeviceInfo(ApplicationProvider.getApplicationContext()), extraInfo, null);
+    }
+
+    private static String log(int length) {
+        StringBuilder log = new StringBuilder(length);
+        for (int line = 0; log.length() < length; line++) {
+            log.append("I/App: line ").append(line).append('\n');
+        }
+        return log.toString();
+    }
+
+    private static Report report(String id) {
+        return report(id, "Steps");
+    }
+
+    private static Report report(String id, String description) {
+        try {
+            StringWriter json = new StringWriter();
+            JsonUtils.writeString(json, description);
+            return Report.readJson(new StringReader("{\"schemaVersion\":1,\"id\":\"" + id
+                    + "\",\"title\":\"Crash\",\"description\":" + json
+                    + ",\"deviceInfo\":{}}"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
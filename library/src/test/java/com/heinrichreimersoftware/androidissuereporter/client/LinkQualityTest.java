@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import com.heinrichreimersoftware.androidissuereporter.storage.ReportBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The clock only moves when a test advances it, so {@link FakeGitHub} simulates throughput by
+ * advancing it while it reads the request body.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LinkQualityTest {
+    private static final int KB = 1024;
+
+    private final LinkQuality linkQuality = LinkQuality.getInstance();
+
+    @Before
+    public void setUp() {
+        // Lets the estimate of earlier tests expire.
+        ShadowSystemClock.advanceBy(Duration.ofMinutes(10));
+    }
+
+    @After
+    public void tearDown() {
+        linkQuality.setMinBytesPerSecond(LinkQuality.DEFAULT_MIN_BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void isNotSlowWithoutEstimate() {
+        assertEquals(-1, linkQuality.getBytesPerSecond());
+        assertFalse(linkQuality.isSlow());
+    }
+
+    @Test
+    public void ignoresSmallTransfers() {
+        linkQuality.recordTransfer(KB, 10000);
+
+        assertEquals(-1, linkQuality.getBytesPerSecond());
+    }
+
+    @Test
+    public void slowTransferMakesLinkSlow() {
+        linkQuality.recordTransfer(16 * KB, 4000);
+
+        assertEquals(4 * KB, linkQuality.getBytesPerSecond());
+        assertTrue(linkQuality.isSlow());
+    }
+
+    @Test
+    public void fastTransferDoesNotMakeLinkSlow() {
+        linkQuality.recordTransfer(1024 * KB, 1000);
+
+        assertFalse(linkQuality.isSlow());
+    }
+
+    @Test
+    public void smoothsRecentTransfers() {
+        linkQuality.recordTransfer(64 * KB, 1000);
+        linkQuality.recordTransfer(8 * KB, 1000);
+
+        // 30 % of the new sample, 70 % of the previous estimate.
+        assertEquals(48332, linkQuality.getBytesPerSecond());
+    }
+
+    @Test
+    public void estimateExpires() {
+        linkQuality.recordTransfer(16 * KB, 4000);
+        ShadowSystemClock.advanceBy(Duration.ofMinutes(6));
+
+        assertEquals(-1, linkQuality.getBytesPerSecond());
+        assertFalse(linkQuality.isSlow());
+
+        // A new sample replaces the expired estimate instead of being smoothed with it.
+        linkQuality.recordTransfer(64 * KB, 1000);
+        assertEquals(64 * KB, linkQuality.getBytesPerSecond());
+    }
+
+    @Test
+    public void thresholdIsConfigurable() {
+        linkQuality.recordTransfer(32 * KB, 1000);
+        assertFalse(linkQuality.isSlow());
+
+        linkQuality.setMinBytesPerSecond(64 * KB);
+        assertTrue(linkQuality.isSlow());
+
+        linkQuality.setMinBytesPerSecond(0);
+        assertFalse(linkQuality.isSlow());
+        assertThrows(IllegalArgumentException.class, () -> linkQuality.setMinBytesPerSecond(-1));
+    }
+
+    @Test
+    public void measuresUploadsToServer() throws IOException {
+        assertTrue(upload(64 * KB, 4 * KB));
+        assertTrue(linkQuality.getBytesPerSecond() < LinkQuality.DEFAULT_MIN_BYTES_PER_SECOND);
+        assertTrue(linkQuality.isSlow());
+        assertTrue(linkQuality.isConstrained(ApplicationProvider.getApplicationContext()));
+
+        ShadowSystemClock.advanceBy(Duration.ofMinutes(10));
+        assertTrue(upload(64 * KB, 1024 * KB));
+        assertFalse(linkQuality.isSlow());
+    }
+
+    /**
+     * Creates an issue with a body of {@code bytes} on a server that reads at
+     * {@code bytesPerSecond}.
+     *
+     * @return Whether the server received the whole body.
+     */
+    private static boolean upload(int bytes, int bytesPerSecond) throws IOException {
+        try (FakeGitHub github = new FakeGitHub()) {
+            github.setBytesPerSecond(bytesPerSecond);
+            ReportBuffer body = new ReportBuffer(null);
+            for (int i = 0; i < bytes; i++) body.write('a');
+            body.close();
+            StreamingGitHubClient.forBaseUrl(github.getBaseUrl())
+                    .createIssue("username", "repository", "Crash", body);
+            return github.getIssues().get(0).getBody().length() == bytes;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.client;
+
+import com.heinrichreimersoftware.androidissuereporter.Benchmark;
+import com.heinrichreimersoftware.androidissuereporter.model.github.Comment;
+import com.heinrichreimersoftware.androidissuereporter.model.github.Issue;
+import com.heinrichreimersoftware.androidissuereporter.storage.ReportBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the client against a {@link FakeGitHub}, including a rough latency measurement of the
+ * first and of later issue submissions.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StreamingGitHubClientTest {
+    private static final int SUBMISSIONS = 50;
+    private static final long MAX_MEDIAN_NANOS = 1000 * 1000 * 1000L;
+
+    private FakeGitHub github;
+    private StreamingGitHubClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        github = new FakeGitHub();
+        client = StreamingGitHubClient.forBaseUrl(github.getBaseUrl()).setOAuth2Token("token");
+    }
+
+    @After
+    public void tearDown() {
+        github.close();
+    }
+
+    @Test
+    public void createsIssueWithStreamedBody() throws IOException {
+        Issue issue = client.createIssue("username", "repository", "Crash \"quoted\"",
+                body("Line 1\nLine 2\tä"), Arrays.asList("bug"),
+                Arrays.<String>asList());
+
+        assertEquals(1, issue.getNumber());
+        assertEquals("Crash \"quoted\"", issue.getTitle());
+        assertEquals("Line 1\nLine 2\tä", issue.getBody());
+        assertEquals(Arrays.asList("bug"), github.getIssues().get(0).getLabels());
+    }
+
+    @Test
+    public void mapsErrorResponseToRequestException() throws IOException {
+        github.setIssueStatus(422);
+
+        try {
+            client.createIssue("username", "repository", "Crash", body("Steps"));
+            fail();
+        } catch (RequestException e) {
+            assertEquals(422, e.getStatus());
+            assertEquals("Rejected", e.getError());
+        }
+    }
+
+    @Test
+    public void followsPagination() throws IOException {
+        for (String body : new String[]{"first", "second", "third"}) {
+            client.createComment("username", "repository", 1, body);
+        }
+        github.setPageSize(2);
+
+        List<Comment> comments = client.getComments("username", "repository", 1);
+
+        assertEquals(3, comments.size());
+        assertEquals("third", comments.get(2).getBody());
+    }
+
+    /**
+     * Measures the first submission, which includes loading the client's classes and opening a
+     * connection, and the median of the following ones. DEX size can only be measured in an
+     * Android build, not here. On the JDK, requests on a reused connection include about 40 ms
+     * of delayed ACK for the chunked body; Android's connections set TCP_NODELAY.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void measuresSubmitLatency() throws IOException {
+        long start = System.nanoTime();
+        client.createIssue("username", "repository", "Crash", body("Steps"));
+        long first = System.nanoTime() - start;
+
+        long[] later = new long[SUBMISSIONS];
+        for (int i = 0; i < SUBMISSIONS; i++) {
+            start = System.nanoTime();
+            client.createIssue("username", "repository", "Crash", body("Steps"));
+            later[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(later);
+        long median = later[SUBMISSIONS / 2];
+
+        // Generous bound, this only catches requests that stall, e.g. on an unread response.
+        assertTrue("First " + first / 1000 + " us, median of later ones " + median / 1000
+                + " us", median < MAX_MEDIAN_NANOS);
+    }
+
+    private static ReportBuffer body(String text) throws IOException {
+        ReportBuffer buffer = new ReportBuffer(null);
+        buffer.write(text);
+        buffer.close();
+        return buffer;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.delivery;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.heinrichreimersoftware.androidissuereporter.client.FakeGitHub;
+import com.heinrichreimersoftware.androidissuereporter.client.IssueSubmitter;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+import com.heinrichreimersoftware.androidissuereporter.storage.IssueHistory;
+import com.heinrichreimersoftware.androidissuereporter.storage.ReportQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.work.Configuration;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.TestDriver;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs drains with a test {@link WorkManager} that executes work synchronously once the test
+ * marks its constraints as met.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReportDrainWorkerTest {
+    private Context context;
+    private FakeGitHub github;
+    private GithubTarget target;
+    private TestDriver driver;
+
+    @Before
+    public void setUp() throws IOException {
+        context = ApplicationProvider.getApplicationContext();
+        WorkManagerTestInitHelper.initializeTestWorkManager(context, new Configuration.Builder()
+                .setMinimumLoggingLevel(Log.DEBUG)
+                .setExecutor(new SynchronousExecutor())
+                .build());
+        driver = WorkManagerTestInitHelper.getTestDriver(context);
+        github = new FakeGitHub();
+        target = github.getTarget();
+    }
+
+    @After
+    public void tearDown() {
+        github.close();
+    }
+
+    @Test
+    public void drainsOnceConstraintsAreMet() throws Exception {
+        enqueue(report("a", "Crash"));
+
+        assertEquals(WorkInfo.State.ENQUEUED, getWorkInfo().getState());
+        assertEquals(0, github.getPosts());
+
+        driver.setAllConstraintsMet(getWorkInfo().getId());
+
+        assertEquals(WorkInfo.State.SUCCEEDED, getWorkInfo().getState());
+        assertEquals(1, github.getIssues().size());
+        assertTrue(new ReportQueue(context, target).isEmpty());
+    }
+
+    @Test
+    public void drainsAllBatchesInOrder() throws Exception {
+        int count = 2 * ReportDrain.DEFAULT_BATCH_SIZE + 3;
+        for (int i = 0; i < count; i++) {
+            enqueue(report("r" + i, "Crash " + i));
+        }
+
+        driver.setAllConstraintsMet(getWorkInfo().getId());
+
+        assertEquals(WorkInfo.State.SUCCEEDED, getWorkInfo().getState());
+        List<FakeGitHub.Posted> issues = github.getIssues();
+        assertEquals(count, issues.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("Crash " + i, issues.get(i).getTitle());
+        }
+        assertTrue(new ReportQueue(context, target).isEmpty());
+    }
+
+    @Test
+    public void retriesWhenResultIsUnknown() throws Exception {
+        github.setStatus(502);
+        enqueue(report("a", "Crash"));
+
+        driver.setAllConstraintsMet(getWorkInfo().getId());
+
+        assertEquals(WorkInfo.State.ENQUEUED, getWorkInfo().getState());
+        assertEquals(1, getWorkInfo().getRunAttemptCount());
+        assertEquals(1, new ReportQueue(context, target).size());
+
+        github.setStatus(0);
+        driver.setAllConstraintsMet(getWorkInfo().getId());
+
+        assertEquals(WorkInfo.State.SUCCEEDED, getWorkInfo().getState());
+        assertEquals(1, github.getIssues().size());
+        assertTrue(new ReportQueue(context, target).isEmpty());
+    }
+
+    @Test
+    public void rejectedReportDoesNotBlockQueue() throws Exception {
+        github.rejectTitle("Invalid");
+        enqueue(report("a", "Invalid"));
+        enqueue(report("b", "Crash"));
+
+        driver.setAllConstraintsMet(getWorkInfo().getId());
+
+        assertEquals(WorkInfo.State.SUCCEEDED, getWorkInfo().getState());
+        assertEquals(1, github.getIssues().size());
+        assertEquals("Crash", github.getIssues().get(0).getTitle());
+        ReportQueue queue = new ReportQueue(context, target);
+        assertTrue(queue.isEmpty());
+        assertEquals("a", queue.getRejected().peek(1).get(0).getId());
+    }
+
+    @Test
+    public void followUpAsCommentIsKeptPerReport() throws Exception {
+        IssueHistory history = IssueHistory.getInstance(context);
+        assertEquals(IssueSubmitter.RESULT_OK, new IssueSubmitter(context, target,
+                new GithubLogin("token")).setHistory(history).submit(report("a", "Crash")));
+
+        // Both are drained by the first report's pending work request.
+        ReportDrain.enqueue(context, target, new GithubLogin("token"), report("b", "Crash"),
+                ReportDrain.DEFAULT_CONSTRAINTS, false, null, true);
+        ReportDrain.enqueue(context, target, new GithubLogin("token"), report("c", "Crash"),
+                ReportDrain.DEFAULT_CONSTRAINTS, false, null, false);
+        driver.setAllConstraintsMet(getWorkInfo().getId());
+
+        assertEquals(2, github.getIssues().size());
+        assertEquals(1, github.getComments().size());
+        assertEquals(1, github.getComments().get(0).getIssueNumber());
+        assertTrue(github.getComments().get(0).getBody()
+                .contains(report("b", "Crash").getIdMarker()));
+        assertTrue(github.getIssues().get(1).getBody()
+                .contains(report("c", "Crash").getIdMarker()));
+    }
+
+    private void enqueue(Report report) throws IOException {
+        ReportDrain.enqueue(context, target, new GithubLogin("token"), report,
+                ReportDrain.DEFAULT_CONSTRAINTS, false);
+    }
+
+    private WorkInfo getWorkInfo() throws ExecutionException, InterruptedException {
+        List<WorkInfo> infos = WorkManager.getInstance(context)
+                .getWorkInfosForUniqueWork(ReportDrain.getUniqueWorkName(target)).get();
+        assertEquals(1, infos.size());
+        return infos.get(0);
+    }
+
+    private static Report report(String id, String title) throws IOException {
+        return Report.readJson(new StringReader("{\"schemaVersion\":1,\"id\":\"" + id
+                + "\",\"title\":\"" + title + "\",\"description\":\"Steps\",\"deviceInfo\":{}}"));
+    }
+}
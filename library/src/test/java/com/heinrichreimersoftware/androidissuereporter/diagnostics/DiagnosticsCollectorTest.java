@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.diagnostics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiagnosticsCollectorTest {
+    private static final DiagnosticSource SLOW = extraInfo -> {
+        Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+        extraInfo.put("Slow", "done");
+    };
+
+    @Test
+    public void collectsSourcesInRegistrationOrder() {
+        DiagnosticsCollector.Result result = new DiagnosticsCollector()
+                .add("First", extraInfo -> {
+                    Thread.sleep(100);
+                    extraInfo.put("First", 1);
+                })
+                .add("Second", extraInfo -> extraInfo.put("Second", 2))
+                .collect();
+
+        assertEquals(Arrays.asList("First", "Second"),
+                Arrays.asList(result.getExtraInfo().getInfo().keySet().toArray()));
+        assertTrue(result.getTimedOut().isEmpty());
+        assertTrue(result.getFailed().isEmpty());
+    }
+
+    @Test
+    public void slowSourceTimesOutWithoutDelayingOthers() {
+        DiagnosticsCollector.Result result = new DiagnosticsCollector()
+                .add("Slow", SLOW, 200)
+                .add("Fast", extraInfo -> extraInfo.put("Fast", "done"))
+                .collect();
+
+        assertEquals(Collections.singletonList("Slow"), result.getTimedOut());
+        assertEquals("done", result.getExtraInfo().getInfo().get("Fast"));
+        assertNull(result.getExtraInfo().getInfo().get("Slow"));
+        assertTrue(result.getDurationMillis() < 2000);
+    }
+
+    @Test
+    public void timedOutSourceIsInterrupted() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        new DiagnosticsCollector()
+                .add("Slow", extraInfo -> {
+                    try {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }, 100)
+                .collect();
+
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failingSourceIsReported() {
+        DiagnosticsCollector.Result result = new DiagnosticsCollector()
+                .add("Failing", extraInfo -> {
+                    throw new IllegalStateException("Broken");
+                })
+                .add("Working", extraInfo -> extraInfo.put("Working", true))
+                .collect();
+
+        assertEquals(Collections.singletonList("Failing"), result.getFailed());
+        assertEquals("true", result.getExtraInfo().getInfo().get("Working"));
+        assertTrue(result.getTimedOut().isEmpty());
+    }
+
+    @Test
+    public void deadlineIsSharedBetweenSources() {
+        DiagnosticsCollector collector = new DiagnosticsCollector().deadline(300);
+        for (int i = 0; i < 5; i++) {
+            collector.add("Slow " + i, SLOW);
+        }
+        DiagnosticsCollector.Result result = collector.collect();
+
+        assertEquals(5, result.getTimedOut().size());
+        // Waiting for each source in turn with its own timeout would take five times as long.
+        assertTrue(result.getDurationMillis() < 1000);
+    }
+
+    @Test
+    public void sourceTimeoutDoesNotExtendDeadline() {
+        DiagnosticsCollector.Result result = new DiagnosticsCollector()
+                .deadline(200)
+                .add("Slow", SLOW, TimeUnit.SECONDS.toMillis(5))
+                .collect();
+
+        assertEquals(Collections.singletonList("Slow"), result.getTimedOut());
+        assertTrue(result.getDurationMillis() < 1000);
+    }
+
+    @Test
+    public void emptyCollectorReturnsImmediately() {
+        DiagnosticsCollector.Result result = new DiagnosticsCollector().collect();
+
+        assertTrue(result.getExtraInfo().isEmpty());
+        assertEquals(0, result.getDurationMillis());
+    }
+}
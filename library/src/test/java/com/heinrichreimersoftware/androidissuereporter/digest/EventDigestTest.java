@@ -0,0 +1,210 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.digest;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.pm.PackageManager;
+
+import com.heinrichreimersoftware.androidissuereporter.client.FakeGitHub;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Submits digests synchronously to a {@link FakeGitHub} and checks the rendered tables.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EventDigestTest {
+    private FakeGitHub github;
+
+    @Before
+    public void setUp() throws IOException {
+        github = new FakeGitHub();
+    }
+
+    @After
+    public void tearDown() {
+        github.close();
+    }
+
+    @Test
+    public void countsEventsAndDurationsPerSignature() {
+        EventDigest digest = builder(ApplicationProvider.getApplicationContext()).build();
+        digest.recordSlow("load", 100);
+        digest.recordSlow("load", 300);
+        digest.record("Timeout", null);
+        digest.recordUntracked();
+
+        digest.submitDigest();
+
+        String body = getDigest();
+        assertTrue(body.contains("<tr><td>2</td><td>Slow: load</td><td>200</td><td>300</td></tr>"));
+        assertTrue(body.contains("<tr><td>1</td><td>Timeout</td><td></td><td></td></tr>"));
+        assertTrue(body.contains("Events"));
+        assertTrue(body.contains("Untracked events"));
+    }
+
+    @Test
+    public void ranksTopSignaturesByCount() {
+        EventDigest digest = builder(ApplicationProvider.getApplicationContext())
+                .topSignatures(2)
+                .build();
+        record(digest, "a", 3);
+        record(digest, "b", 5);
+        record(digest, "c", 1);
+
+        digest.submitDigest();
+
+        String body = getDigest();
+        assertTrue(body.contains("Top 2 of 3 signatures"));
+        int b = body.indexOf("<tr><td>5</td><td>b</td>");
+        int a = body.indexOf("<tr><td>3</td><td>a</td>");
+        assertTrue(b >= 0);
+        assertTrue(a > b);
+        assertFalse(body.contains("<td>c</td>"));
+    }
+
+    @Test
+    public void keepsSamplesOfLaterEventsToo() {
+        EventDigest digest = builder(ApplicationProvider.getApplicationContext())
+                .samplesPerSignature(3)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            digest.record("a", new IllegalStateException("event " + i));
+        }
+
+        digest.submitDigest();
+
+        Set<Integer> sampled = new HashSet<>();
+        Matcher matcher = Pattern.compile("IllegalStateException: event (\\d+)")
+                .matcher(getDigest());
+        while (matcher.find()) {
+            sampled.add(Integer.parseInt(matcher.group(1)));
+        }
+        assertEquals(3, sampled.size());
+        // Keeping only the first events would be 0, 1 and 2.
+        int max = 0;
+        for (int event : sampled) max = Math.max(max, event);
+        assertTrue(max > 2);
+    }
+
+    @Test
+    public void countsSignaturesBeyondLimitAsUntracked() {
+        EventDigest digest = builder(ApplicationProvider.getApplicationContext())
+                .maxSignatures(2)
+                .build();
+        record(digest, "a", 1);
+        record(digest, "b", 1);
+        record(digest, "c", 2);
+
+        digest.submitDigest();
+
+        String body = getDigest();
+        assertTrue(body.contains("Top 2 of 2 signatures"));
+        assertFalse(body.contains("<td>c</td>"));
+        assertTrue(body.contains("Untracked events"));
+    }
+
+    @Test
+    public void failedDigestGoesOutWithNextOne() {
+        EventDigest digest = builder(ApplicationProvider.getApplicationContext()).build();
+        github.setStatus(502);
+        record(digest, "a", 2);
+
+        digest.submitDigest();
+        assertEquals(0, github.getIssues().size());
+
+        github.setStatus(0);
+        record(digest, "a", 1);
+        record(digest, "b", 1);
+        digest.submitDigest();
+
+        String body = getDigest();
+        assertTrue(body.contains("<tr><td>3</td><td>a</td>"));
+        assertTrue(body.contains("<tr><td>1</td><td>b</td>"));
+    }
+
+    @Test
+    public void exceptionWhileSubmittingKeepsEvents() {
+        AtomicBoolean fail = new AtomicBoolean();
+        Context context = new ContextWrapper(ApplicationProvider.getApplicationContext()) {
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+
+            @Override
+            public PackageManager getPackageManager() {
+                if (fail.getAndSet(false)) throw new IllegalStateException("Package manager died");
+                return super.getPackageManager();
+            }
+        };
+        EventDigest digest = builder(context).build();
+        record(digest, "a", 1);
+
+        fail.set(true);
+        digest.submitDigest();
+        assertFalse(fail.get());
+        assertEquals(0, github.getPosts());
+
+        record(digest, "a", 1);
+        digest.submitDigest();
+
+        assertTrue(getDigest().contains("<tr><td>2</td><td>a</td>"));
+    }
+
+    private EventDigest.Builder builder(Context context) {
+        return new EventDigest.Builder(context, github.getTarget(), new GithubLogin("token"));
+    }
+
+    private static void record(EventDigest digest, String signature, int count) {
+        for (int i = 0; i < count; i++) {
+            digest.record(signature, null);
+        }
+    }
+
+    private String getDigest() {
+        assertEquals(1, github.getIssues().size());
+        return github.getIssues().get(0).getBody();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.digest;
+
+import com.heinrichreimersoftware.androidissuereporter.client.FakeGitHub;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubLogin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class StrictModeReporterTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private FakeGitHub github;
+    private StrictModeReporter reporter;
+
+    @Before
+    public void setUp() throws IOException {
+        github = new FakeGitHub();
+        reporter = new StrictModeReporter.Builder(ApplicationProvider.getApplicationContext(),
+                github.getTarget(), new GithubLogin("token")).build();
+    }
+
+    @After
+    public void tearDown() {
+        github.close();
+    }
+
+    @Test
+    public void digestSubmissionDoesNotSeedNextDigest() throws InterruptedException {
+        reporter.record(violation("com.example.Settings", "load"));
+        reporter.flush();
+        awaitPosts(1);
+
+        // The upload's own socket, as StrictMode would report it.
+        reporter.record(violation(
+                "com.heinrichreimersoftware.androidissuereporter.client.StreamingGitHubClient",
+                "post"));
+        reporter.record(violation("com.example.Profile", "save"));
+        reporter.flush();
+        awaitPosts(2);
+
+        assertEquals(1, github.getComments().size());
+        String digest = github.getComments().get(0).getBody();
+        assertTrue(digest.contains("com.example.Profile.save"));
+        assertFalse(digest.contains("StreamingGitHubClient"));
+    }
+
+    @Test
+    public void digestWithOnlyOwnViolationsIsNotSubmitted() throws InterruptedException {
+        reporter.record(violation(
+                "com.heinrichreimersoftware.androidissuereporter.client.EndpointHealth",
+                "probe"));
+        reporter.flush();
+        reporter.record(violation("com.example.Settings", "load"));
+        reporter.flush();
+        awaitPosts(1);
+
+        assertEquals(1, github.getIssues().size());
+        assertFalse(github.getIssues().get(0).getBody().contains("EndpointHealth"));
+    }
+
+    private void awaitPosts(int posts) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (github.getPosts() < posts && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(posts, github.getPosts());
+    }
+
+    private static Throwable violation(String className, String methodName) {
+        Throwable violation = new UntaggedSocketViolation();
+        violation.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("java.net.Socket", "connect", "Socket.java", 100),
+                new StackTraceElement(className, methodName, null, 42),
+                new StackTraceElement("android.os.Handler", "dispatchMessage", null, 1)});
+        return violation;
+    }
+
+    private static final class UntaggedSocketViolation extends Exception {
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.exitinfo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TraceParserTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String ANR = ""
+            + "----- pid 4242 at 2026-10-19 12:00:00 -----\n"
+            + "Cmd line: com.example.app\n"
+            + "Subject: Input dispatching timed out\n"
+            + "\n"
+            + "\"Signal Catcher\" daemon prio=10 tid=2 Runnable\n"
+            + "  at com.example.app.Other.run(Other.java:1)\n"
+            + "\n"
+            + "\"main\" prio=5 tid=1 Blocked\n"
+            + "  | group=\"main\" sCount=1 ucsCount=0 flags=1 obj=0x72b0a0f8\n"
+            + "  native: #00 pc 000000000004b1ac  /apex/com.android.runtime/lib64/bionic/libc.so\n"
+            + "  at java.lang.Object.wait(Native method)\n"
+            + "  - waiting to lock <0x0a1b2c3d> (a java.lang.Object) held by thread 12\n"
+            + "  at com.example.app.Database.query(Database.java:42)\n"
+            + "  at com.example.app.MainActivity.onResume(MainActivity.java:17)\n"
+            + "  at android.app.Activity.performResume(Activity.java:8000)\n"
+            + "\r\n"
+            + "\"RenderThread\" daemon prio=7 tid=13 Native\n"
+            + "  at com.example.app.Render.draw(Render.java:5)\n";
+
+    @Test
+    public void anrKeepsMainThreadStack() throws IOException {
+        TraceParser.Trace trace = TraceParser.parseAnr(stream(ANR));
+
+        assertEquals("Input dispatching timed out", trace.summary);
+        assertEquals(Arrays.asList(
+                "native: #00 pc 000000000004b1ac  /apex/com.android.runtime/lib64/bionic/libc.so",
+                "at java.lang.Object.wait(Native method)",
+                "- waiting to lock <0x0a1b2c3d> (a java.lang.Object) held by thread 12",
+                "at com.example.app.Database.query(Database.java:42)",
+                "at com.example.app.MainActivity.onResume(MainActivity.java:17)",
+                "at android.app.Activity.performResume(Activity.java:8000)"), trace.frames);
+    }
+
+    @Test
+    public void anrTopFrameIsFirstAppMethodWithoutLocation() throws IOException {
+        assertEquals("com.example.app.Database.query",
+                TraceParser.parseAnr(stream(ANR)).topFrame);
+    }
+
+    @Test
+    public void anrTopFrameFallsBackToPlatformMethod() throws IOException {
+        TraceParser.Trace trace = TraceParser.parseAnr(stream("\"main\" prio=5 tid=1 Native\n"
+                + "  at android.os.MessageQueue.nativePollOnce(Native method)\n"
+                + "  at android.os.Looper.loop(Looper.java:288)\n"));
+
+        assertNull(trace.summary);
+        assertEquals("android.os.MessageQueue.nativePollOnce", trace.topFrame);
+    }
+
+    @Test
+    public void anrKeepsAtMostMaxFramesAndTruncatesLines() throws IOException {
+        StringBuilder anr = new StringBuilder("\"main\" prio=5 tid=1 Runnable\n");
+        anr.append("  at com.example.app.").append(repeat('x', 10000)).append("(Long.java:1)\n");
+        for (int i = 0; i < TraceParser.MAX_FRAMES * 2; i++) {
+            anr.append("  at com.example.app.Deep.call").append(i).append("(Deep.java:1)\n");
+        }
+
+        TraceParser.Trace trace = TraceParser.parseAnr(stream(anr.toString()));
+
+        assertEquals(TraceParser.MAX_FRAMES, trace.frames.size());
+        assertTrue(trace.frames.get(0).length() <= 1024);
+        assertEquals("at com.example.app.Deep.call0(Deep.java:1)", trace.frames.get(1));
+    }
+
+    @Test
+    public void anrWithoutMainThreadHasNoFrames() throws IOException {
+        TraceParser.Trace trace = TraceParser.parseAnr(stream("Subject: Broadcast timeout\n"));
+
+        assertEquals("Broadcast timeout", trace.summary);
+        assertTrue(trace.frames.isEmpty());
+        assertNull(trace.topFrame);
+    }
+
+    @Test
+    public void tombstoneKeepsCrashingThreadBacktrace() throws IOException {
+        byte[] tombstone = new Proto()
+                .varint(6, 101)
+                .message(10, new Proto().string(2, "SIGSEGV").string(4, "SEGV_MAPERR"))
+                .string(14, "Check failed")
+                .message(16, thread(100, frame(0x10, "/system/lib64/libc.so", "other", 0)))
+                .message(16, thread(101,
+                        frame(0x1a2b, "/apex/com.android.runtime/lib64/bionic/libc.so",
+                                "abort", 164),
+                        frame(0x3c4d, "/data/app/com.example.app/lib/arm64/libapp.so",
+                                "render", 8),
+                        frame(0x5e6f, "/system/lib64/libhwui.so", "", 0)))
+                .toByteArray();
+
+        TraceParser.Trace trace = TraceParser.parseTombstone(new ByteArrayInputStream(tombstone));
+
+        assertEquals("SIGSEGV (SEGV_MAPERR): Check failed", trace.summary);
+        assertEquals(Arrays.asList(
+                "#00 pc 0000000000001a2b  /apex/com.android.runtime/lib64/bionic/libc.so (abort+164)",
+                "#01 pc 0000000000003c4d  /data/app/com.example.app/lib/arm64/libapp.so (render+8)",
+                "#02 pc 0000000000005e6f  /system/lib64/libhwui.so"), trace.frames);
+        assertEquals("libapp.so (render)", trace.topFrame);
+    }
+
+    @Test
+    public void tombstoneSkipsUnknownFields() throws IOException {
+        byte[] tombstone = new Proto()
+                .fixed32(1, 7)
+                .fixed64(2, 8)
+                .string(3, "unknown")
+                .varint(6, 1)
+                .message(16, thread(1, frame(0x10, "/system/lib64/libc.so", "abort", 4)))
+                .toByteArray();
+
+        TraceParser.Trace trace = TraceParser.parseTombstone(new ByteArrayInputStream(tombstone));
+
+        assertNull(trace.summary);
+        assertEquals(1, trace.frames.size());
+        assertEquals("libc.so (abort)", trace.topFrame);
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedTombstoneThrows() throws IOException {
+        byte[] tombstone = new Proto().string(14, "Check failed").toByteArray();
+        TraceParser.parseTombstone(new ByteArrayInputStream(
+                Arrays.copyOf(tombstone, tombstone.length - 3)));
+    }
+
+    private static Proto thread(long tid, Proto... frames) {
+        Proto thread = new Proto();
+        for (Proto frame : frames) thread.message(4, frame);
+        return new Proto().varint(1, tid).message(2, thread);
+    }
+
+    private static Proto frame(long relPc, String file, String function, long offset) {
+        return new Proto().varint(1, relPc).string(4, function).varint(5, offset)
+                .string(6, file);
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(UTF_8));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * Writes the protobuf wire format.
+     */
+    private static final class Proto {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        Proto varint(int field, long value) {
+            writeVarint(field << 3);
+            writeVarint(value);
+            return this;
+        }
+
+        Proto fixed32(int field, int value) {
+            writeVarint(field << 3 | 5);
+            for (int i = 0; i < 4; i++) output.write(value >>> (8 * i));
+            return this;
+        }
+
+        Proto fixed64(int field, long value) {
+            writeVarint(field << 3 | 1);
+            for (int i = 0; i < 8; i++) output.write((int) (value >>> (8 * i)));
+            return this;
+        }
+
+        Proto string(int field, String value) {
+            return bytes(field, value.getBytes(UTF_8));
+        }
+
+        Proto message(int field, Proto message) {
+            return bytes(field, message.toByteArray());
+        }
+
+        private Proto bytes(int field, byte[] value) {
+            writeVarint(field << 3 | 2);
+            writeVarint(value.length);
+            output.write(value, 0, value.length);
+            return this;
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                output.write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            output.write((int) value);
+        }
+
+        byte[] toByteArray() {
+            return output.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.model;
+
+import com.heinrichreimersoftware.androidissuereporter.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Also compares rendering a compiled template with the built-in layout of
+ * {@link Report#writeDescription(java.io.Writer)}. The benchmark only runs with
+ * {@code -Pbenchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ReportTemplateTest {
+    private static final String BUILT_IN_LAYOUT = "{{#submitter}}*Submitted by {{submitter}}*\n\n"
+            + "{{/submitter}}Description:\n---\n\n{{description}}\n\n{{deviceInfo}}\n\n"
+            + "{{extraInfo}}";
+    private static final int WARM_UP_RUNS = 2000;
+    private static final int RUNS = 20000;
+
+    @Test
+    public void rendersVariablesAndDeviceFields() throws IOException {
+        String body = render("{{title}} on {{device.model}} ({{device.sdkVersion}}): "
+                + "{{extra.screen}}", report(null, 2));
+
+        assertTrue(body.startsWith("Crash on Pixel (31): value 1\n\n"));
+    }
+
+    @Test
+    public void rendersSectionsOnlyIfNotEmpty() throws IOException {
+        String template = "{{#submitter}}by {{submitter}}{{/submitter}}"
+                + "{{^submitter}}anonymous{{/submitter}}";
+
+        assertTrue(render(template, report(null, 0)).startsWith("anonymous\n\n"));
+        assertTrue(render(template, report("jane@example.com", 0)).startsWith("by j"));
+    }
+
+    @Test
+    public void loopsOverExtraInfo() throws IOException {
+        String template = "{{#extraInfo}}{{key}}={{value}};{{/extraInfo}}"
+                + "{{^extraInfo}}none{{/extraInfo}}";
+
+        assertTrue(render(template, report(null, 2)).startsWith("screen=value 1;"));
+        assertTrue(render(template, report(null, 0)).startsWith("none\n\n"));
+    }
+
+    @Test
+    public void appendsIdMarker() throws IOException {
+        Report report = report(null, 0);
+
+        assertEquals("Text\n\n" + report.getIdMarker(), render("Text", report));
+    }
+
+    @Test
+    public void rejectsInvalidTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> ReportTemplate.compile("{{unknown}}"));
+        assertThrows(IllegalArgumentException.class, () -> ReportTemplate.compile("{{key}}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> ReportTemplate.compile("{{#title}}text"));
+        assertThrows(IllegalArgumentException.class,
+                () -> ReportTemplate.compile("{{#title}}text{{/description}}"));
+        assertThrows(IllegalArgumentException.class, () -> ReportTemplate.compile("{{title"));
+    }
+
+    @Test
+    public void builtInLayoutMatchesWriteDescription() throws IOException {
+        for (Report report : new Report[]{report(null, 0), report("jane@example.com", 5)}) {
+            assertEquals(report.getDescription(), render(BUILT_IN_LAYOUT, report));
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkAgainstWriteDescription() throws IOException {
+        Report report = report("jane@example.com", 20);
+        ReportTemplate template = ReportTemplate.compile(BUILT_IN_LAYOUT);
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            report.writeDescription(new StringWriter());
+            template.render(report, new StringWriter());
+            ReportTemplate.compile(BUILT_IN_LAYOUT).render(report, new StringWriter());
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            report.writeDescription(new StringWriter());
+        }
+        long builtInNanos = (System.nanoTime() - start) / RUNS;
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            template.render(report, new StringWriter());
+        }
+        long compiledNanos = (System.nanoTime() - start) / RUNS;
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            ReportTemplate.compile(BUILT_IN_LAYOUT).render(report, new StringWriter());
+        }
+        long parsedNanos = (System.nanoTime() - start) / RUNS;
+
+        assertTrue(builtInNanos + " ns built-in, " + compiledNanos + " ns compiled template, "
+                + parsedNanos + " ns parsing the template each time", compiledNanos < parsedNanos);
+    }
+
+    private static String render(String template, Report report) throws IOException {
+        StringWriter writer = new StringWriter();
+        ReportTemplate.compile(template).render(report, writer);
+        return writer.toString();
+    }
+
+    private static Report report(String submitter, int extraInfoCount) throws IOException {
+        StringBuilder json = new StringBuilder("{\"schemaVersion\":1,\"id\":\"a\",")
+                .append("\"title\":\"Crash\",\"description\":\"Steps to reproduce\",");
+        if (submitter != null) {
+            json.append("\"submitter\":\"").append(submitter).append("\",");
+        }
+        json.append("\"deviceInfo\":{\"versionCode\":\"12\",\"versionName\":\"1.2\",")
+                .append("\"sdkVersion\":\"31\",\"brand\":\"google\",\"model\":\"Pixel\",")
+                .append("\"abis\":[\"arm64-v8a\",\"armeabi-v7a\"]},\"extraInfo\":{");
+        for (int i = 0; i < extraInfoCount; i++) {
+            if (i > 0) json.append(',');
+            json.append(i == 0 ? "\"screen\"" : "\"key " + i + "\"")
+                    .append(":\"value ").append(i + 1).append('"');
+        }
+        json.append("}}");
+        return Report.readJson(new StringReader(json.toString()));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.policy;
+
+import android.content.Context;
+
+import com.heinrichreimersoftware.androidissuereporter.model.DeviceInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.ExtraInfo;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static com.heinrichreimersoftware.androidissuereporter.policy.SubmissionGate.PRIORITY_AUTOMATIC;
+import static com.heinrichreimersoftware.androidissuereporter.policy.SubmissionGate.PRIORITY_USER_INITIATED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SubmissionGateTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long NOON = TimeUnit.DAYS.toMillis(20000) + DAY / 2;
+
+    private static int targets;
+
+    private Context context;
+    private SubmissionGate gate;
+    private GithubTarget target;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        gate = SubmissionGate.getInstance(context);
+        // The gate is a singleton that persists its counts, so each test uses its own target.
+        target = new GithubTarget("username", "repository" + targets++);
+    }
+
+    @Test
+    public void dailyQuotaRollsOverAtMidnight() {
+        gate.setPolicy(target, new SamplingPolicy.Builder().dailyQuota(2).build());
+
+        assertTrue(gate.admit(target, report("a"), PRIORITY_AUTOMATIC, NOON));
+        assertTrue(gate.admit(target, report("b"), PRIORITY_AUTOMATIC, NOON));
+        assertFalse(gate.admit(target, report("c"), PRIORITY_AUTOMATIC, NOON + DAY / 4));
+        assertTrue(gate.admit(target, report("d"), PRIORITY_AUTOMATIC, NOON + DAY / 2));
+        assertEquals(1, gate.attachDropCounts(target, new ExtraInfo()).getQuota());
+    }
+
+    @Test
+    public void samplesPerFingerprint() {
+        gate.setPolicy(target, new SamplingPolicy.Builder()
+                .sampleRate(report("Noisy").getFingerprint(), 0)
+                .build());
+
+        assertFalse(gate.admit(target, report("Noisy"), PRIORITY_AUTOMATIC, NOON));
+        // Fingerprints ignore case and surrounding whitespace.
+        assertFalse(gate.admit(target, report(" noisy "), PRIORITY_AUTOMATIC, NOON));
+        assertTrue(gate.admit(target, report("Rare"), PRIORITY_AUTOMATIC, NOON));
+        assertEquals(2, gate.attachDropCounts(target, new ExtraInfo()).getSampled());
+    }
+
+    @Test
+    public void userInitiatedReportsBypassLimits() {
+        gate.setPolicy(target, new SamplingPolicy.Builder().sampleRate(0).dailyQuota(0).build());
+
+        assertFalse(gate.admit(target, report("a"), PRIORITY_AUTOMATIC, NOON));
+        assertTrue(gate.admit(target, report("a"), PRIORITY_USER_INITIATED, NOON));
+        assertTrue(gate.admit(target, report("a"), PRIORITY_USER_INITIATED, NOON));
+
+        SubmissionGate.DropCounts counts = gate.attachDropCounts(target, new ExtraInfo());
+        assertEquals(1, counts.getSampled());
+        assertEquals(0, counts.getQuota());
+    }
+
+    @Test
+    public void attachesDropCountsUntilAcknowledged() {
+        gate.setPolicy(target, new SamplingPolicy.Builder().dailyQuota(1).build());
+        gate.admit(target, report("a"), PRIORITY_AUTOMATIC, NOON);
+        gate.admit(target, report("b"), PRIORITY_AUTOMATIC, NOON);
+        gate.admit(target, report("c"), PRIORITY_AUTOMATIC, NOON);
+
+        ExtraInfo extraInfo = new ExtraInfo();
+        SubmissionGate.DropCounts counts = gate.attachDropCounts(target, extraInfo);
+        assertEquals("2", extraInfo.getInfo().get(SubmissionGate.EXTRA_INFO_DROPPED_QUOTA));
+        assertFalse(extraInfo.getInfo().containsKey(SubmissionGate.EXTRA_INFO_DROPPED_SAMPLED));
+
+        // A drop after the counts were attached is kept for the next report.
+        gate.admit(target, report("d"), PRIORITY_AUTOMATIC, NOON);
+        gate.acknowledge(target, counts);
+
+        extraInfo = new ExtraInfo();
+        assertEquals(1, gate.attachDropCounts(target, extraInfo).getQuota());
+        assertEquals("1", extraInfo.getInfo().get(SubmissionGate.EXTRA_INFO_DROPPED_QUOTA));
+    }
+
+    @Test
+    public void attachesNothingWithoutDrops() {
+        ExtraInfo extraInfo = new ExtraInfo();
+
+        assertTrue(gate.admit(target, report("a"), PRIORITY_AUTOMATIC, NOON));
+        gate.attachDropCounts(target, extraInfo);
+        assertTrue(extraInfo.isEmpty());
+    }
+
+    private Report report(String title) {
+        return new Report(title, "Description", new DeviceInfo(context), new ExtraInfo(), null);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.search;
+
+import com.heinrichreimersoftware.androidissuereporter.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrigramIndexTest {
+    private static final List<String> TITLES = Arrays.asList(
+            "App crashes when rotating the screen",
+            "Dark theme colors are wrong",
+            "Crash on startup after update",
+            "Login button does nothing");
+
+    @Test
+    public void trigramsIgnoreCaseAndPunctuation() {
+        assertArrayEquals(TrigramIndex.trigrams("crash on start"),
+                TrigramIndex.trigrams("  CRASH -- on... start!"));
+    }
+
+    @Test
+    public void trigramsIncludeWordBoundaries() {
+        // " ab", "ab " for a two letter word padded with spaces.
+        assertEquals(2, TrigramIndex.trigrams("ab").length);
+        assertEquals(0, TrigramIndex.trigrams("").length);
+        assertEquals(0, TrigramIndex.trigrams("?!").length);
+    }
+
+    @Test
+    public void identicalTitleScoresOne() {
+        List<TrigramIndex.Match> matches = new TrigramIndex(TITLES)
+                .query("Dark theme colors are wrong", 1, 0);
+
+        assertEquals(1, matches.size());
+        assertEquals(1, matches.get(0).getDocument());
+        assertEquals(1f, matches.get(0).getScore(), 0.0001f);
+    }
+
+    @Test
+    public void ranksSimilarTitlesFirst() {
+        List<TrigramIndex.Match> matches = new TrigramIndex(TITLES)
+                .query("crash when I rotate the screen", 10, 0.1f);
+
+        assertEquals(0, matches.get(0).getDocument());
+        for (int i = 1; i < matches.size(); i++) {
+            assertTrue(matches.get(i - 1).getScore() >= matches.get(i).getScore());
+        }
+    }
+
+    @Test
+    public void appliesLimitAndMinScore() {
+        TrigramIndex index = new TrigramIndex(TITLES);
+
+        assertEquals(1, index.query("crash", 1, 0).size());
+        for (TrigramIndex.Match match : index.query("crash", 10, 0.2f)) {
+            assertTrue(match.getScore() >= 0.2f);
+        }
+        assertTrue(index.query("completely unrelated words", 10, 0.5f).isEmpty());
+    }
+
+    @Test
+    public void emptyQueryOrIndexMatchesNothing() {
+        assertTrue(new TrigramIndex(TITLES).query("", 10, 0).isEmpty());
+        assertTrue(new TrigramIndex(TITLES).query("crash", 0, 0).isEmpty());
+        assertTrue(TrigramIndex.EMPTY.query("crash", 10, 0).isEmpty());
+        assertEquals(0, TrigramIndex.EMPTY.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyDocuments() {
+        new TrigramIndex(Collections.nCopies((1 << 16) + 1, "title"));
+    }
+
+    /**
+     * The activity queries the index on every keystroke, so a lookup in the largest synced index
+     * (five pages of 100 titles) has to stay well below a frame.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void queriesLargestIndexQuickly() {
+        List<String> titles = new ArrayList<>(500);
+        for (int i = 0; i < 500; i++) {
+            titles.add(TITLES.get(i % TITLES.size()) + " in version 1." + i);
+        }
+        TrigramIndex index = new TrigramIndex(titles);
+        for (int i = 0; i < 1000; i++) {
+            index.query("crash after rotating", 3, IssueTitleIndex.DEFAULT_MIN_SCORE);
+        }
+
+        long start = System.nanoTime();
+        int runs = 1000;
+        for (int i = 0; i < runs; i++) {
+            index.query("crash after rotating", 3, IssueTitleIndex.DEFAULT_MIN_SCORE);
+        }
+        long micros = (System.nanoTime() - start) / runs / 1000;
+        assertTrue(micros + " us per query", micros < 2000);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.storage;
+
+import com.heinrichreimersoftware.androidissuereporter.Benchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trip checks plus the size and speed comparison against gzip that the dictionary was
+ * tuned with. The speed comparison only runs with {@code -Pbenchmarks}.
+ */
+public class ReportCompressorTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int RUNS = 200;
+
+    private static final String REPORT = "Description:\n---\n\nThe app crashes when I rotate the screen."
+            + "\n\nDevice info:\n---\n<table>\n"
+            + "<tr><td>App version</td><td>1.4.2</td></tr>\n"
+            + "<tr><td>App version code</td><td>142</td></tr>\n"
+            + "<tr><td>Android build version</td><td>G991BXXU5CVDD</td></tr>\n"
+            + "<tr><td>Android release version</td><td>12</td></tr>\n"
+            + "<tr><td>Android SDK version</td><td>31</td></tr>\n"
+            + "<tr><td>Android build ID</td><td>SP1A.210812.016</td></tr>\n"
+            + "<tr><td>Device brand</td><td>samsung</td></tr>\n"
+            + "<tr><td>Device manufacturer</td><td>samsung</td></tr>\n"
+            + "<tr><td>Device name</td><td>o1s</td></tr>\n"
+            + "<tr><td>Device model</td><td>SM-G991B</td></tr>\n"
+            + "<tr><td>Device product name</td><td>o1sxeea</td></tr>\n"
+            + "<tr><td>Device hardware name</td><td>exynos2100</td></tr>\n"
+            + "<tr><td>ABIs</td><td>[arm64-v8a, armeabi-v7a, armeabi]</td></tr>\n"
+            + "<tr><td>ABIs (32bit)</td><td>[armeabi-v7a, armeabi]</td></tr>\n"
+            + "<tr><td>ABIs (64bit)</td><td>[arm64-v8a]</td></tr>\n"
+            + "</table>\n\nExtra info:\n---\n<table>\n"
+            + "<tr><td>Screen</td><td>portrait</td></tr>\n"
+            + "</table>\n";
+
+    @Test
+    public void roundTripsText() throws IOException {
+        assertEquals(REPORT, ReportCompressor.decompress(ReportCompressor.compress(REPORT)));
+        assertEquals("", ReportCompressor.decompress(ReportCompressor.compress("")));
+        String unicode = "Beschreibung: Äpfel ☃ 😀";
+        assertEquals(unicode, ReportCompressor.decompress(ReportCompressor.compress(unicode)));
+    }
+
+    @Test
+    public void rejectsUncompressedData() {
+        try {
+            ReportCompressor.decompress("{\"title\":\"Crash\"}".getBytes(UTF_8));
+            fail();
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void rejectsUnknownDictionaryVersion() throws IOException {
+        byte[] data = ReportCompressor.compress(REPORT);
+        data[1]++;
+        try {
+            ReportCompressor.openDecompressed(new ByteArrayInputStream(data));
+            fail();
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void templateOnlyReportBeatsGzip() throws IOException {
+        assertTrue(ReportCompressor.compress(REPORT).length < gzip(REPORT).length);
+    }
+
+    @Test
+    public void reportWithLogIsNotWorseThanGzip() throws IOException {
+        String payload = reportWithLog();
+        assertTrue(ReportCompressor.compress(payload).length <= gzip(payload).length);
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void compressesReportWithLogAboutAsFastAsGzip() throws IOException {
+        String payload = reportWithLog();
+        for (int i = 0; i < RUNS / 10; i++) {
+            ReportCompressor.compress(payload);
+            gzip(payload);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            ReportCompressor.compress(payload);
+        }
+        long dictionaryNanos = (System.nanoTime() - start) / RUNS;
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            gzip(payload);
+        }
+        long gzipNanos = (System.nanoTime() - start) / RUNS;
+
+        assertTrue(dictionaryNanos / 1000 + " us with the dictionary, " + gzipNanos / 1000
+                + " us gzip", dictionaryNanos < 2 * gzipNanos);
+    }
+
+    private static String reportWithLog() {
+        StringBuilder report = new StringBuilder(REPORT).append("Logcat:\n---\n```\n");
+        for (int i = 0; i < 2000; i++) {
+            report.append("10-19 12:").append(i / 60 % 60).append(':').append(i % 60)
+                    .append(".123  4242  4242 ").append("DIWE".charAt(i % 4))
+                    .append(" ActivityManager: Line ").append(i).append(" of the log\n");
+            if (i % 100 == 0) {
+                report.append("\tat android.os.Handler.dispatchMessage(Handler.java:106)\n")
+                        .append("\tat android.os.Looper.loop(Looper.java:246)\n");
+            }
+        }
+        return report.append("```\n").toString();
+    }
+
+    private static byte[] gzip(String payload) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(output);
+        gzip.write(payload.getBytes(UTF_8));
+        gzip.close();
+        return output.toByteArray();
+    }
+}
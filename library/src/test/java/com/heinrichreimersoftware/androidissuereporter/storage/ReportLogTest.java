@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.storage;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReportLogTest {
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private ReportLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("queue");
+        log = ReportLog.open(directory);
+    }
+
+    @Test
+    public void peeksOldestFirst() throws IOException {
+        log.append("a", data(1, 10), UNLIMITED);
+        log.append("b", data(2, 20), UNLIMITED);
+        log.append("c", data(3, 30), UNLIMITED);
+
+        LinkedHashMap<String, byte[]> entries = log.peek(2);
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(entries.keySet()));
+        assertArrayEquals(data(1, 10), entries.get("a"));
+        assertArrayEquals(data(2, 20), entries.get("b"));
+        assertEquals(3, log.size());
+    }
+
+    @Test
+    public void removesEntries() throws IOException {
+        log.append("a", data(1, 10), UNLIMITED);
+        log.append("b", data(2, 20), UNLIMITED);
+
+        log.remove("a");
+        log.remove("unknown");
+
+        assertEquals(Collections.singletonList("b"),
+                new ArrayList<>(log.peek(UNLIMITED).keySet()));
+    }
+
+    @Test
+    public void dropsOldestOverMaxEntries() throws IOException {
+        log.append("a", data(1, 10), 2);
+        log.append("b", data(2, 10), 2);
+
+        assertEquals(Collections.singletonList("a"), log.append("c", data(3, 10), 2));
+        assertEquals(Arrays.asList("b", "c"), new ArrayList<>(log.peek(UNLIMITED).keySet()));
+    }
+
+    @Test
+    public void claimIsExclusiveUntilClosed() throws IOException {
+        Closeable claim = log.tryClaim();
+        assertNotNull(claim);
+        assertNull(log.tryClaim());
+
+        claim.close();
+        Closeable next = log.tryClaim();
+        assertNotNull(next);
+        next.close();
+    }
+
+    @Test
+    public void compactsRemovedEntries() throws IOException {
+        log.append("kept", data(7, 100), UNLIMITED);
+        for (int i = 0; i < 200; i++) {
+            log.append("removed" + i, data(i, 1024), UNLIMITED);
+            log.remove("removed" + i);
+        }
+
+        assertFalse(new File(directory, "segment-0").exists());
+        assertEquals(1, segmentCount());
+        assertEquals(1, log.size());
+        assertArrayEquals(data(7, 100), log.peek(1).get("kept"));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            log.append("entry" + i, data(i, 2048), UNLIMITED);
+        }
+
+        assertEquals(100, log.size());
+        assertArrayEquals(data(99, 2048), log.peek(UNLIMITED).get("entry99"));
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    public void reopenedLogSeesEntriesAndCompactions() throws IOException {
+        log.append("a", data(1, 10), UNLIMITED);
+        ReportLog other = openAsOtherProcess();
+        assertArrayEquals(data(1, 10), other.peek(1).get("a"));
+
+        other.append("b", data(2, 20), UNLIMITED);
+        for (int i = 0; i < 200; i++) {
+            other.append("removed" + i, data(i, 1024), UNLIMITED);
+            other.remove("removed" + i);
+        }
+        other.remove("a");
+
+        assertEquals(Collections.singletonList("b"),
+                new ArrayList<>(log.peek(UNLIMITED).keySet()));
+        assertArrayEquals(data(2, 20), log.peek(1).get("b"));
+    }
+
+    /**
+     * Opens a second instance for the same directory, like another process of the app would.
+     * The instances are cached by path, so a different path to the same directory is enough.
+     */
+    private ReportLog openAsOtherProcess() throws IOException {
+        ReportLog other = ReportLog.open(new File(directory, "."));
+        assertTrue(other != log);
+        return other;
+    }
+
+    private int segmentCount() {
+        String[] segments = directory.list((dir, name) -> name.startsWith("segment-"));
+        return segments != null ? segments.length : 0;
+    }
+
+    private static byte[] data(int seed, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) (seed * 31 + i);
+        return data;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Jan Heinrich Reimer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.heinrichreimersoftware.androidissuereporter.storage;
+
+import android.content.Context;
+
+import com.heinrichreimersoftware.androidissuereporter.model.Report;
+import com.heinrichreimersoftware.androidissuereporter.model.github.GithubTarget;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReportQueueTest {
+    private static final GithubTarget TARGET = new GithubTarget("username", "repository");
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void peeksOldestReportsFirst() throws IOException {
+        ReportQueue queue = new ReportQueue(context, TARGET);
+        queue.add(report("a"));
+        queue.add(report("b"));
+        queue.add(report("c"));
+
+        assertEquals(Arrays.asList("a", "b"), ids(queue.peek(2)));
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void removedReportIsNotPeekedAgain() throws IOException {
+        ReportQueue queue = new ReportQueue(context, TARGET);
+        queue.add(report("a"));
+        queue.add(report("b"));
+
+        queue.remove(queue.peek(1).get(0));
+
+        assertEquals(Arrays.asList("b"), ids(queue.peek(10)));
+    }
+
+    @Test
+    public void rejectedReportMovesToRejectedQueue() throws IOException {
+        ReportQueue queue = new ReportQueue(context, TARGET);
+        queue.add(report("a"));
+        queue.add(report("b"));
+
+        queue.reject(queue.peek(1).get(0));
+
+        assertEquals(Arrays.asList("b"), ids(queue.peek(10)));
+        assertEquals(Arrays.asList("a"), ids(queue.getRejected().peek(10)));
+        assertEquals("Title a", queue.getRejected().peek(1).get(0).getTitle());
+    }
+
+    @Test
+    public void fullQueueDropsOldestReport() throws IOException {
+        ReportQueue queue = new ReportQueue(context, TARGET, 2);
+        queue.add(report("a"));
+        queue.add(report("b"));
+        queue.add(report("c"));
+
+        assertEquals(Arrays.asList("b", "c"), ids(queue.peek(10)));
+    }
+
+    @Test
+    public void targetsHaveSeparateQueues() throws IOException {
+        new ReportQueue(context, TARGET).add(report("a"));
+
+        assertTrue(new ReportQueue(context, new GithubTarget("username", "other")).isEmpty());
+        assertTrue(new ReportQueue(context, TARGET).getRejected().isEmpty());
+    }
+
+    @Test
+    public void keepsFollowUpAsCommentPerReport() throws IOException {
+        ReportQueue queue = new ReportQueue(context, TARGET);
+        queue.add(report("a"));
+        queue.add(report("b"), true);
+
+        List<ReportQueue.Entry> entries = queue.peekEntries(2);
+        assertEquals("a", entries.get(0).getReport().getId());
+        assertFalse(entries.get(0).isFollowUpAsComment());
+        assertEquals("b", entries.get(1).getReport().getId());
+        assertTrue(entries.get(1).isFollowUpAsComment());
+    }
+
+    private static Report report(String id) throws IOException {
+        return Report.readJson(new StringReader("{\"schemaVersion\":1,\"id\":\"" + id
+                + "\",\"title\":\"Title " + id + "\",\"deviceInfo\":{}}"));
+    }
+
+    private static List<String> ids(List<Report> reports) {
+        List<String> ids = new ArrayList<>(reports.size());
+        for (Report report : reports) {
+            ids.add(report.getId());
+        }
+        return ids;
+    }
+}